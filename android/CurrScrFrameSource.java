@@ -0,0 +1,84 @@
+package com.drscbt.interactor;
+
+import com.drscbt.screencapture.FrameAvailSignal;
+import com.drscbt.screencapture.SurfaceFrame;
+import com.drscbt.screencapture.SurfaceFrameReader;
+import com.drscbt.shared.piclib.DirectPic;
+import com.drscbt.shared.piclib.Frame;
+import com.drscbt.shared.piclib.IFrameSource;
+import com.drscbt.shared.piclib.PicData;
+
+import java.nio.ByteBuffer;
+
+// captures the current screen only after a new frame has been composed.
+// Between mark() and done() frames come from a consumer of the active
+// SurfaceFrameReader, which reads them ahead, instead of being captured on
+// demand; capture() has to be used for the frames compared with them then,
+// their serials are the reader's
+class CurrScrFrameSource implements IFrameSource {
+    private final CurrScrPicProvider _currScreenPicProvider;
+    private final FrameAvailSignal _signal;
+    private long _seenCnt;
+    private SurfaceFrameReader.Consumer _consumer;
+    private ByteBuffer _glRgba;
+
+    CurrScrFrameSource(CurrScrPicProvider currScreenPicProvider, FrameAvailSignal signal) {
+        this._currScreenPicProvider = currScreenPicProvider;
+        this._signal = signal;
+        this._seenCnt = signal.count();
+    }
+
+    // frames composed from now on are new
+    void mark() {
+        this._seenCnt = this._signal.count();
+        SurfaceFrameReader reader = SurfaceFrameReader.active();
+        if ((this._consumer == null) && (reader != null)) {
+            this._consumer = reader.openConsumer();
+        }
+    }
+
+    // stops reading ahead
+    void done() {
+        if (this._consumer != null) {
+            this._consumer.close();
+            this._consumer = null;
+        }
+    }
+
+    // the current screen
+    Frame capture() throws InterruptedException {
+        if (this._consumer == null) {
+            PicData pic = this._currScreenPicProvider.getCurrScrPic().capture();
+            int serial = this._currScreenPicProvider.getCurrScrPic().serial();
+            return new Frame(pic, serial, System.nanoTime());
+        }
+
+        SurfaceFrame frame = this._consumer.getNewSurfaceFrame();
+        // the frame's buffer is shared with other consumers, converted in a copy
+        if ((this._glRgba == null) || (this._glRgba.capacity() < frame.buf.remaining())) {
+            this._glRgba = ByteBuffer.allocateDirect(frame.buf.remaining());
+        }
+        this._glRgba.clear();
+        this._glRgba.put(frame.buf.duplicate());
+        PicData pic = DirectPic.wrapGlRgba(this._glRgba, this._currScreenPicProvider.getCurrScrPic().getWidth(),
+            this._currScreenPicProvider.getCurrScrPic().getHeight()).toPicData();
+        return new Frame(pic, frame.serial, frame.timestampNs);
+    }
+
+    public Frame nextFrame(int afterSerial, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + (timeoutMs * 1000000);
+        while (true) {
+            long remainingMs = Math.max(0, (deadline - System.nanoTime()) / 1000000);
+            long cnt = this._signal.await(this._seenCnt, remainingMs);
+            if (cnt <= this._seenCnt) {
+                return null;
+            }
+            this._seenCnt = cnt;
+
+            Frame frame = this.capture();
+            if (frame.serial != afterSerial) {
+                return frame;
+            }
+        }
+    }
+}
@@ -9,9 +9,11 @@ import com.drscbt.auto_iface.TesseractEngineMode;
 import com.drscbt.shared.assetloader.ApkJarAssetLoaderProv;
 import com.drscbt.shared.assetloader.IApkJarAssetLoader;
 import com.drscbt.shared.color.ColorConv;
+import com.drscbt.shared.piclib.FramePlanes;
 import com.drscbt.shared.piclib.FuzzyComparablePicClip;
 import com.drscbt.shared.piclib.PicData;
 import com.drscbt.shared.piclib.PicGrayscale;
+import com.drscbt.shared.piclib.PicOps;
 import com.drscbt.shared.utils.Measure;
 import com.drscbt.shared.utils.Utils;
 import com.googlecode.tesseract.android.TessBaseAPI;
@@ -117,6 +119,19 @@ public class OCR implements IOCR {
         return grayscale;
     }
 
+    // the frame's plane is copied from when already converted, only the
+    // region is converted otherwise
+    private PicGrayscale _cropGrayscale(FramePlanes planes, IAreaAbsPx a) {
+        PicGrayscale whole = planes.grayscaleIfConverted();
+        if (whole == null) {
+            return this._preprocessBitmap(planes.pic(), a);
+        }
+        AreaAbsPx aa = (AreaAbsPx) a;
+        PicGrayscale grayscale = PicGrayscale.create(aa.getWidth(), aa.getHeight());
+        PicOps.copy(whole, grayscale, aa.left, aa.top);
+        return grayscale;
+    }
+
     private String _recognizeThroughCache(RecognParams params, PicGrayscale pic) {
         FuzzyComparablePicClip keyPic = new FuzzyComparablePicClip(pic);
         String result = this._cache.get(keyPic);
@@ -132,7 +147,8 @@ public class OCR implements IOCR {
         AreaAbsPx aa = (AreaAbsPx) a;
         Measure m = new Measure(String.format("ocr %d×%d %d,%d", aa.getWidth(), aa.getHeight(), aa.left, aa.top));
         PicData capture = this._currScrPic.getCurrScrPic().getLastCapture();
-        PicGrayscale preprocBitmap = this._preprocessBitmap(capture, a);
+        FramePlanes planes = FramePlanes.forFrame(capture, this._currScrPic.getCurrScrPic().serial());
+        PicGrayscale preprocBitmap = this._cropGrayscale(planes, a);
         String r = this._recognizeThroughCache(params, preprocBitmap);
         m.done();
         m.setDetails(r.replace("\n", "\\n"));
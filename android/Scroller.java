@@ -1,7 +1,5 @@
 package com.drscbt.interactor;
 
-import android.os.SystemClock;
-
 import com.drscbt.andrapp.util.AndroidUtils;
 import com.drscbt.auto_iface.CtrlScrlResCode;
 import com.drscbt.auto_iface.IAreaAbsPx;
@@ -9,14 +7,27 @@ import com.drscbt.auto_iface.ICtrlScrlRes;
 import com.drscbt.auto_iface.IPoint;
 import com.drscbt.auto_iface.IScroller;
 import com.drscbt.input.InputSimulator;
+import com.drscbt.screencapture.FrameAvailSignal;
+import com.drscbt.shared.piclib.Frame;
 import com.drscbt.shared.piclib.PicData;
 import com.drscbt.shared.piclocate.Matchers;
+import com.drscbt.shared.piclocate.scrollfinder.ScrollFinderRowSig;
 import com.drscbt.shared.piclocate.scrollfinder.ScrollInfo;
+import com.drscbt.shared.piclocate.scrollfinder.ScrollSettle;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class Scroller implements IScroller {
+    // the row signatures only tell when the scroll settled, the full
+    // comparison has the final say
+    private static final int ROW_SIG_CHAN_ERR = 16;
+    // rows around the expected offset tried before searching them all
+    private static final int ROW_SIG_WINDOW = 8;
+    private static final int SETTLE_FRAMES = 3;
+    private static final long SETTLE_QUIET_MS = 300;
+    private static final long CHK_TIMEOUT_MS = 2500;
+
     private Logger _log = LoggerFactory.getLogger(Scroller.class);
     private PicData _scrlPrevScreen;
     private int _scrlPrevScreenSerial;
@@ -26,6 +37,9 @@ public class Scroller implements IScroller {
     private CurrScrPicProvider _currScreenPicProvider;
     private ScreenDumper _scrDumper;
     private AndroidUtils.DispSize _dispSize;
+    private ScrollSettle _settle = new ScrollSettle(new ScrollFinderRowSig(ROW_SIG_CHAN_ERR),
+        SETTLE_FRAMES, SETTLE_QUIET_MS);
+    private CurrScrFrameSource _frameSrc;
 
     public Scroller(Interactor inter,
                     InputSimulator inpSimulator,
@@ -39,6 +53,7 @@ public class Scroller implements IScroller {
         this._currScreenPicProvider = cScreenPic;
         this._scrDumper = scrDumper;
         this._dispSize = dispSize;
+        this._frameSrc = new CurrScrFrameSource(cScreenPic, FrameAvailSignal.getInstance());
         this._scrlPrevScreen = PicData.create(
             this._currScreenPicProvider.getCurrScrPic().getWidth(),
             this._currScreenPicProvider.getCurrScrPic().getHeight()
@@ -46,8 +61,10 @@ public class Scroller implements IScroller {
     }
 
     private void _checkPre() throws InterruptedException {
-        PicData pic = this._currScreenPicProvider.getCurrScrPic().capture();
-        this._scrlPrevScreenSerial = this._currScreenPicProvider.getCurrScrPic().serial();
+        this._frameSrc.mark();
+        Frame frame = this._frameSrc.capture();
+        PicData pic = frame.pic;
+        this._scrlPrevScreenSerial = frame.serial;
 
         System.arraycopy(pic.rgba, 0,
                 this._scrlPrevScreen.rgba, 0,
@@ -55,33 +72,35 @@ public class Scroller implements IScroller {
     }
 
     private CtrlScrlRes _checkPost(int expectedOffsetPx, AreaAbsPx area) throws InterruptedException {
-        ScrollInfo si;
-        CtrlScrlRes csr = null;
-        int chkTo = 2500;
-        long chkTimeStart = SystemClock.uptimeMillis();
-        int chkElapsed = 0;
-        PicData pic = null;
-        int picSerial = -1;
-        while (chkElapsed <= chkTo) {
-            pic = this._currScreenPicProvider.getCurrScrPic().capture();
-            picSerial = this._currScreenPicProvider.getCurrScrPic().serial();
-            si = this._matchers.scrollOffset(this._scrlPrevScreen, pic, area.maskConf());
-            csr = this._scrlResFromScrlInfo(expectedOffsetPx, si);
-            if (csr.result == CtrlScrlResCode.AS_EXPECTED) {
-                break;
-            }
-            chkElapsed = (int) (SystemClock.uptimeMillis() - chkTimeStart);
+        ScrollSettle.Result sr = this._settle.await(this._frameSrc,
+            this._scrlPrevScreen, this._scrlPrevScreenSerial, area.maskConf(),
+            expectedOffsetPx, ROW_SIG_WINDOW, CHK_TIMEOUT_MS);
+        if (!sr.settled) {
+            this._log.warn("scroll not settled: {}", sr);
         }
 
+        PicData pic;
+        int picSerial;
+        if (sr.frame != null) {
+            pic = sr.frame.pic;
+            picSerial = sr.frame.serial;
+        } else {
+            // nothing composed since the scroll
+            Frame frame = this._frameSrc.capture();
+            pic = frame.pic;
+            picSerial = frame.serial;
+        }
+
+        ScrollInfo si = this._matchers.scrollOffset(this._scrlPrevScreen, pic, area.maskConf());
+        CtrlScrlRes csr = this._scrlResFromScrlInfo(expectedOffsetPx, si);
+
         if ((csr.result == CtrlScrlResCode.DISPARATE)
                 || (csr.result == CtrlScrlResCode.OPPOSITE)
                 || (csr.result == CtrlScrlResCode.STILL)) {
             this._log.error("returning {}", csr);
             this._log.error(area.toString());
             this._scrDumper.image(this._scrlPrevScreen, this._scrlPrevScreenSerial, "prev");
-            if (pic != null) {
-                this._scrDumper.image(pic, picSerial, "next");
-            }
+            this._scrDumper.image(pic, picSerial, "next");
             this._scrDumper.lastCaptureHighlight(area, "scrl_a");
         }
 
@@ -98,9 +117,13 @@ public class Scroller implements IScroller {
         int ox = o.x;
         int oy = o.y;
 
-        this._checkPre();
-        int expectedOffsetPx = this._call(u, m, offset, ox, oy);
-        return this._checkPost(expectedOffsetPx, (AreaAbsPx) checkAreai);
+        try {
+            this._checkPre();
+            int expectedOffsetPx = this._call(u, m, offset, ox, oy);
+            return this._checkPost(expectedOffsetPx, (AreaAbsPx) checkAreai);
+        } finally {
+            this._frameSrc.done();
+        }
     }
 
     // positive offset - "read further"; negative - "go back"
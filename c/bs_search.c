@@ -1,29 +1,267 @@
 #include <stdlib.h>
 #include <stdio.h>
 #include "bs_search.h"
+#include "pat_compiled.h"
+#include "pat_mask.h"
+#include "search_parallel.h"
+#include "search_ws.h"
 #include "color.h"
+#include "simd_x86.h"
 #include "drscbt.h"
 
 struct search_results bs_match(Img canvas_img, Img pat_img, int chan_err_toler) {
+    return bs_match_lim(canvas_img, pat_img, chan_err_toler, SEARCH_MAX_RESULTS);
+}
+
+struct search_results bs_match_lim(Img canvas_img, Img pat_img, int chan_err_toler, int max_results) {
+    struct search_sink_buf buf;
+    search_sink_buf_init(&buf, max_results);
+
+    int64_t conv_start = search_prof_start(&buf.sink);
     uint8_t *canvas_grayscale = malloc(canvas_img.px_cnt);
     pic_to_grayscale(canvas_img, canvas_grayscale);
+    search_prof_conv(&buf.sink, canvas_img.px_cnt, conv_start);
+
+    bs_match_gs_sink(canvas_img, canvas_grayscale, pat_img, chan_err_toler, &buf.sink);
+
+    free(canvas_grayscale);
 
+    return search_sink_buf_take(&buf);
+}
+
+struct search_results bs_match_gs(Img canvas_img, uint8_t *canvas_grayscale, Img pat_img, int chan_err_toler,
+    int max_results
+) {
+    struct search_sink_buf buf;
+    search_sink_buf_init(&buf, max_results);
+    bs_match_gs_sink(canvas_img, canvas_grayscale, pat_img, chan_err_toler, &buf.sink);
+    return search_sink_buf_take(&buf);
+}
+
+void bs_match_gs_sink(Img canvas_img, uint8_t *canvas_grayscale, Img pat_img, int chan_err_toler,
+    struct search_sink *sink
+) {
+    bs_match_area_sink(canvas_img, canvas_grayscale, canvas_img.width, canvas_img.height, pat_img, chan_err_toler,
+        sink);
+}
+
+// canvas dimensions as for rk_match_area_sink
+void bs_match_area_sink(Img canvas_img, uint8_t *canvas_grayscale, int canvas_w, int canvas_h, Img pat_img,
+    int chan_err_toler, struct search_sink *sink
+) {
+    struct pat_mask *mask = pat_mask_mk(pat_img);
+    if (mask != NULL) {
+        bs_match_masked(canvas_img, canvas_grayscale, canvas_w, canvas_h, mask, chan_err_toler, sink);
+        pat_mask_free(mask);
+        return;
+    }
+
+    int64_t conv_start = search_prof_start(sink);
     uint8_t *pat_grayscale = malloc(pat_img.px_cnt);
     pic_to_grayscale(pat_img, pat_grayscale);
+    search_prof_conv(sink, pat_img.px_cnt, conv_start);
 
-    struct bs_sums canv_sums = bs_calc_sums(canvas_grayscale, canvas_img.width, canvas_img.height, pat_img.width);
-
+    int64_t sums_start = search_prof_start(sink);
+    struct bs_sums canv_sums = bs_calc_sums(canvas_grayscale, canvas_w, canvas_h, pat_img.width);
     struct bs_sums pat_sums = bs_calc_sums(pat_grayscale, pat_img.width, pat_img.height, pat_img.width);
+    search_prof_end(sink, SEARCH_PHASE_SUMS, sums_start);
+
+    bs_match_sums(canvas_img, canv_sums, pat_img, pat_sums, chan_err_toler, NULL, sink);
+
+    bs_free_sums(canv_sums);
+    bs_free_sums(pat_sums);
+    free(pat_grayscale);
+}
+
+// row sums of the mask's anchor, the largest opaque rectangle, select the
+// candidates; they are confirmed over all opaque pixels of the pattern and
+// reported at the pattern's start location; canvas dimensions as for
+// rk_match_area_sink
+void bs_match_masked(Img canvas_img, uint8_t *canvas_grayscale, int canvas_w, int canvas_h, struct pat_mask *mask,
+    int chan_err_toler, struct search_sink *sink
+) {
+    Img anchor = mask->anchor;
+    int64_t conv_start = search_prof_start(sink);
+    uint8_t *anchor_grayscale = malloc(anchor.px_cnt);
+    pic_to_grayscale(anchor, anchor_grayscale);
+    search_prof_conv(sink, anchor.px_cnt, conv_start);
+
+    int64_t sums_start = search_prof_start(sink);
+    struct bs_sums anchor_sums = bs_calc_sums(anchor_grayscale, anchor.width, anchor.height, anchor.width);
+    struct bs_sums canv_sums = bs_calc_sums(canvas_grayscale, canvas_w, canvas_h, anchor.width);
+    search_prof_end(sink, SEARCH_PHASE_SUMS, sums_start);
+
+    bs_match_sums(canvas_img, canv_sums, anchor, anchor_sums, chan_err_toler, mask, sink);
+
+    bs_free_sums(canv_sums);
+    bs_free_sums(anchor_sums);
+    free(anchor_grayscale);
+}
+
+struct search_results bs_match_compiled(Img canvas_img, uint8_t *canvas_grayscale, struct compiled_pat *cp,
+    int chan_err_toler, int max_results
+) {
+    struct search_sink_buf buf;
+    search_sink_buf_init(&buf, max_results);
+    bs_match_compiled_sink(canvas_img, canvas_grayscale, cp, chan_err_toler, &buf.sink);
+    return search_sink_buf_take(&buf);
+}
+
+// a masked pattern's anchor was summed once by pat_compile(), as
+// bs_match_masked() would per search
+void bs_match_compiled_sink(Img canvas_img, uint8_t *canvas_grayscale, struct compiled_pat *cp,
+    int chan_err_toler, struct search_sink *sink
+) {
+    Img hashed = pat_compiled_hashed(cp);
+
+    int64_t sums_start = search_prof_start(sink);
+    struct bs_sums canv_sums = bs_calc_sums(canvas_grayscale, canvas_img.width, canvas_img.height, hashed.width);
+    search_prof_end(sink, SEARCH_PHASE_SUMS, sums_start);
+
+    bs_match_sums(canvas_img, canv_sums, hashed, cp->bs_sums, chan_err_toler, cp->mask, sink);
+
+    bs_free_sums(canv_sums);
+}
+
+// with a mask, pat_img and pat_sums are the mask's anchor
+void bs_match_sums(Img canvas_img, struct bs_sums canv_sums,
+    Img pat_img, struct bs_sums pat_sums, int chan_err_toler, struct pat_mask *mask, struct search_sink *sink
+) {
+    int64_t scan_start = search_prof_start(sink);
+    int threads_cnt = search_get_threads();
+    if ((threads_cnt > 1) && (canv_sums.width > 1)) {
+        bs_match_sums_parallel(canvas_img, canv_sums, pat_img, pat_sums, chan_err_toler, mask, sink, threads_cnt);
+    } else {
+        bs_match_sums_cols(canvas_img, canv_sums, pat_img, pat_sums, chan_err_toler, mask,
+            0, canv_sums.width, sink, NULL);
+    }
+    search_prof_end(sink, SEARCH_PHASE_SCAN, scan_start);
+}
+
+struct bs_sums_job {
+    Img canvas_img;
+    struct bs_sums canv_sums;
+    Img pat_img;
+    struct bs_sums pat_sums;
+    int chan_err_toler;
+    struct pat_mask *mask;
+    struct search_stripe *stripes;
+};
+
+static void bs_match_sums_stripe(void *arg, int stripe_i) {
+    struct bs_sums_job *job = arg;
+    struct search_stripe *stripe = job->stripes + stripe_i;
+    bs_match_sums_cols(job->canvas_img, job->canv_sums, job->pat_img, job->pat_sums, job->chan_err_toler, job->mask,
+        stripe->col_from, stripe->col_to, &stripe->buf.sink, stripe);
+}
 
-    struct match_item *occurrences = malloc(SEARCH_MAX_RESULTS * sizeof(struct match_item));
-    struct search_results results;
-    results.occurrences = occurrences;
-    results.res_count = 0;
-    results.collisions = 0;
+static void bs_match_sums_stripes(Img canvas_img, struct bs_sums canv_sums, Img pat_img, struct bs_sums pat_sums,
+    int chan_err_toler, struct pat_mask *mask, struct search_sink *sink, struct search_stripe *stripes, int stripe_cnt
+) {
+    struct bs_sums_job job;
+    job.canvas_img = canvas_img;
+    job.canv_sums = canv_sums;
+    job.pat_img = pat_img;
+    job.pat_sums = pat_sums;
+    job.chan_err_toler = chan_err_toler;
+    job.mask = mask;
+    job.stripes = stripes;
 
+    search_run_stripes(bs_match_sums_stripe, &job, stripe_cnt);
+
+    search_stripes_merge(stripes, stripe_cnt, sink);
+}
+
+// stripes collect into their own buffers, sink only sees the merge
+void bs_match_sums_parallel(Img canvas_img, struct bs_sums canv_sums,
+    Img pat_img, struct bs_sums pat_sums, int chan_err_toler, struct pat_mask *mask, struct search_sink *sink,
+    int stripe_cnt
+) {
+    if (stripe_cnt > canv_sums.width) {
+        stripe_cnt = canv_sums.width;
+    }
+
+    struct search_stripe *stripes = search_stripes_mk(canv_sums.width, stripe_cnt, sink);
+    bs_match_sums_stripes(canvas_img, canv_sums, pat_img, pat_sums, chan_err_toler, mask, sink, stripes, stripe_cnt);
+    search_stripes_free(stripes, stripe_cnt);
+}
+
+// bs_match_gs_sink with every buffer taken from ws, see rk_match_ws
+bool bs_match_ws(struct search_ws *ws, Img canvas_img, Img pat_img, int chan_err_toler, struct search_sink *sink) {
+    if ((pat_img.width > canvas_img.width) || (pat_img.height > canvas_img.height)) {
+        return true;
+    }
+
+    int64_t conv_start = search_prof_start(sink);
+    uint8_t *canvas_grayscale = search_ws_slot(ws, WS_CANVAS_CH, canvas_img.px_cnt);
+    if (canvas_grayscale == NULL) {
+        return false;
+    }
+    pic_to_grayscale(canvas_img, canvas_grayscale);
+
+    struct pat_mask *mask = search_ws_mask(ws, pat_img);
+    Img summed = (mask != NULL) ? mask->anchor : pat_img;
+
+    uint8_t *pat_grayscale = search_ws_slot(ws, WS_PAT_CH, summed.px_cnt);
+    if (pat_grayscale == NULL) {
+        return false;
+    }
+    pic_to_grayscale(summed, pat_grayscale);
+    search_prof_conv(sink, canvas_img.px_cnt + summed.px_cnt, conv_start);
+
+    int64_t sums_start = search_prof_start(sink);
+    int sums_w = canvas_img.width - summed.width + 1;
+    bs_sum_value *pat_sums_mem = search_ws_slot(ws, WS_PAT_SUMS, sizeof(bs_sum_value) * summed.height);
+    bs_sum_value *canv_sums_mem = search_ws_slot(ws, WS_CANVAS_SUMS, sizeof(bs_sum_value) * sums_w * canvas_img.height);
+    if ((pat_sums_mem == NULL) || (canv_sums_mem == NULL)) {
+        return false;
+    }
+    struct bs_sums pat_sums = bs_calc_sums_in(pat_grayscale, summed.width, summed.height, summed.width, pat_sums_mem);
+    struct bs_sums canv_sums = bs_calc_sums_in(canvas_grayscale, canvas_img.width, canvas_img.height, summed.width,
+        canv_sums_mem);
+    search_prof_end(sink, SEARCH_PHASE_SUMS, sums_start);
+
+    int64_t scan_start = search_prof_start(sink);
+    int threads_cnt = search_get_threads();
+    if ((threads_cnt > 1) && (sums_w > 1)) {
+        int stripe_cnt = (threads_cnt > sums_w) ? sums_w : threads_cnt;
+        struct search_stripe *stripes = search_ws_stripes(ws, sums_w, stripe_cnt, sink);
+        bs_match_sums_stripes(canvas_img, canv_sums, summed, pat_sums, chan_err_toler, mask, sink, stripes, stripe_cnt);
+    } else {
+        bs_match_sums_cols(canvas_img, canv_sums, summed, pat_sums, chan_err_toler, mask, 0, sums_w, sink, NULL);
+    }
+    search_prof_end(sink, SEARCH_PHASE_SCAN, scan_start);
+    return true;
+}
+
+static bool bs_confirm(Img canvas_img, Img pat_img, int sx, int sy, int chan_err_toler, int64_t *confirm_pxs) {
+    for (int y = 0; y < pat_img.height; y++) {
+        for (int x = 0; x < pat_img.width; x++) {
+            struct pixel c_px = val_at(canvas_img, sx + x, sy + y);
+            struct pixel p_px = val_at(pat_img, x, y);
+            c_px.filler = 0;
+            p_px.filler = 0;
+            if (!val_eq_err(c_px, p_px, chan_err_toler)) {
+                *confirm_pxs += (y * pat_img.width) + x + 1;
+                return false;
+            }
+        }
+    }
+    *confirm_pxs += pat_img.px_cnt;
+    return true;
+}
+
+void bs_match_sums_cols(Img canvas_img, struct bs_sums canv_sums,
+    Img pat_img, struct bs_sums pat_sums, int chan_err_toler, struct pat_mask *mask,
+    int col_from, int col_to, struct search_sink *sink, struct search_stripe *stripe
+) {
     int max_possible_pat_start_row = canv_sums.height - pat_sums.height;
 
-    for (int canv_sum_col_i = 0; canv_sum_col_i < canv_sums.width; canv_sum_col_i++) {
+    for (int canv_sum_col_i = col_from; canv_sum_col_i < col_to; canv_sum_col_i++) {
+        if ((stripe != NULL) && search_stripe_superseded(stripe)) {
+            return;
+        }
+
         for (int canv_sum_row_i = 0; canv_sum_row_i <= max_possible_pat_start_row; canv_sum_row_i++) {
             for (int cmp_row_i = 0; cmp_row_i < pat_sums.height; cmp_row_i++) {
                 bs_sum_value c_sum = bs_sum_at(canv_sums, canv_sum_col_i, canv_sum_row_i + cmp_row_i);
@@ -33,44 +271,39 @@ struct search_results bs_match(Img canvas_img, Img pat_img, int chan_err_toler)
                 }
             }
 
-            int confirm_y, confirm_x;
-            for (confirm_y = 0; confirm_y < pat_img.height; confirm_y++) {
-                for (confirm_x = 0; confirm_x < pat_img.width; confirm_x++) {
-                    struct pixel c_px = val_at(canvas_img, canv_sum_col_i + confirm_x, canv_sum_row_i + confirm_y);
-                    struct pixel p_px = val_at(pat_img, confirm_x, confirm_y);
-                    c_px.filler = 0;
-                    p_px.filler = 0;
-                    if (!val_eq_err(c_px, p_px, chan_err_toler)) {
-                        goto confirm_stop;
-                    }
+            int64_t confirm_start = search_prof_start(sink);
+            bool confirmed;
+            if (mask != NULL) {
+                if (!pat_mask_fits(canv_sums.width + pat_img.width - 1, canv_sums.height, mask,
+                    canv_sum_col_i, canv_sum_row_i)
+                ) {
+                    continue;
                 }
+                confirmed = pat_mask_confirm(canvas_img, mask, canv_sum_col_i, canv_sum_row_i, chan_err_toler,
+                    &sink->confirm_pxs);
+            } else {
+                confirmed = bs_confirm(canvas_img, pat_img, canv_sum_col_i, canv_sum_row_i, chan_err_toler,
+                    &sink->confirm_pxs);
             }
-            confirm_stop:
-
-            if ((confirm_y == pat_img.height) && (confirm_x == pat_img.width)) {
-                (occurrences + results.res_count)->x = canv_sum_col_i;
-                (occurrences + results.res_count)->y = canv_sum_row_i;
-                results.res_count++;
-                if (results.res_count == SEARCH_MAX_RESULTS) {
-                    goto search_stop;
+            search_prof_candidate(sink, confirm_start);
+
+            if (confirmed) {
+                int res_x = canv_sum_col_i - ((mask != NULL) ? mask->anchor_x : 0);
+                int res_y = canv_sum_row_i - ((mask != NULL) ? mask->anchor_y : 0);
+                if (!search_sink_add(sink, res_x, res_y)) {
+                    if (stripe != NULL) {
+                        search_stripe_filled(stripe);
+                    }
+                    return;
                 }
             } else {
-                results.collisions++;
+                sink->collisions++;
             }
 
             next_start_row:
             continue;
         }
-
     }
-    search_stop:
-
-    bs_free_sums(canv_sums);
-    bs_free_sums(pat_sums);
-    free(canvas_grayscale);
-    free(pat_grayscale);
-
-    return results;
 }
 
 bool bs_candidate(bs_sum_value a, bs_sum_value b, int chan_err_toler) {
@@ -99,15 +332,23 @@ int bs_adv(bs_state *state, bs_sum_value *sum, const uint8_t *stride_s, const ui
 }
 
 struct bs_sums bs_calc_sums(uint8_t *img_channel, int img_width, int img_height, int win) {
+    size_t sums_size = sizeof(bs_sum_value) * (img_width - win + 1) * img_height;
+    return bs_calc_sums_in(img_channel, img_width, img_height, win, malloc(sums_size));
+}
+
+// sums_start has room for (img_width - win + 1) * img_height sums, the result refers to it
+struct bs_sums bs_calc_sums_in(uint8_t *img_channel, int img_width, int img_height, int win,
+    bs_sum_value *sums_start
+) {
     bs_state state;
     bs_sum_value sum;
 
     uint8_t *in_row_start = img_channel;
     int sums_stride = (img_width - win + 1);
-    size_t sums_size = sizeof(bs_sum_value) * sums_stride * img_height;
-    bs_sum_value *sums_start = malloc(sums_size);
 
-    for (int y = 0; y < img_height; y++) {
+    bool vectorized = simd_bs_calc_sums(img_channel, img_width, img_height, win, sums_start);
+
+    for (int y = 0; (y < img_height) && !vectorized; y++) {
         uint8_t *in_current = in_row_start;
         uint8_t *in_row_end = in_row_start + img_width;
         bs_sum_value *sums_row_start = sums_start + (y * sums_stride);
@@ -1,9 +1,10 @@
 #include <stdlib.h>
 #include <math.h>
 #include "color.h"
+#include "simd_x86.h"
 
 void pic_to_grayscale(Img img, uint8_t* out) {
-    for (int i = 0; i < img.px_cnt; i++) {
+    for (int i = simd_pic_to_grayscale(img.pxs, out, img.px_cnt); i < img.px_cnt; i++) {
         struct pixel rgb_px = *(img.pxs + i);
         *(out + i) = desaturate(rgb_px);
     }
@@ -14,7 +15,7 @@ uint8_t desaturate(struct pixel rgb_px) {
 }
 
 void condensed_hsv_a(struct pixel* in, uint8_t* out, int len, int bits_1, int bits_2, int bits_3) {
-    for (int i = 0; i < len; i++) {
+    for (int i = simd_condensed_hsv_a(in, out, len, bits_1, bits_2, bits_3); i < len; i++) {
         struct pixel rgb_px = *(in + i);
         *(out + i) = condensed_hsv(rgb_px, bits_1, bits_2, bits_3);
     }
@@ -25,6 +26,13 @@ uint8_t condensed_hsv(struct pixel in, int bits_1, int bits_2, int bits_3) {
     return trunc_to_byte(hsv_px.A, hsv_px.B, hsv_px.C, bits_1, bits_2, bits_3);
 }
 
+void to_hsv_a(struct pixel* in, uint32_t* out, int len) {
+    for (int i = simd_to_hsv_a(in, out, len); i < len; i++) {
+        struct pixel hsv_px = to_hsv(*(in + i));
+        *(out + i) = ((uint32_t)hsv_px.A << 24) | ((uint32_t)hsv_px.B << 16) | ((uint32_t)hsv_px.C << 8) | 0xFF;
+    }
+}
+
 struct pixel to_hsv(struct pixel clr_in) {
     int highest_rgb = MAX3(clr_in.A, clr_in.B, clr_in.C);
     int lowest_rgb = MIN3(clr_in.A, clr_in.B, clr_in.C);
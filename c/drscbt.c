@@ -21,6 +21,10 @@ bool val_eq(struct pixel a, struct pixel b) {
 }
 
 uint32_t modpow(int num, uint32_t pow, int modulus) {
+    // the loop below assumes a set bit, it would return num
+    if (pow == 0) {
+        return 1 % modulus;
+    }
     int i = 0;
     for (; i < 32; i++) {
         if ((pow & (1u << 31)) != 0) {
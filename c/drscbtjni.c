@@ -1,4 +1,6 @@
+#include <stdlib.h>
 #include <stdint.h>
+#include <stdio.h>
 #include <jni.h>
 #include "search.h"
 #include "bs_scroll.h"
@@ -6,6 +8,56 @@
 #include "color.h"
 #include "bs_search.h"
 #include "rk_search.h"
+#include "rk64_search.h"
+#include "pat_compiled.h"
+#include "search_parallel.h"
+#include "search_ws.h"
+
+static struct {
+    jclass results_cls;
+    jmethodID results_init;
+    jfieldID results_phase_stats;
+    jclass pnt_cls;
+    jmethodID pnt_init;
+    jclass sink_cls;
+    jmethodID sink_accept;
+} jids;
+
+static jclass j_global_cls(JNIEnv *env, const char *name) {
+    jclass local_cls = (*env)->FindClass(env, name);
+    if (local_cls == NULL) {
+        return NULL;
+    }
+    jclass global_cls = (*env)->NewGlobalRef(env, local_cls);
+    (*env)->DeleteLocalRef(env, local_cls);
+    return global_cls;
+}
+
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved) {
+    JNIEnv *env;
+    if ((*vm)->GetEnv(vm, (void**)&env, JNI_VERSION_1_6) != JNI_OK) {
+        return JNI_ERR;
+    }
+
+    jids.results_cls = j_global_cls(env, "com/drscbt/shared/piclocate/twodmatcher/NativePicSearchResults");
+    jids.pnt_cls = j_global_cls(env, "com/drscbt/shared/piclocate/Point");
+    jids.sink_cls = j_global_cls(env, "com/drscbt/shared/piclocate/twodmatcher/IMatchSink");
+    if ((jids.results_cls == NULL) || (jids.pnt_cls == NULL) || (jids.sink_cls == NULL)) {
+        return JNI_ERR;
+    }
+
+    jids.results_init = (*env)->GetMethodID(env, jids.results_cls, "<init>", "(IJ[I)V");
+    jids.results_phase_stats = (*env)->GetFieldID(env, jids.results_cls, "phaseStats", "[J");
+    jids.pnt_init = (*env)->GetMethodID(env, jids.pnt_cls, "<init>", "(II)V");
+    jids.sink_accept = (*env)->GetMethodID(env, jids.sink_cls, "accept", "([II)Z");
+    if ((jids.results_init == NULL) || (jids.results_phase_stats == NULL) || (jids.pnt_init == NULL) ||
+        (jids.sink_accept == NULL)
+    ) {
+        return JNI_ERR;
+    }
+
+    return JNI_VERSION_1_6;
+}
 
 JNIEXPORT jint JNICALL
 Java_com_drscbt_shared_piclocate_scrollfinder_ScrollFinderFuzzyNa_checkScrollBSFuzzyCall(
@@ -58,13 +110,7 @@ JNIEXPORT void JNICALL Java_com_drscbt_shared_color_ColorConv_rgb2hsvArrNaCall(
 
     jint* hsva_arr = (*env)->GetIntArrayElements(env, jhsv_arr, 0);
 
-    for (int i = 0; i < pixa_arr_len; i++) {
-        struct pixel clr_in;
-        struct pixel clr_out;
-        clr_in = ((struct pixel*)pixa_arr)[i];
-        clr_out = to_hsv(clr_in);
-        hsva_arr[i] = *((int32_t*)(&clr_out)) | 0xFF;
-    }
+    to_hsv_a((struct pixel*)pixa_arr, (uint32_t*)hsva_arr, pixa_arr_len);
 
     (*env)->ReleaseIntArrayElements(env, jpix_arr, pixa_arr, JNI_ABORT);
     (*env)->ReleaseIntArrayElements(env, jhsv_arr, hsva_arr, JNI_COMMIT_AND_FREE);
@@ -89,18 +135,77 @@ JNIEXPORT void JNICALL Java_com_drscbt_shared_color_ColorCondense_condenseNaCall
 
     jbyte* pic8_arr = (*env)->GetByteArrayElements(env, jpic8_arr, 0);
 
-    struct pixel clr_in;
-    struct pixel clr_out;
-    for (int i = 0; i < rgb_arr_len; i++) {
-        clr_in = ((struct pixel*)rgb_arr)[i];
-        clr_out = to_hsv(clr_in);
-        pic8_arr[i] = trunc_to_byte(clr_out.A, clr_out.B, clr_out.C, bits_1, bits_2, bits_3);
-    }
+    condensed_hsv_a((struct pixel*)rgb_arr, (uint8_t*)pic8_arr, rgb_arr_len, bits_1, bits_2, bits_3);
 
     (*env)->ReleaseIntArrayElements(env, jrgb_arr, rgb_arr, JNI_ABORT);
     (*env)->ReleaseByteArrayElements(env, jpic8_arr, pic8_arr, JNI_COMMIT_AND_FREE);
 }
 
+JNIEXPORT void JNICALL Java_com_drscbt_shared_color_ColorConv_grayscaleNaCall(
+    JNIEnv *env, jclass kls, jintArray jrgb_arr, jbyteArray jgray_arr
+) {
+    jint* rgb_arr = (*env)->GetIntArrayElements(env, jrgb_arr, 0);
+    jsize rgb_arr_len = (*env)->GetArrayLength(env, jrgb_arr);
+
+    jbyte* gray_arr = (*env)->GetByteArrayElements(env, jgray_arr, 0);
+
+    Img img;
+    img.px_cnt = rgb_arr_len;
+    img.pxs = (struct pixel*)rgb_arr;
+
+    pic_to_grayscale(img, (uint8_t*)gray_arr);
+
+    (*env)->ReleaseIntArrayElements(env, jrgb_arr, rgb_arr, JNI_ABORT);
+    (*env)->ReleaseByteArrayElements(env, jgray_arr, gray_arr, JNI_COMMIT_AND_FREE);
+}
+
+JNIEXPORT void JNICALL Java_com_drscbt_shared_piclib_DirectPic_glRgbaToPixelsNaCall(
+    JNIEnv *env, jclass kls, jobject jbuf, jint px_cnt
+) {
+    struct pixel *pxs = j_direct_pxs(env, jbuf, px_cnt);
+    if (pxs == NULL) {
+        return;
+    }
+
+#if __BYTE_ORDER__ == __ORDER_LITTLE_ENDIAN__
+    uint32_t *px = (uint32_t*)pxs;
+    for (int i = 0; i < px_cnt; i++) {
+        *(px + i) = __builtin_bswap32(*(px + i));
+    }
+#endif
+}
+
+JNIEXPORT void JNICALL Java_com_drscbt_shared_color_ColorConv_grayscaleDirectNaCall(
+    JNIEnv *env, jclass kls, jobject jrgb_buf, jint px_cnt, jbyteArray jgray_arr
+) {
+    struct pixel *pxs = j_direct_pxs(env, jrgb_buf, px_cnt);
+    if ((pxs == NULL) || !j_chk_arr_len(env, jgray_arr, px_cnt)) {
+        return;
+    }
+
+    Img img;
+    img.px_cnt = px_cnt;
+    img.pxs = pxs;
+
+    uint8_t *gray_arr = (*env)->GetPrimitiveArrayCritical(env, jgray_arr, 0);
+    pic_to_grayscale(img, gray_arr);
+    (*env)->ReleasePrimitiveArrayCritical(env, jgray_arr, gray_arr, 0);
+}
+
+JNIEXPORT void JNICALL Java_com_drscbt_shared_color_ColorCondense_condenseDirectNaCall(
+    JNIEnv *env, jclass kls, jobject jrgb_buf, jint px_cnt, jbyteArray jpic8_arr,
+    jint bits_1, jint bits_2, jint bits_3
+) {
+    struct pixel *pxs = j_direct_pxs(env, jrgb_buf, px_cnt);
+    if ((pxs == NULL) || !j_chk_arr_len(env, jpic8_arr, px_cnt)) {
+        return;
+    }
+
+    uint8_t *pic8_arr = (*env)->GetPrimitiveArrayCritical(env, jpic8_arr, 0);
+    condensed_hsv_a(pxs, pic8_arr, px_cnt, bits_1, bits_2, bits_3);
+    (*env)->ReleasePrimitiveArrayCritical(env, jpic8_arr, pic8_arr, 0);
+}
+
 JNIEXPORT jbyte JNICALL Java_com_drscbt_shared_color_ColorCondense_truncToByteNaCall(
     JNIEnv *env, jclass kls,
     jbyte ci1, jbyte ci2, jbyte ci3, jint bits_1, jint bits_2, jint bits_3
@@ -199,34 +304,1034 @@ Java_com_drscbt_shared_piclocate_twodmatcher_RK2DCrossNa_rkMatchCall(
     return results_j_instance;
 }
 
-jobject j_matchresults_from_struct(JNIEnv *env, struct search_results results) {
-    jclass hset_cls = (*env)->FindClass(env, "java/util/HashSet");
-    jmethodID hset_cls_constructor = (*env)->GetMethodID(env, hset_cls, "<init>", "()V");
+JNIEXPORT jobject JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_rkMatchDirectCall(
+    JNIEnv *env,
+    jclass kls,
+    jobject jtext_buf,
+    jintArray jarr_pat,
+    jint jtext_w,
+    jint jtext_h,
+    jint jpat_w
+) {
+    struct pixel *text = j_direct_pxs(env, jtext_buf, jtext_w * jtext_h);
+    if (text == NULL) {
+        return NULL;
+    }
 
-    jobject set = (*env)->NewObject(env, hset_cls, hset_cls_constructor);
-    jmethodID hset_cls_add = (*env)->GetMethodID(env, hset_cls, "add", "(Ljava/lang/Object;)Z");
+    jsize jarr_pat_l = (*env)->GetArrayLength(env, jarr_pat);
+    int32_t* pat = (*env)->GetIntArrayElements(env, jarr_pat, 0);
 
-    for (int ridx = 0; ridx < results.res_count; ridx++) {
-        struct match_item occurrence = *(results.occurrences + ridx);
-        jobject pnt = mk_pnt(env, occurrence.x, occurrence.y);
-        (*env)->CallBooleanMethod(env, set, hset_cls_add, pnt);
+    Img img_text;
+    img_text.px_cnt = jtext_w * jtext_h;
+    img_text.pxs = text;
+    img_text.width = jtext_w;
+    img_text.height = jtext_h;
+
+    Img img_pat;
+    img_pat.px_cnt = jarr_pat_l;
+    img_pat.pxs = (struct pixel*)pat;
+    img_pat.width = jpat_w;
+    img_pat.height = jarr_pat_l / jpat_w;
+
+    struct search_results results = rk_match(img_text, img_pat);
+
+    (*env)->ReleaseIntArrayElements(env, jarr_pat, pat, JNI_ABORT);
+
+    jobject results_j_instance = j_matchresults_from_struct(env, results);
+
+    free_search_results(results);
+
+    return results_j_instance;
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_bsMatchDirectCall(
+    JNIEnv *env,
+    jclass kls,
+    jobject jtext_buf,
+    jintArray jarr_pat,
+    jint jtext_w,
+    jint jtext_h,
+    jint jpat_w,
+    jint chan_err_toler
+) {
+    struct pixel *text = j_direct_pxs(env, jtext_buf, jtext_w * jtext_h);
+    if (text == NULL) {
+        return NULL;
+    }
+
+    jsize jarr_pat_l = (*env)->GetArrayLength(env, jarr_pat);
+    int32_t* pat = (*env)->GetIntArrayElements(env, jarr_pat, 0);
+
+    Img img_text;
+    img_text.px_cnt = jtext_w * jtext_h;
+    img_text.pxs = text;
+    img_text.width = jtext_w;
+    img_text.height = jtext_h;
+
+    Img img_pat;
+    img_pat.px_cnt = jarr_pat_l;
+    img_pat.pxs = (struct pixel*)pat;
+    img_pat.width = jpat_w;
+    img_pat.height = jarr_pat_l / jpat_w;
+
+    struct search_results results = bs_match(img_text, img_pat, chan_err_toler);
+
+    (*env)->ReleaseIntArrayElements(env, jarr_pat, pat, JNI_ABORT);
+
+    jobject results_j_instance = j_matchresults_from_struct(env, results);
+
+    free_search_results(results);
+
+    return results_j_instance;
+}
+
+static struct search_results match_jarr(JNIEnv *env, jintArray jarr_text, jintArray jarr_pat,
+    jint jtext_w, jint jpat_w, bool rk, int chan_err_toler, int max_results
+) {
+    jsize jarr_text_l = (*env)->GetArrayLength(env, jarr_text);
+    jsize jarr_pat_l = (*env)->GetArrayLength(env, jarr_pat);
+
+    int32_t* text = (*env)->GetIntArrayElements(env, jarr_text, 0);
+    int32_t* pat = (*env)->GetIntArrayElements(env, jarr_pat, 0);
+
+    Img img_text;
+    img_text.px_cnt = jarr_text_l;
+    img_text.pxs = (struct pixel*)text;
+    img_text.width = jtext_w;
+    img_text.height = jarr_text_l / jtext_w;
+
+    Img img_pat;
+    img_pat.px_cnt = jarr_pat_l;
+    img_pat.pxs = (struct pixel*)pat;
+    img_pat.width = jpat_w;
+    img_pat.height = jarr_pat_l / jpat_w;
+
+    // the results grow as needed; max_results <= 0 keeps the matchers' cap
+    // of SEARCH_MAX_RESULTS, match_jarr_sink streams with no cap at all
+    if (max_results <= 0) {
+        max_results = SEARCH_MAX_RESULTS;
+    }
+
+    struct search_results results;
+    if (rk) {
+        results = rk_match_lim(img_text, img_pat, max_results);
+    } else {
+        results = bs_match_lim(img_text, img_pat, chan_err_toler, max_results);
+    }
+
+    (*env)->ReleaseIntArrayElements(env, jarr_text, text, JNI_ABORT);
+    (*env)->ReleaseIntArrayElements(env, jarr_pat, pat, JNI_ABORT);
+
+    return results;
+}
+
+static jobject j_first_pnt(JNIEnv *env, struct search_results results) {
+    if (results.res_count == 0) {
+        return NULL;
+    }
+    return mk_pnt(env, results.occurrences->x, results.occurrences->y);
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_rkMatchLimitCall(
+    JNIEnv *env, jclass kls,
+    jintArray jarr_text, jintArray jarr_pat, jint jtext_w, jint jpat_w, jint limit
+) {
+    struct search_results results = match_jarr(env, jarr_text, jarr_pat, jtext_w, jpat_w, true, 0, limit);
+    jobject results_j_instance = j_matchresults_from_struct(env, results);
+    free_search_results(results);
+    return results_j_instance;
+}
+
+JNIEXPORT jintArray JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_rkMatchPackedCall(
+    JNIEnv *env, jclass kls,
+    jintArray jarr_text, jintArray jarr_pat, jint jtext_w, jint jpat_w, jint limit
+) {
+    struct search_results results = match_jarr(env, jarr_text, jarr_pat, jtext_w, jpat_w, true, 0, limit);
+    jintArray jpacked = j_packed_from_struct(env, results);
+    free_search_results(results);
+    return jpacked;
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_rkMatchFirstCall(
+    JNIEnv *env, jclass kls,
+    jintArray jarr_text, jintArray jarr_pat, jint jtext_w, jint jpat_w
+) {
+    struct search_results results = match_jarr(env, jarr_text, jarr_pat, jtext_w, jpat_w, true, 0, 1);
+    jobject pnt = j_first_pnt(env, results);
+    free_search_results(results);
+    return pnt;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_rkMatchExistsCall(
+    JNIEnv *env, jclass kls,
+    jintArray jarr_text, jintArray jarr_pat, jint jtext_w, jint jpat_w
+) {
+    struct search_results results = match_jarr(env, jarr_text, jarr_pat, jtext_w, jpat_w, true, 0, 1);
+    jboolean found = (results.res_count > 0) ? JNI_TRUE : JNI_FALSE;
+    free_search_results(results);
+    return found;
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_bsMatchLimitCall(
+    JNIEnv *env, jclass kls,
+    jintArray jarr_text, jintArray jarr_pat, jint jtext_w, jint jpat_w, jint chan_err_toler, jint limit
+) {
+    struct search_results results = match_jarr(env, jarr_text, jarr_pat, jtext_w, jpat_w, false,
+        chan_err_toler, limit);
+    jobject results_j_instance = j_matchresults_from_struct(env, results);
+    free_search_results(results);
+    return results_j_instance;
+}
+
+JNIEXPORT jintArray JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_bsMatchPackedCall(
+    JNIEnv *env, jclass kls,
+    jintArray jarr_text, jintArray jarr_pat, jint jtext_w, jint jpat_w, jint chan_err_toler, jint limit
+) {
+    struct search_results results = match_jarr(env, jarr_text, jarr_pat, jtext_w, jpat_w, false,
+        chan_err_toler, limit);
+    jintArray jpacked = j_packed_from_struct(env, results);
+    free_search_results(results);
+    return jpacked;
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_bsMatchFirstCall(
+    JNIEnv *env, jclass kls,
+    jintArray jarr_text, jintArray jarr_pat, jint jtext_w, jint jpat_w, jint chan_err_toler
+) {
+    struct search_results results = match_jarr(env, jarr_text, jarr_pat, jtext_w, jpat_w, false,
+        chan_err_toler, 1);
+    jobject pnt = j_first_pnt(env, results);
+    free_search_results(results);
+    return pnt;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_bsMatchExistsCall(
+    JNIEnv *env, jclass kls,
+    jintArray jarr_text, jintArray jarr_pat, jint jtext_w, jint jpat_w, jint chan_err_toler
+) {
+    struct search_results results = match_jarr(env, jarr_text, jarr_pat, jtext_w, jpat_w, false,
+        chan_err_toler, 1);
+    jboolean found = (results.res_count > 0) ? JNI_TRUE : JNI_FALSE;
+    free_search_results(results);
+    return found;
+}
+
+// occurrences go to a Java IMatchSink in chunks of up to chunk.length / 2,
+// staged on the stack, so nothing is allocated for the results
+#define J_SINK_STAGE_LEN 512
+
+struct j_chunk_sink {
+    struct search_sink sink;
+    JNIEnv *env;
+    jobject jsink;
+    jintArray jchunk;
+    int stage_len;
+    int staged;
+    bool failed;
+    jint stage[J_SINK_STAGE_LEN];
+};
+
+static bool j_chunk_sink_flush(struct j_chunk_sink *cs) {
+    if (cs->staged == 0) {
+        return true;
+    }
+
+    JNIEnv *env = cs->env;
+    (*env)->SetIntArrayRegion(env, cs->jchunk, 0, cs->staged, cs->stage);
+    jboolean more = (*env)->CallBooleanMethod(env, cs->jsink, jids.sink_accept, cs->jchunk, cs->staged / 2);
+    cs->staged = 0;
+    if ((*env)->ExceptionCheck(env)) {
+        cs->failed = true;
+        return false;
+    }
+    return more == JNI_TRUE;
+}
+
+static bool j_chunk_sink_emit(struct search_sink *sink, int x, int y) {
+    struct j_chunk_sink *cs = (struct j_chunk_sink *)sink;
+    cs->stage[cs->staged++] = x;
+    cs->stage[cs->staged++] = y;
+    if (cs->staged == cs->stage_len) {
+        return j_chunk_sink_flush(cs);
+    }
+    return true;
+}
+
+// limit <= 0 means no limit; returns the collisions count
+static jint match_jarr_sink(JNIEnv *env, jintArray jarr_text, jintArray jarr_pat, jint jtext_w, jint jpat_w,
+    bool rk, int chan_err_toler, int limit, jintArray jchunk, jobject jsink
+) {
+    jsize chunk_len = (*env)->GetArrayLength(env, jchunk);
+    if (chunk_len < 2) {
+        jclass exc_cls = (*env)->FindClass(env, "java/lang/IllegalArgumentException");
+        (*env)->ThrowNew(env, exc_cls, "chunk has to hold at least one occurrence");
+        return 0;
     }
 
-    jclass results_jclass = (*env)->FindClass(env, "com/drscbt/shared/piclocate/twodmatcher/NativePicSearchResults");
-    jobject results_j_instance = (*env)->AllocObject(env, results_jclass);
+    struct j_chunk_sink cs;
+    search_sink_init(&cs.sink, j_chunk_sink_emit, limit);
+    cs.env = env;
+    cs.jsink = jsink;
+    cs.jchunk = jchunk;
+    cs.stage_len = (chunk_len < J_SINK_STAGE_LEN) ? (chunk_len & ~1) : J_SINK_STAGE_LEN;
+    cs.staged = 0;
+    cs.failed = false;
 
-    jfieldID coll_cnt_fld = (*env)->GetFieldID(env, results_jclass, "collisionsCnt", "I");
-    jfieldID matches_fld = (*env)->GetFieldID(env, results_jclass, "matches", "Ljava/util/Set;");
+    jsize jarr_text_l = (*env)->GetArrayLength(env, jarr_text);
+    jsize jarr_pat_l = (*env)->GetArrayLength(env, jarr_pat);
+
+    int32_t* text = (*env)->GetIntArrayElements(env, jarr_text, 0);
+    int32_t* pat = (*env)->GetIntArrayElements(env, jarr_pat, 0);
+
+    Img img_text;
+    img_text.px_cnt = jarr_text_l;
+    img_text.pxs = (struct pixel*)text;
+    img_text.width = jtext_w;
+    img_text.height = jarr_text_l / jtext_w;
+
+    Img img_pat;
+    img_pat.px_cnt = jarr_pat_l;
+    img_pat.pxs = (struct pixel*)pat;
+    img_pat.width = jpat_w;
+    img_pat.height = jarr_pat_l / jpat_w;
+
+    if (rk) {
+        uint8_t *text8 = malloc(img_text.px_cnt);
+        condensed_hsv_a(img_text.pxs, text8, img_text.px_cnt, H_BITS, S_BITS, V_BITS);
+        rk_match_c8_sink(img_text, text8, img_pat, &cs.sink);
+        free(text8);
+    } else {
+        uint8_t *text_gs = malloc(img_text.px_cnt);
+        pic_to_grayscale(img_text, text_gs);
+        bs_match_gs_sink(img_text, text_gs, img_pat, chan_err_toler, &cs.sink);
+        free(text_gs);
+    }
+
+    if (!cs.failed) {
+        j_chunk_sink_flush(&cs);
+    }
+
+    (*env)->ReleaseIntArrayElements(env, jarr_text, text, JNI_ABORT);
+    (*env)->ReleaseIntArrayElements(env, jarr_pat, pat, JNI_ABORT);
+
+    return cs.sink.collisions;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_rkMatchSinkCall(
+    JNIEnv *env, jclass kls,
+    jintArray jarr_text, jintArray jarr_pat, jint jtext_w, jint jpat_w, jint limit, jintArray jchunk, jobject jsink
+) {
+    return match_jarr_sink(env, jarr_text, jarr_pat, jtext_w, jpat_w, true, 0, limit, jchunk, jsink);
+}
+
+JNIEXPORT jint JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_bsMatchSinkCall(
+    JNIEnv *env, jclass kls,
+    jintArray jarr_text, jintArray jarr_pat, jint jtext_w, jint jpat_w, jint chan_err_toler, jint limit,
+    jintArray jchunk, jobject jsink
+) {
+    return match_jarr_sink(env, jarr_text, jarr_pat, jtext_w, jpat_w, false, chan_err_toler, limit, jchunk, jsink);
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_RK64CrossNa_rk64MatchCall(
+    JNIEnv *env, jobject this_obj,
+    jintArray jarr_text, jintArray jarr_pat, jint jtext_w, jint jpat_w, jint limit
+) {
+    jsize jarr_text_l = (*env)->GetArrayLength(env, jarr_text);
+    jsize jarr_pat_l = (*env)->GetArrayLength(env, jarr_pat);
+
+    int32_t* text = (*env)->GetIntArrayElements(env, jarr_text, 0);
+    int32_t* pat = (*env)->GetIntArrayElements(env, jarr_pat, 0);
+
+    Img img_text;
+    img_text.px_cnt = jarr_text_l;
+    img_text.pxs = (struct pixel*)text;
+    img_text.width = jtext_w;
+    img_text.height = jarr_text_l / jtext_w;
 
-    (*env)->SetIntField(env, results_j_instance, coll_cnt_fld, results.collisions);
-    (*env)->SetObjectField(env, results_j_instance, matches_fld, set);
+    Img img_pat;
+    img_pat.px_cnt = jarr_pat_l;
+    img_pat.pxs = (struct pixel*)pat;
+    img_pat.width = jpat_w;
+    img_pat.height = jarr_pat_l / jpat_w;
+
+    struct search_results results = rk64_match_lim(img_text, img_pat, limit);
+
+    (*env)->ReleaseIntArrayElements(env, jarr_text, text, JNI_ABORT);
+    (*env)->ReleaseIntArrayElements(env, jarr_pat, pat, JNI_ABORT);
 
+    jobject results_j_instance = j_matchresults_from_struct(env, results);
+    free_search_results(results);
     return results_j_instance;
 }
 
+// searches the roi of the frame in place: only its condensed or grayscale
+// plane is built, confirmation reads the frame's rows; results in frame
+// coordinates
+static jobject match_jarr_roi(JNIEnv *env, jintArray jarr_text, jintArray jarr_pat, jint jtext_stride, jint jpat_w,
+    jint roi_x, jint roi_y, jint roi_w, jint roi_h, bool rk, int chan_err_toler
+) {
+    jsize jarr_text_l = (*env)->GetArrayLength(env, jarr_text);
+    jsize jarr_pat_l = (*env)->GetArrayLength(env, jarr_pat);
+    int pat_h = jarr_pat_l / jpat_w;
+
+    if (!j_chk_roi(env, jarr_text_l, jtext_stride, roi_x, roi_y, roi_w, roi_h)) {
+        return NULL;
+    }
+
+    struct search_sink_buf buf;
+    search_sink_buf_init(&buf, SEARCH_MAX_RESULTS);
+
+    if ((roi_w < jpat_w) || (roi_h < pat_h)) {
+        struct search_results results = search_sink_buf_take(&buf);
+        jobject results_j_instance = j_matchresults_from_struct(env, results);
+        free_search_results(results);
+        return results_j_instance;
+    }
+
+    int32_t* text = (*env)->GetIntArrayElements(env, jarr_text, 0);
+    int32_t* pat = (*env)->GetIntArrayElements(env, jarr_pat, 0);
+
+    // rows jtext_stride apart, val_at() reads it as a roi_w x roi_h canvas
+    Img img_roi;
+    img_roi.px_cnt = roi_w * roi_h;
+    img_roi.pxs = (struct pixel*)text + (roi_y * jtext_stride) + roi_x;
+    img_roi.width = jtext_stride;
+    img_roi.height = roi_h;
+
+    Img img_pat;
+    img_pat.px_cnt = jarr_pat_l;
+    img_pat.pxs = (struct pixel*)pat;
+    img_pat.width = jpat_w;
+    img_pat.height = pat_h;
+
+    int64_t conv_start = search_prof_start(&buf.sink);
+    uint8_t *plane = malloc(img_roi.px_cnt);
+    for (int row = 0; row < roi_h; row++) {
+        Img img_row;
+        img_row.px_cnt = roi_w;
+        img_row.pxs = img_roi.pxs + (row * jtext_stride);
+        img_row.width = roi_w;
+        img_row.height = 1;
+        if (rk) {
+            condensed_hsv_a(img_row.pxs, plane + (row * roi_w), roi_w, H_BITS, S_BITS, V_BITS);
+        } else {
+            pic_to_grayscale(img_row, plane + (row * roi_w));
+        }
+    }
+    search_prof_conv(&buf.sink, img_roi.px_cnt, conv_start);
+
+    if (rk) {
+        rk_match_area_sink(img_roi, plane, roi_w, roi_h, img_pat, &buf.sink);
+    } else {
+        bs_match_area_sink(img_roi, plane, roi_w, roi_h, img_pat, chan_err_toler, &buf.sink);
+    }
+
+    free(plane);
+    (*env)->ReleaseIntArrayElements(env, jarr_pat, pat, JNI_ABORT);
+    (*env)->ReleaseIntArrayElements(env, jarr_text, text, JNI_ABORT);
+
+    struct search_results results = search_sink_buf_take(&buf);
+    offset_search_results(results, roi_x, roi_y);
+    jobject results_j_instance = j_matchresults_from_struct(env, results);
+    free_search_results(results);
+
+    return results_j_instance;
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_rkMatchRoiCall(
+    JNIEnv *env,
+    jclass kls,
+    jintArray jarr_text,
+    jintArray jarr_pat,
+    jint jtext_stride,
+    jint jpat_w,
+    jint roi_x,
+    jint roi_y,
+    jint roi_w,
+    jint roi_h
+) {
+    return match_jarr_roi(env, jarr_text, jarr_pat, jtext_stride, jpat_w, roi_x, roi_y, roi_w, roi_h, true, 0);
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_bsMatchRoiCall(
+    JNIEnv *env,
+    jclass kls,
+    jintArray jarr_text,
+    jintArray jarr_pat,
+    jint jtext_stride,
+    jint jpat_w,
+    jint roi_x,
+    jint roi_y,
+    jint roi_w,
+    jint roi_h,
+    jint chan_err_toler
+) {
+    return match_jarr_roi(env, jarr_text, jarr_pat, jtext_stride, jpat_w, roi_x, roi_y, roi_w, roi_h, false,
+        chan_err_toler);
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_bsMatchGsCall(
+    JNIEnv *env,
+    jclass kls,
+    jintArray jarr_text,
+    jbyteArray jarr_text_gs,
+    jintArray jarr_pat,
+    jint jtext_w,
+    jint jpat_w,
+    jint chan_err_toler
+) {
+    jsize jarr_text_l = (*env)->GetArrayLength(env, jarr_text);
+    jsize jarr_pat_l = (*env)->GetArrayLength(env, jarr_pat);
+    if (!j_chk_plane_len(env, jarr_text_gs, jarr_text_l)) {
+        return NULL;
+    }
+
+    int text_h = jarr_text_l / jtext_w;
+    int pat_h = jarr_pat_l / jpat_w;
+
+    int32_t* text = (*env)->GetIntArrayElements(env, jarr_text, 0);
+    jbyte* text_gs = (*env)->GetByteArrayElements(env, jarr_text_gs, 0);
+    int32_t* pat = (*env)->GetIntArrayElements(env, jarr_pat, 0);
+
+    Img img_text;
+    img_text.px_cnt = jarr_text_l;
+    img_text.pxs = (struct pixel*)text;
+    img_text.width = jtext_w;
+    img_text.height = text_h;
+
+    Img img_pat;
+    img_pat.px_cnt = jarr_pat_l;
+    img_pat.pxs = (struct pixel*)pat;
+    img_pat.width = jpat_w;
+    img_pat.height = pat_h;
+
+    struct search_results results = bs_match_gs(img_text, (uint8_t*)text_gs, img_pat, chan_err_toler,
+        SEARCH_MAX_RESULTS);
+
+    jobject results_j_instance = j_matchresults_from_struct(env, results);
+
+    free_search_results(results);
+
+    (*env)->ReleaseIntArrayElements(env, jarr_text, text, JNI_ABORT);
+    (*env)->ReleaseByteArrayElements(env, jarr_text_gs, text_gs, JNI_ABORT);
+    (*env)->ReleaseIntArrayElements(env, jarr_pat, pat, JNI_ABORT);
+
+    return results_j_instance;
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_rkMatchC8Call(
+    JNIEnv *env,
+    jclass kls,
+    jintArray jarr_text,
+    jbyteArray jarr_text8,
+    jintArray jarr_pat,
+    jint jtext_w,
+    jint jpat_w
+) {
+    jsize jarr_text_l = (*env)->GetArrayLength(env, jarr_text);
+    jsize jarr_pat_l = (*env)->GetArrayLength(env, jarr_pat);
+    if (!j_chk_plane_len(env, jarr_text8, jarr_text_l)) {
+        return NULL;
+    }
+
+    int text_h = jarr_text_l / jtext_w;
+    int pat_h = jarr_pat_l / jpat_w;
+
+    int32_t* text = (*env)->GetIntArrayElements(env, jarr_text, 0);
+    jbyte* text8 = (*env)->GetByteArrayElements(env, jarr_text8, 0);
+    int32_t* pat = (*env)->GetIntArrayElements(env, jarr_pat, 0);
+
+    Img img_text;
+    img_text.px_cnt = jarr_text_l;
+    img_text.pxs = (struct pixel*)text;
+    img_text.width = jtext_w;
+    img_text.height = text_h;
+
+    Img img_pat;
+    img_pat.px_cnt = jarr_pat_l;
+    img_pat.pxs = (struct pixel*)pat;
+    img_pat.width = jpat_w;
+    img_pat.height = pat_h;
+
+    struct search_results results = rk_match_c8(img_text, (uint8_t*)text8, img_pat, SEARCH_MAX_RESULTS);
+
+    jobject results_j_instance = j_matchresults_from_struct(env, results);
+
+    free_search_results(results);
+
+    (*env)->ReleaseIntArrayElements(env, jarr_text, text, JNI_ABORT);
+    (*env)->ReleaseByteArrayElements(env, jarr_text8, text8, JNI_ABORT);
+    (*env)->ReleaseIntArrayElements(env, jarr_pat, pat, JNI_ABORT);
+
+    return results_j_instance;
+}
+
+JNIEXPORT jobjectArray JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_rkMatchManyCall(
+    JNIEnv *env,
+    jclass kls,
+    jintArray jarr_text,
+    jobjectArray jarr_pats,
+    jint jtext_w,
+    jintArray jarr_pat_ws
+) {
+    jsize jarr_text_l = (*env)->GetArrayLength(env, jarr_text);
+    jsize pat_cnt = (*env)->GetArrayLength(env, jarr_pats);
+
+    int text_h = jarr_text_l / jtext_w;
+
+    int32_t* text = (*env)->GetIntArrayElements(env, jarr_text, 0);
+    int32_t* pat_ws = (*env)->GetIntArrayElements(env, jarr_pat_ws, 0);
+
+    Img img_text;
+    img_text.px_cnt = jarr_text_l;
+    img_text.pxs = (struct pixel*)text;
+    img_text.width = jtext_w;
+    img_text.height = text_h;
+
+    Img *img_pats = malloc(pat_cnt * sizeof(Img));
+    jintArray *jarr_pat_refs = malloc(pat_cnt * sizeof(jintArray));
+
+    for (int pat_i = 0; pat_i < pat_cnt; pat_i++) {
+        jintArray jarr_pat = (*env)->GetObjectArrayElement(env, jarr_pats, pat_i);
+        jsize jarr_pat_l = (*env)->GetArrayLength(env, jarr_pat);
+        int32_t* pat = (*env)->GetIntArrayElements(env, jarr_pat, 0);
+
+        *(jarr_pat_refs + pat_i) = jarr_pat;
+        (img_pats + pat_i)->px_cnt = jarr_pat_l;
+        (img_pats + pat_i)->pxs = (struct pixel*)pat;
+        (img_pats + pat_i)->width = *(pat_ws + pat_i);
+        (img_pats + pat_i)->height = jarr_pat_l / *(pat_ws + pat_i);
+    }
+
+    struct search_results *results = malloc(pat_cnt * sizeof(struct search_results));
+    rk_match_many(img_text, img_pats, pat_cnt, results);
+
+    jobjectArray results_j_arr = (*env)->NewObjectArray(env, pat_cnt, jids.results_cls, NULL);
+
+    for (int pat_i = 0; pat_i < pat_cnt; pat_i++) {
+        jobject results_j_instance = j_matchresults_from_struct(env, *(results + pat_i));
+        (*env)->SetObjectArrayElement(env, results_j_arr, pat_i, results_j_instance);
+        (*env)->DeleteLocalRef(env, results_j_instance);
+        free_search_results(*(results + pat_i));
+
+        (*env)->ReleaseIntArrayElements(env, *(jarr_pat_refs + pat_i), (jint*)(img_pats + pat_i)->pxs, JNI_ABORT);
+        (*env)->DeleteLocalRef(env, *(jarr_pat_refs + pat_i));
+    }
+
+    free(results);
+    free(jarr_pat_refs);
+    free(img_pats);
+
+    (*env)->ReleaseIntArrayElements(env, jarr_pat_ws, pat_ws, JNI_ABORT);
+    (*env)->ReleaseIntArrayElements(env, jarr_text, text, JNI_ABORT);
+
+    return results_j_arr;
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_CompiledPat_compileCall(
+    JNIEnv *env, jclass kls, jintArray jarr_pat, jint jpat_w
+) {
+    jsize jarr_pat_l = (*env)->GetArrayLength(env, jarr_pat);
+    int32_t* pat = (*env)->GetIntArrayElements(env, jarr_pat, 0);
+
+    Img img_pat;
+    img_pat.px_cnt = jarr_pat_l;
+    img_pat.pxs = (struct pixel*)pat;
+    img_pat.width = jpat_w;
+    img_pat.height = jarr_pat_l / jpat_w;
+
+    struct compiled_pat *cp = pat_compile(img_pat);
+
+    (*env)->ReleaseIntArrayElements(env, jarr_pat, pat, JNI_ABORT);
+
+    return (jlong)(intptr_t)cp;
+}
+
+JNIEXPORT void JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_CompiledPat_freeCall(
+    JNIEnv *env, jclass kls, jlong jpat
+) {
+    pat_free((struct compiled_pat *)(intptr_t)jpat);
+}
+
+JNIEXPORT void JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_SearchPhaseStats_setEnabledCall(
+    JNIEnv *env, jclass kls, jboolean enabled
+) {
+    search_set_profiling(enabled == JNI_TRUE);
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_SearchWorkspace_createCall(
+    JNIEnv *env, jclass kls
+) {
+    return (jlong)(intptr_t)search_ws_mk();
+}
+
+JNIEXPORT void JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_SearchWorkspace_freeCall(
+    JNIEnv *env, jclass kls, jlong jws
+) {
+    search_ws_free((struct search_ws *)(intptr_t)jws);
+}
+
+static jobject j_throw_ws_oom(JNIEnv *env) {
+    jclass exc_cls = (*env)->FindClass(env, "java/lang/OutOfMemoryError");
+    (*env)->ThrowNew(env, exc_cls, "search workspace buffers can't be allocated");
+    return NULL;
+}
+
+// the pixels are copied into the workspace too, GetIntArrayElements may
+// allocate a copy of its own
+static jobject match_jarr_ws(JNIEnv *env, struct search_ws *ws, jintArray jarr_text, jintArray jarr_pat,
+    jint jtext_w, jint jpat_w, bool rk, int chan_err_toler, int limit
+) {
+    jsize jarr_text_l = (*env)->GetArrayLength(env, jarr_text);
+    jsize jarr_pat_l = (*env)->GetArrayLength(env, jarr_pat);
+
+    Img img_text;
+    img_text.px_cnt = jarr_text_l;
+    img_text.pxs = search_ws_slot(ws, WS_CANVAS_PXS, jarr_text_l * sizeof(struct pixel));
+    img_text.width = jtext_w;
+    img_text.height = jarr_text_l / jtext_w;
+
+    Img img_pat;
+    img_pat.px_cnt = jarr_pat_l;
+    img_pat.pxs = search_ws_slot(ws, WS_PAT_PXS, jarr_pat_l * sizeof(struct pixel));
+    img_pat.width = jpat_w;
+    img_pat.height = jarr_pat_l / jpat_w;
+
+    if ((img_text.pxs == NULL) || (img_pat.pxs == NULL)) {
+        return j_throw_ws_oom(env);
+    }
+    (*env)->GetIntArrayRegion(env, jarr_text, 0, jarr_text_l, (jint*)img_text.pxs);
+    (*env)->GetIntArrayRegion(env, jarr_pat, 0, jarr_pat_l, (jint*)img_pat.pxs);
+
+    search_sink_buf_reset(&ws->results, limit);
+    bool done = rk
+        ? rk_match_ws(ws, img_text, img_pat, &ws->results.sink)
+        : bs_match_ws(ws, img_text, img_pat, chan_err_toler, &ws->results.sink);
+    if (!done) {
+        return j_throw_ws_oom(env);
+    }
+
+    struct search_results results;
+    results.occurrences = ws->results.items;
+    results.res_count = ws->results.sink.count;
+    results.collisions = ws->results.sink.collisions;
+    results.confirm_pxs = ws->results.sink.confirm_pxs;
+    results.profiled = ws->results.sink.prof != NULL;
+    results.prof = ws->results.prof;
+
+    return j_matchresults_from_struct(env, results);
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_SearchWorkspace_rkMatchCall(
+    JNIEnv *env, jclass kls,
+    jlong jws, jintArray jarr_text, jintArray jarr_pat, jint jtext_w, jint jpat_w, jint limit
+) {
+    return match_jarr_ws(env, (struct search_ws *)(intptr_t)jws, jarr_text, jarr_pat, jtext_w, jpat_w,
+        true, 0, limit);
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_SearchWorkspace_bsMatchCall(
+    JNIEnv *env, jclass kls,
+    jlong jws, jintArray jarr_text, jintArray jarr_pat, jint jtext_w, jint jpat_w, jint chan_err_toler, jint limit
+) {
+    return match_jarr_ws(env, (struct search_ws *)(intptr_t)jws, jarr_text, jarr_pat, jtext_w, jpat_w,
+        false, chan_err_toler, limit);
+}
+
+// a frame of text_l pixels in text_w wide rows, cp's pattern within it and
+// jplane, unless NULL, a byte per pixel of it; throws
+// IllegalArgumentException otherwise
+static bool j_chk_compiled_text(JNIEnv *env, struct compiled_pat *cp, jsize text_l, jint text_w, jbyteArray jplane) {
+    if ((text_w <= 0) || ((text_l % text_w) != 0)) {
+        char msg[128];
+        snprintf(msg, sizeof(msg), "frame of %d pixels isn't made of %d pixel rows", text_l, text_w);
+        jclass exc_cls = (*env)->FindClass(env, "java/lang/IllegalArgumentException");
+        (*env)->ThrowNew(env, exc_cls, msg);
+        return false;
+    }
+    if ((jplane != NULL) && !j_chk_plane_len(env, jplane, text_l)) {
+        return false;
+    }
+    int text_h = text_l / text_w;
+    if ((cp->img.width > text_w) || (cp->img.height > text_h)) {
+        char msg[128];
+        snprintf(msg, sizeof(msg), "pattern %dx%d doesn't fit the %dx%d frame", cp->img.width, cp->img.height,
+            text_w, text_h);
+        jclass exc_cls = (*env)->FindClass(env, "java/lang/IllegalArgumentException");
+        (*env)->ThrowNew(env, exc_cls, msg);
+        return false;
+    }
+    return true;
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_CompiledPat_rkMatchCall(
+    JNIEnv *env,
+    jclass kls,
+    jlong jpat,
+    jintArray jarr_text,
+    jbyteArray jarr_text8,
+    jint jtext_w
+) {
+    struct compiled_pat *cp = (struct compiled_pat *)(intptr_t)jpat;
+    jsize jarr_text_l = (*env)->GetArrayLength(env, jarr_text);
+    if (!j_chk_compiled_text(env, cp, jarr_text_l, jtext_w, jarr_text8)) {
+        return NULL;
+    }
+    int text_h = jarr_text_l / jtext_w;
+
+    int32_t* text = (*env)->GetIntArrayElements(env, jarr_text, 0);
+
+    Img img_text;
+    img_text.px_cnt = jarr_text_l;
+    img_text.pxs = (struct pixel*)text;
+    img_text.width = jtext_w;
+    img_text.height = text_h;
+
+    uint8_t *text8;
+    if (jarr_text8 != NULL) {
+        text8 = (uint8_t*)(*env)->GetByteArrayElements(env, jarr_text8, 0);
+    } else {
+        text8 = malloc(img_text.px_cnt);
+        condensed_hsv_a(img_text.pxs, text8, img_text.px_cnt, H_BITS, S_BITS, V_BITS);
+    }
+
+    struct search_results results = rk_match_compiled(img_text, text8, cp, SEARCH_MAX_RESULTS);
+
+    jobject results_j_instance = j_matchresults_from_struct(env, results);
+
+    free_search_results(results);
+
+    if (jarr_text8 != NULL) {
+        (*env)->ReleaseByteArrayElements(env, jarr_text8, (jbyte*)text8, JNI_ABORT);
+    } else {
+        free(text8);
+    }
+    (*env)->ReleaseIntArrayElements(env, jarr_text, text, JNI_ABORT);
+
+    return results_j_instance;
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_CompiledPat_bsMatchCall(
+    JNIEnv *env,
+    jclass kls,
+    jlong jpat,
+    jintArray jarr_text,
+    jbyteArray jarr_text_gs,
+    jint jtext_w,
+    jint chan_err_toler
+) {
+    struct compiled_pat *cp = (struct compiled_pat *)(intptr_t)jpat;
+    jsize jarr_text_l = (*env)->GetArrayLength(env, jarr_text);
+    if (!j_chk_compiled_text(env, cp, jarr_text_l, jtext_w, jarr_text_gs)) {
+        return NULL;
+    }
+    int text_h = jarr_text_l / jtext_w;
+
+    int32_t* text = (*env)->GetIntArrayElements(env, jarr_text, 0);
+
+    Img img_text;
+    img_text.px_cnt = jarr_text_l;
+    img_text.pxs = (struct pixel*)text;
+    img_text.width = jtext_w;
+    img_text.height = text_h;
+
+    uint8_t *text_gs;
+    if (jarr_text_gs != NULL) {
+        text_gs = (uint8_t*)(*env)->GetByteArrayElements(env, jarr_text_gs, 0);
+    } else {
+        text_gs = malloc(img_text.px_cnt);
+        pic_to_grayscale(img_text, text_gs);
+    }
+
+    struct search_results results = bs_match_compiled(img_text, text_gs, cp, chan_err_toler, SEARCH_MAX_RESULTS);
+
+    jobject results_j_instance = j_matchresults_from_struct(env, results);
+
+    free_search_results(results);
+
+    if (jarr_text_gs != NULL) {
+        (*env)->ReleaseByteArrayElements(env, jarr_text_gs, (jbyte*)text_gs, JNI_ABORT);
+    } else {
+        free(text_gs);
+    }
+    (*env)->ReleaseIntArrayElements(env, jarr_text, text, JNI_ABORT);
+
+    return results_j_instance;
+}
+
+JNIEXPORT void JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_setThreadsCall(
+    JNIEnv *env, jclass kls, jint threads_cnt
+) {
+    search_set_threads(threads_cnt);
+}
+
+JNIEXPORT jint JNICALL
+Java_com_drscbt_shared_piclocate_twodmatcher_NativeSearch_getThreadsCall(
+    JNIEnv *env, jclass kls
+) {
+    return search_get_threads();
+}
+
+struct pixel *j_direct_pxs(JNIEnv *env, jobject jbuf, jlong px_cnt) {
+    struct pixel *pxs = (*env)->GetDirectBufferAddress(env, jbuf);
+    jlong capacity = (*env)->GetDirectBufferCapacity(env, jbuf);
+    if ((pxs == NULL) || (capacity < (px_cnt * (jlong)sizeof(struct pixel)))) {
+        jclass exc_cls = (*env)->FindClass(env, "java/lang/IllegalArgumentException");
+        (*env)->ThrowNew(env, exc_cls, "pixels buffer is not direct or is too small");
+        return NULL;
+    }
+    return pxs;
+}
+
+bool j_chk_arr_len(JNIEnv *env, jarray jarr, jsize len) {
+    if ((*env)->GetArrayLength(env, jarr) < len) {
+        jclass exc_cls = (*env)->FindClass(env, "java/lang/IllegalArgumentException");
+        (*env)->ThrowNew(env, exc_cls, "output array is too small");
+        return false;
+    }
+    return true;
+}
+
+// a byte per pixel plane of a frame of px_cnt pixels, throws
+// IllegalArgumentException otherwise
+bool j_chk_plane_len(JNIEnv *env, jarray jplane, jsize px_cnt) {
+    jsize plane_l = (*env)->GetArrayLength(env, jplane);
+    if (plane_l != px_cnt) {
+        char msg[128];
+        snprintf(msg, sizeof(msg), "plane of %d pixels for a frame of %d", plane_l, px_cnt);
+        jclass exc_cls = (*env)->FindClass(env, "java/lang/IllegalArgumentException");
+        (*env)->ThrowNew(env, exc_cls, msg);
+        return false;
+    }
+    return true;
+}
+
+// throws IllegalArgumentException unless the w x h rectangle at x, y lies
+// within the frame of px_cnt pixels, stride per row
+bool j_chk_roi(JNIEnv *env, jsize px_cnt, int stride, int x, int y, int w, int h) {
+    int rows = (stride > 0) ? (px_cnt / stride) : 0;
+    if ((stride <= 0) || (x < 0) || (y < 0) || (w < 0) || (h < 0)
+        || (x > (stride - w)) || (y > (rows - h))
+    ) {
+        char msg[128];
+        snprintf(msg, sizeof(msg), "roi %dx%d at %d,%d outside of the %dx%d frame", w, h, x, y, stride, rows);
+        jclass exc_cls = (*env)->FindClass(env, "java/lang/IllegalArgumentException");
+        (*env)->ThrowNew(env, exc_cls, msg);
+        return false;
+    }
+    return true;
+}
+
+void offset_search_results(struct search_results results, int dx, int dy) {
+    for (int ridx = 0; ridx < results.res_count; ridx++) {
+        (results.occurrences + ridx)->x += dx;
+        (results.occurrences + ridx)->y += dy;
+    }
+}
+
+// layout as read by SearchPhaseStats
+jlongArray j_phase_stats(JNIEnv *env, struct search_results results) {
+    jlong stats[] = {
+        results.prof.ns[SEARCH_PHASE_CONV],
+        results.prof.ns[SEARCH_PHASE_SUMS],
+        results.prof.ns[SEARCH_PHASE_SCAN],
+        results.prof.ns[SEARCH_PHASE_CONFIRM],
+        results.prof.conv_pxs,
+        results.prof.candidates,
+        results.confirm_pxs,
+        results.collisions
+    };
+    jsize stats_len = sizeof(stats) / sizeof(jlong);
+    jlongArray jstats = (*env)->NewLongArray(env, stats_len);
+    (*env)->SetLongArrayRegion(env, jstats, 0, stats_len, stats);
+    return jstats;
+}
+
+// the locations go over as one int[], NativePicSearchResults makes the
+// Points only when its matches set is used
+jobject j_matchresults_from_struct(JNIEnv *env, struct search_results results) {
+    jintArray jxy = j_packed_xy(env, results, false);
+    if (jxy == NULL) {
+        return NULL;
+    }
+
+    jobject results_j_instance = (*env)->NewObject(env, jids.results_cls, jids.results_init, results.collisions,
+        (jlong)results.confirm_pxs, jxy);
+    (*env)->DeleteLocalRef(env, jxy);
+    if (results_j_instance == NULL) {
+        return NULL;
+    }
+    if (results.profiled) {
+        jlongArray stats = j_phase_stats(env, results);
+        (*env)->SetObjectField(env, results_j_instance, jids.results_phase_stats, stats);
+        (*env)->DeleteLocalRef(env, stats);
+    }
+
+    return results_j_instance;
+}
+
+// [collisions, x0, y0, x1, y1, ...], see PackedMatches
+jintArray j_packed_from_struct(JNIEnv *env, struct search_results results) {
+    return j_packed_xy(env, results, true);
+}
+
+// x0, y0, x1, y1, ..., after the collisions count with_collisions; written
+// through a stack buffer in chunks, as j_chunk_sink() does
+jintArray j_packed_xy(JNIEnv *env, struct search_results results, bool with_collisions) {
+    jsize packed_len = (with_collisions ? 1 : 0) + (results.res_count * 2);
+    jintArray jpacked = (*env)->NewIntArray(env, packed_len);
+    if (jpacked == NULL) {
+        return NULL;
+    }
+
+    jint stage[J_SINK_STAGE_LEN];
+    jsize staged = 0;
+    jsize written = 0;
+    if (with_collisions) {
+        stage[staged++] = results.collisions;
+    }
+    for (int ridx = 0; ridx < results.res_count; ridx++) {
+        if ((staged + 2) > J_SINK_STAGE_LEN) {
+            (*env)->SetIntArrayRegion(env, jpacked, written, staged, stage);
+            written += staged;
+            staged = 0;
+        }
+        stage[staged++] = (results.occurrences + ridx)->x;
+        stage[staged++] = (results.occurrences + ridx)->y;
+    }
+    (*env)->SetIntArrayRegion(env, jpacked, written, staged, stage);
+
+    return jpacked;
+}
+
 jobject mk_pnt(JNIEnv *env, int x, int y) {
-    jclass pnt_cls = (*env)->FindClass(env, "com/drscbt/shared/piclocate/Point");
-    jmethodID pnt_cls_constructor = (*env)->GetMethodID(env, pnt_cls, "<init>", "(II)V");
-    jobject new_pnt_obj = (*env)->NewObject(env, pnt_cls, pnt_cls_constructor, x, y);
-    return new_pnt_obj;
+    return (*env)->NewObject(env, jids.pnt_cls, jids.pnt_init, x, y);
 }
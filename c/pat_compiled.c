@@ -0,0 +1,50 @@
+#include <stdlib.h>
+#include <string.h>
+#include "pat_compiled.h"
+#include "pat_mask.h"
+#include "rk_search.h"
+#include "bs_search.h"
+#include "color.h"
+#include "drscbt.h"
+
+struct compiled_pat *pat_compile(Img pat_img) {
+    struct compiled_pat *cp = malloc(sizeof(struct compiled_pat));
+
+    cp->img.width = pat_img.width;
+    cp->img.height = pat_img.height;
+    cp->img.px_cnt = pat_img.px_cnt;
+    cp->img.pxs = malloc(pat_img.px_cnt * sizeof(struct pixel));
+    memcpy(cp->img.pxs, pat_img.pxs, pat_img.px_cnt * sizeof(struct pixel));
+
+    // NULL for a fully opaque pattern, it refers to cp->img otherwise
+    cp->mask = pat_mask_mk(cp->img);
+
+    // the planes, hashes and sums cover what the searches hash: the mask's
+    // anchor for a masked pattern, so it isn't condensed again per search
+    Img hashed = pat_compiled_hashed(cp);
+    cp->pat8 = malloc(hashed.px_cnt);
+    condensed_hsv_a(hashed.pxs, cp->pat8, hashed.px_cnt, H_BITS, S_BITS, V_BITS);
+    cp->rk_hpass_sums = rk_calc_hpass_sums(cp->pat8, hashed.width, hashed.height, hashed.width);
+    cp->rk_vpass_sum = rk_vpass_sum(cp->rk_hpass_sums);
+
+    cp->grayscale = malloc(hashed.px_cnt);
+    pic_to_grayscale(hashed, cp->grayscale);
+    cp->bs_sums = bs_calc_sums(cp->grayscale, hashed.width, hashed.height, hashed.width);
+
+    return cp;
+}
+
+// the whole pattern, or the mask's anchor for a masked one
+Img pat_compiled_hashed(struct compiled_pat *cp) {
+    return (cp->mask != NULL) ? cp->mask->anchor : cp->img;
+}
+
+void pat_free(struct compiled_pat *cp) {
+    pat_mask_free(cp->mask);
+    bs_free_sums(cp->bs_sums);
+    free(cp->grayscale);
+    rk_free_sums(cp->rk_hpass_sums);
+    free(cp->pat8);
+    free_img(cp->img);
+    free(cp);
+}
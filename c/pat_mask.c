@@ -0,0 +1,117 @@
+#include <stdlib.h>
+#include <string.h>
+#include "pat_mask.h"
+#include "drscbt.h"
+
+// pattern pixels with alpha other than PicData.A_OPAQUE are don't-care. A
+// pattern gets a mask only when it has both kinds; one without any opaque
+// pixel is searched as it is, like before masks existed.
+static bool px_opaque(struct pixel px) {
+    return px.filler == PAT_MASK_OPAQUE;
+}
+
+// largest opaque rectangle, by the largest rectangle in a histogram of
+// opaque run heights per row
+static void pat_mask_anchor_rect(Img pat_img, int *ax, int *ay, int *aw, int *ah) {
+    int w = pat_img.width;
+    int *heights = calloc(w, sizeof(int));
+    int *stack = malloc((w + 1) * sizeof(int));
+    int best = 0;
+    *ax = 0;
+    *ay = 0;
+    *aw = 0;
+    *ah = 0;
+
+    for (int y = 0; y < pat_img.height; y++) {
+        for (int x = 0; x < w; x++) {
+            heights[x] = px_opaque(val_at(pat_img, x, y)) ? (heights[x] + 1) : 0;
+        }
+
+        int top = 0;
+        for (int x = 0; x <= w; x++) {
+            int h = (x < w) ? heights[x] : 0;
+            while ((top > 0) && (heights[stack[top - 1]] >= h)) {
+                int rect_h = heights[stack[--top]];
+                int left = (top > 0) ? (stack[top - 1] + 1) : 0;
+                int area = rect_h * (x - left);
+                if (area > best) {
+                    best = area;
+                    *ax = left;
+                    *ay = y - rect_h + 1;
+                    *aw = x - left;
+                    *ah = rect_h;
+                }
+            }
+            stack[top++] = x;
+        }
+    }
+
+    free(stack);
+    free(heights);
+}
+
+struct pat_mask *pat_mask_mk(Img pat_img) {
+    int opaque_cnt = 0;
+    for (int i = 0; i < pat_img.px_cnt; i++) {
+        if (px_opaque(*(pat_img.pxs + i))) {
+            opaque_cnt++;
+        }
+    }
+    if ((opaque_cnt == 0) || (opaque_cnt == pat_img.px_cnt)) {
+        return NULL;
+    }
+
+    struct pat_mask *m = malloc(sizeof(struct pat_mask));
+    m->pat_img = pat_img;
+    pat_mask_anchor_rect(pat_img, &m->anchor_x, &m->anchor_y, &m->anchor.width, &m->anchor.height);
+    m->anchor.px_cnt = m->anchor.width * m->anchor.height;
+    m->anchor.pxs = malloc(m->anchor.px_cnt * sizeof(struct pixel));
+    for (int y = 0; y < m->anchor.height; y++) {
+        memcpy(m->anchor.pxs + (y * m->anchor.width),
+            pat_img.pxs + ((m->anchor_y + y) * pat_img.width) + m->anchor_x,
+            m->anchor.width * sizeof(struct pixel));
+    }
+
+    return m;
+}
+
+void pat_mask_free(struct pat_mask *m) {
+    if (m == NULL) {
+        return;
+    }
+    free_img(m->anchor);
+    free(m);
+}
+
+// anchor hit at (anchor_sx, anchor_sy) of the canvas, the pattern must fit there
+// confirm_pxs accumulates the pixels compared
+bool pat_mask_confirm(Img canvas_img, struct pat_mask *m, int anchor_sx, int anchor_sy, int chan_err_toler,
+    int64_t *confirm_pxs
+) {
+    int sx = anchor_sx - m->anchor_x;
+    int sy = anchor_sy - m->anchor_y;
+    for (int y = 0; y < m->pat_img.height; y++) {
+        for (int x = 0; x < m->pat_img.width; x++) {
+            struct pixel p_px = val_at(m->pat_img, x, y);
+            if (!px_opaque(p_px)) {
+                continue;
+            }
+            struct pixel c_px = val_at(canvas_img, sx + x, sy + y);
+            (*confirm_pxs)++;
+            if (!val_eq_err(c_px, p_px, chan_err_toler)) {
+                return false;
+            }
+        }
+    }
+    return true;
+}
+
+// anchor hits near the canvas edges can put the pattern partly outside;
+// the canvas may be a view narrower than its rows, see rk_match_area_sink
+bool pat_mask_fits(int canvas_w, int canvas_h, struct pat_mask *m, int anchor_sx, int anchor_sy) {
+    int sx = anchor_sx - m->anchor_x;
+    int sy = anchor_sy - m->anchor_y;
+    return (sx >= 0) && (sy >= 0)
+        && ((sx + m->pat_img.width) <= canvas_w)
+        && ((sy + m->pat_img.height) <= canvas_h);
+}
@@ -0,0 +1,272 @@
+#include <stdlib.h>
+#include "rk64_search.h"
+#include "pat_mask.h"
+#include "search_parallel.h"
+#include "color.h"
+#include "drscbt.h"
+
+// Rabin-Karp over the same condensed channel as rk_search.c, but modulo the
+// Mersenne prime 2^61 - 1. Products are reduced by adding their bits above
+// 61 to the low ones, no division, and row hashes are kept at 32 bits
+// instead of 8, so hash hits of differing windows, each paid for with a
+// pixel by pixel confirmation, become rare on repetitive screens.
+
+#define RK64_M61 ((((uint64_t)1) << 61) - 1)
+// arbitrary, below 2^61
+#define RK64_BASE_H 0x1B873593A1C0D4F3ULL
+#define RK64_BASE_V 0x0CC9E2D51F3A8B67ULL
+
+static inline uint64_t rk64_reduce(uint64_t v) {
+    v = (v & RK64_M61) + (v >> 61);
+    return (v >= RK64_M61) ? (v - RK64_M61) : v;
+}
+
+// a, b below 2^61, so the product fits 122 bits and its part above bit 61
+// fits 61
+static inline uint64_t rk64_mulmod(uint64_t a, uint64_t b) {
+#if defined(__SIZEOF_INT128__)
+    unsigned __int128 p = (unsigned __int128)a * b;
+    uint64_t lo = (uint64_t)p;
+    uint64_t hi = (uint64_t)(p >> 64);
+#else
+    // 32 bit targets have no 128 bit type, multiply the halves
+    uint64_t a_lo = a & 0xFFFFFFFF;
+    uint64_t a_hi = a >> 32;
+    uint64_t b_lo = b & 0xFFFFFFFF;
+    uint64_t b_hi = b >> 32;
+    uint64_t ll = a_lo * b_lo;
+    uint64_t lh = a_lo * b_hi;
+    uint64_t hl = a_hi * b_lo;
+    uint64_t mid = (ll >> 32) + (lh & 0xFFFFFFFF) + (hl & 0xFFFFFFFF);
+    uint64_t lo = (mid << 32) | (ll & 0xFFFFFFFF);
+    uint64_t hi = (a_hi * b_hi) + (lh >> 32) + (hl >> 32) + (mid >> 32);
+#endif
+    return rk64_reduce((lo & RK64_M61) + ((lo >> 61) | (hi << 3)));
+}
+
+static inline uint64_t rk64_in(uint64_t state, uint64_t base, uint32_t value) {
+    return rk64_reduce(rk64_mulmod(state, base) + value);
+}
+
+static inline uint64_t rk64_out(uint64_t state, uint32_t value, uint64_t clear_factor) {
+    return rk64_reduce(state + RK64_M61 - rk64_mulmod(value, clear_factor));
+}
+
+static uint64_t rk64_pow(uint64_t base, int pow) {
+    uint64_t res = 1;
+    while (pow > 0) {
+        if (pow & 1) {
+            res = rk64_mulmod(res, base);
+        }
+        base = rk64_mulmod(base, base);
+        pow >>= 1;
+    }
+    return res;
+}
+
+static inline uint32_t rk64_fold(uint64_t h) {
+    return (uint32_t)(h ^ (h >> 32));
+}
+
+struct search_results rk64_match(Img canvas_img, Img pat_img) {
+    return rk64_match_lim(canvas_img, pat_img, SEARCH_MAX_RESULTS);
+}
+
+struct search_results rk64_match_lim(Img canvas_img, Img pat_img, int max_results) {
+    struct search_sink_buf buf;
+    search_sink_buf_init(&buf, max_results);
+
+    int64_t conv_start = search_prof_start(&buf.sink);
+    uint8_t *canvas8 = malloc(canvas_img.px_cnt);
+    condensed_hsv_a(canvas_img.pxs, canvas8, canvas_img.px_cnt, H_BITS, S_BITS, V_BITS);
+    search_prof_conv(&buf.sink, canvas_img.px_cnt, conv_start);
+
+    rk64_match_c8_sink(canvas_img, canvas8, pat_img, &buf.sink);
+
+    free(canvas8);
+
+    return search_sink_buf_take(&buf);
+}
+
+// with a mask the anchor, its largest opaque rectangle, is hashed, see rk_match_masked
+void rk64_match_c8_sink(Img canvas_img, uint8_t *canvas8, Img pat_img, struct search_sink *sink) {
+    struct pat_mask *mask = pat_mask_mk(pat_img);
+    Img hashed = (mask != NULL) ? mask->anchor : pat_img;
+
+    int64_t conv_start = search_prof_start(sink);
+    uint8_t *pat8 = malloc(hashed.px_cnt);
+    condensed_hsv_a(hashed.pxs, pat8, hashed.px_cnt, H_BITS, S_BITS, V_BITS);
+    search_prof_conv(sink, hashed.px_cnt, conv_start);
+
+    int64_t sums_start = search_prof_start(sink);
+    struct rk64_sums pat_sums = rk64_calc_hpass_sums(pat8, hashed.width, hashed.height, hashed.width);
+    struct rk64_sums canv_sums = rk64_calc_hpass_sums(canvas8, canvas_img.width, canvas_img.height, hashed.width);
+    search_prof_end(sink, SEARCH_PHASE_SUMS, sums_start);
+
+    rk64_match_vpass(canvas_img, canv_sums, hashed, rk64_vpass_sum(pat_sums), mask, sink);
+
+    rk64_free_sums(canv_sums);
+    rk64_free_sums(pat_sums);
+    free(pat8);
+    pat_mask_free(mask);
+}
+
+uint64_t rk64_vpass_sum(struct rk64_sums hpass_sums) {
+    uint64_t vpass_sum = 0;
+    for (int h_s_row = 0; h_s_row < hpass_sums.height; h_s_row++) {
+        vpass_sum = rk64_in(vpass_sum, RK64_BASE_V, rk64_sum_at(hpass_sums, 0, h_s_row));
+    }
+    return vpass_sum;
+}
+
+void rk64_match_vpass(Img canvas_img, struct rk64_sums canv_hpass_sums, Img pat_img,
+    uint64_t pat_vpass_sum, struct pat_mask *mask, struct search_sink *sink
+) {
+    int64_t scan_start = search_prof_start(sink);
+    int threads_cnt = search_get_threads();
+    if ((threads_cnt > 1) && (canv_hpass_sums.width > 1)) {
+        rk64_match_vpass_parallel(canvas_img, canv_hpass_sums, pat_img, pat_vpass_sum, mask, sink, threads_cnt);
+    } else {
+        rk64_match_vpass_cols(canvas_img, canv_hpass_sums, pat_img, pat_vpass_sum, mask,
+            0, canv_hpass_sums.width, sink, NULL);
+    }
+    search_prof_end(sink, SEARCH_PHASE_SCAN, scan_start);
+}
+
+struct rk64_vpass_job {
+    Img canvas_img;
+    struct rk64_sums canv_hpass_sums;
+    Img pat_img;
+    uint64_t pat_vpass_sum;
+    struct pat_mask *mask;
+    struct search_stripe *stripes;
+};
+
+static void rk64_match_vpass_stripe(void *arg, int stripe_i) {
+    struct rk64_vpass_job *job = arg;
+    struct search_stripe *stripe = job->stripes + stripe_i;
+    rk64_match_vpass_cols(job->canvas_img, job->canv_hpass_sums, job->pat_img, job->pat_vpass_sum, job->mask,
+        stripe->col_from, stripe->col_to, &stripe->buf.sink, stripe);
+}
+
+void rk64_match_vpass_parallel(Img canvas_img, struct rk64_sums canv_hpass_sums,
+    Img pat_img, uint64_t pat_vpass_sum, struct pat_mask *mask, struct search_sink *sink, int stripe_cnt
+) {
+    if (stripe_cnt > canv_hpass_sums.width) {
+        stripe_cnt = canv_hpass_sums.width;
+    }
+
+    struct rk64_vpass_job job;
+    job.canvas_img = canvas_img;
+    job.canv_hpass_sums = canv_hpass_sums;
+    job.pat_img = pat_img;
+    job.pat_vpass_sum = pat_vpass_sum;
+    job.mask = mask;
+    job.stripes = search_stripes_mk(canv_hpass_sums.width, stripe_cnt, sink);
+
+    search_run_stripes(rk64_match_vpass_stripe, &job, stripe_cnt);
+
+    search_stripes_merge(job.stripes, stripe_cnt, sink);
+    search_stripes_free(job.stripes, stripe_cnt);
+}
+
+static bool rk64_confirm(Img canvas_img, Img pat_img, int sx, int sy, int64_t *confirm_pxs) {
+    for (int y = 0; y < pat_img.height; y++) {
+        for (int x = 0; x < pat_img.width; x++) {
+            if (!val_eq(val_at(canvas_img, sx + x, sy + y), val_at(pat_img, x, y))) {
+                *confirm_pxs += (y * pat_img.width) + x + 1;
+                return false;
+            }
+        }
+    }
+    *confirm_pxs += pat_img.px_cnt;
+    return true;
+}
+
+void rk64_match_vpass_cols(Img canvas_img, struct rk64_sums canv_hpass_sums, Img pat_img, uint64_t pat_vpass_sum,
+    struct pat_mask *mask, int col_from, int col_to, struct search_sink *sink, struct search_stripe *stripe
+) {
+    int pat_hpass_height = pat_img.height;
+
+    uint64_t clear_factor_vpass = rk64_pow(RK64_BASE_V, pat_hpass_height - 1);
+    for (int c_s_col = col_from; c_s_col < col_to; c_s_col++) {
+        if ((stripe != NULL) && search_stripe_superseded(stripe)) {
+            return;
+        }
+
+        uint64_t canv_vpass_sum = 0;
+        for (int c_s_row = 0; c_s_row < canv_hpass_sums.height; c_s_row++) {
+            if (c_s_row >= pat_hpass_height) {
+                uint32_t leaving = rk64_sum_at(canv_hpass_sums, c_s_col, c_s_row - pat_hpass_height);
+                canv_vpass_sum = rk64_out(canv_vpass_sum, leaving, clear_factor_vpass);
+            }
+
+            canv_vpass_sum = rk64_in(canv_vpass_sum, RK64_BASE_V, rk64_sum_at(canv_hpass_sums, c_s_col, c_s_row));
+
+            if ((c_s_row < (pat_hpass_height - 1)) || (canv_vpass_sum != pat_vpass_sum)) {
+                continue;
+            }
+
+            int inp_img_row = c_s_row - pat_hpass_height + 1;
+            int inp_img_col = c_s_col;
+            int64_t confirm_start = search_prof_start(sink);
+            bool confirmed;
+            if (mask != NULL) {
+                if (!pat_mask_fits(canvas_img.width, canvas_img.height, mask, inp_img_col, inp_img_row)) {
+                    continue;
+                }
+                confirmed = pat_mask_confirm(canvas_img, mask, inp_img_col, inp_img_row, 0, &sink->confirm_pxs);
+            } else {
+                confirmed = rk64_confirm(canvas_img, pat_img, inp_img_col, inp_img_row, &sink->confirm_pxs);
+            }
+            search_prof_candidate(sink, confirm_start);
+
+            if (!confirmed) {
+                sink->collisions++;
+                continue;
+            }
+
+            int res_x = inp_img_col - ((mask != NULL) ? mask->anchor_x : 0);
+            int res_y = inp_img_row - ((mask != NULL) ? mask->anchor_y : 0);
+            if (!search_sink_add(sink, res_x, res_y)) {
+                if (stripe != NULL) {
+                    search_stripe_filled(stripe);
+                }
+                return;
+            }
+        }
+    }
+}
+
+struct rk64_sums rk64_calc_hpass_sums(uint8_t *img_channel, int img_width, int img_height, int win) {
+    int sums_stride = img_width - win + 1;
+    uint32_t *sums = malloc(sizeof(uint32_t) * sums_stride * img_height);
+    uint64_t clear_factor = rk64_pow(RK64_BASE_H, win - 1);
+
+    for (int y = 0; y < img_height; y++) {
+        uint8_t *row = img_channel + (y * img_width);
+        uint32_t *sums_row = sums + (y * sums_stride);
+        uint64_t state = 0;
+        for (int x = 0; x < img_width; x++) {
+            if (x >= win) {
+                state = rk64_out(state, *(row + x - win), clear_factor);
+            }
+            state = rk64_in(state, RK64_BASE_H, *(row + x));
+            if (x >= (win - 1)) {
+                *(sums_row + x - win + 1) = rk64_fold(state);
+            }
+        }
+    }
+
+    struct rk64_sums sums_s;
+    sums_s.sums = sums;
+    sums_s.width = sums_stride;
+    sums_s.height = img_height;
+    sums_s.cnt = sums_stride * img_height;
+
+    return sums_s;
+}
+
+void rk64_free_sums(struct rk64_sums s) {
+    free(s.sums);
+}
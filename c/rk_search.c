@@ -2,81 +2,375 @@
 #include <stdio.h>
 #include <string.h>
 #include "rk_search.h"
+#include "pat_compiled.h"
+#include "pat_mask.h"
+#include "search_parallel.h"
+#include "search_ws.h"
 #include "color.h"
 #include "drscbt.h"
 
 struct search_results rk_match(Img canvas_img, Img pat_img) {
+    return rk_match_lim(canvas_img, pat_img, SEARCH_MAX_RESULTS);
+}
+
+struct search_results rk_match_lim(Img canvas_img, Img pat_img, int max_results) {
+    struct search_sink_buf buf;
+    search_sink_buf_init(&buf, max_results);
+
+    int64_t conv_start = search_prof_start(&buf.sink);
+    uint8_t *canvas8 = malloc(canvas_img.px_cnt);
+    condensed_hsv_a(canvas_img.pxs, canvas8, canvas_img.px_cnt, H_BITS, S_BITS, V_BITS);
+    search_prof_conv(&buf.sink, canvas_img.px_cnt, conv_start);
+
+    rk_match_c8_sink(canvas_img, canvas8, pat_img, &buf.sink);
+
+    free(canvas8);
+
+    return search_sink_buf_take(&buf);
+}
+
+struct search_results rk_match_c8(Img canvas_img, uint8_t *canvas8, Img pat_img, int max_results) {
+    struct search_sink_buf buf;
+    search_sink_buf_init(&buf, max_results);
+    rk_match_c8_sink(canvas_img, canvas8, pat_img, &buf.sink);
+    return search_sink_buf_take(&buf);
+}
+
+void rk_match_c8_sink(Img canvas_img, uint8_t *canvas8, Img pat_img, struct search_sink *sink) {
+    rk_match_area_sink(canvas_img, canvas8, canvas_img.width, canvas_img.height, pat_img, sink);
+}
+
+// searches the canvas_w x canvas_h pixels at canvas_img.pxs, rows canvas_img.width
+// apart, so canvas_img can be a view into a larger picture; canvas8 is
+// canvas_w x canvas_h
+void rk_match_area_sink(Img canvas_img, uint8_t *canvas8, int canvas_w, int canvas_h, Img pat_img,
+    struct search_sink *sink
+) {
+    struct pat_mask *mask = pat_mask_mk(pat_img);
+    if (mask != NULL) {
+        rk_match_masked(canvas_img, canvas8, canvas_w, canvas_h, mask, sink);
+        pat_mask_free(mask);
+        return;
+    }
+
+    int64_t sums_start = search_prof_start(sink);
+    struct rk_sums_h_pass canv_hpass_sums = rk_calc_hpass_sums(canvas8, canvas_w, canvas_h, pat_img.width);
+    search_prof_end(sink, SEARCH_PHASE_SUMS, sums_start);
+
+    rk_match_hpass(canvas_img, canv_hpass_sums, pat_img, sink);
+
+    rk_free_sums(canv_hpass_sums);
+}
+
+void rk_match_many(Img canvas_img, Img *pat_imgs, int pat_cnt, struct search_results *results) {
     uint8_t *canvas8 = malloc(canvas_img.px_cnt);
     condensed_hsv_a(canvas_img.pxs, canvas8, canvas_img.px_cnt, H_BITS, S_BITS, V_BITS);
+
+    rk_match_many_c8(canvas_img, canvas8, pat_imgs, pat_cnt, results);
+
+    free(canvas8);
+}
+
+// results[i] as rk_match_c8() of pat_imgs[i] would give them
+void rk_match_many_c8(Img canvas_img, uint8_t *canvas8, Img *pat_imgs, int pat_cnt, struct search_results *results) {
+    bool *done = calloc(pat_cnt, sizeof(bool));
+    struct search_sink_buf buf;
+    search_sink_buf_init(&buf, SEARCH_MAX_RESULTS);
+
+    for (int pat_i = 0; pat_i < pat_cnt; pat_i++) {
+        if (((pat_imgs + pat_i)->width > canvas_img.width) || ((pat_imgs + pat_i)->height > canvas_img.height)) {
+            *(results + pat_i) = search_sink_buf_take(&buf);
+            done[pat_i] = true;
+            continue;
+        }
+
+        struct pat_mask *mask = pat_mask_mk(*(pat_imgs + pat_i));
+        if (mask != NULL) {
+            rk_match_masked(canvas_img, canvas8, canvas_img.width, canvas_img.height, mask, &buf.sink);
+            *(results + pat_i) = search_sink_buf_take(&buf);
+            pat_mask_free(mask);
+            done[pat_i] = true;
+        }
+    }
+
+    for (int pat_i = 0; pat_i < pat_cnt; pat_i++) {
+        if (done[pat_i]) {
+            continue;
+        }
+
+        int win = (pat_imgs + pat_i)->width;
+        struct rk_sums_h_pass canv_hpass_sums = rk_calc_hpass_sums(canvas8, canvas_img.width, canvas_img.height, win);
+
+        for (int same_w_i = pat_i; same_w_i < pat_cnt; same_w_i++) {
+            if (done[same_w_i] || ((pat_imgs + same_w_i)->width != win)) {
+                continue;
+            }
+            rk_match_hpass(canvas_img, canv_hpass_sums, *(pat_imgs + same_w_i), &buf.sink);
+            *(results + same_w_i) = search_sink_buf_take(&buf);
+            done[same_w_i] = true;
+        }
+
+        rk_free_sums(canv_hpass_sums);
+    }
+
+    free(done);
+}
+
+struct search_results rk_match_compiled(Img canvas_img, uint8_t *canvas8, struct compiled_pat *cp, int max_results) {
+    struct search_sink_buf buf;
+    search_sink_buf_init(&buf, max_results);
+    rk_match_compiled_sink(canvas_img, canvas8, cp, &buf.sink);
+    return search_sink_buf_take(&buf);
+}
+
+// a masked pattern's anchor was hashed once by pat_compile(), as
+// rk_match_masked() would per search
+void rk_match_compiled_sink(Img canvas_img, uint8_t *canvas8, struct compiled_pat *cp, struct search_sink *sink) {
+    Img hashed = pat_compiled_hashed(cp);
+
+    int64_t sums_start = search_prof_start(sink);
+    struct rk_sums_h_pass canv_hpass_sums = rk_calc_hpass_sums(canvas8, canvas_img.width, canvas_img.height,
+        hashed.width);
+    search_prof_end(sink, SEARCH_PHASE_SUMS, sums_start);
+
+    rk_match_vpass(canvas_img, canv_hpass_sums, hashed, cp->rk_vpass_sum, cp->mask, sink);
+
+    rk_free_sums(canv_hpass_sums);
+}
+
+// hashes cover the mask's anchor, the largest opaque rectangle; its hits are
+// confirmed over all opaque pixels of the pattern and reported at the
+// pattern's start location; canvas dimensions as for rk_match_area_sink
+void rk_match_masked(Img canvas_img, uint8_t *canvas8, int canvas_w, int canvas_h, struct pat_mask *mask,
+    struct search_sink *sink
+) {
+    Img anchor = mask->anchor;
+    int64_t conv_start = search_prof_start(sink);
+    uint8_t *anchor8 = malloc(anchor.px_cnt);
+    condensed_hsv_a(anchor.pxs, anchor8, anchor.px_cnt, H_BITS, S_BITS, V_BITS);
+    search_prof_conv(sink, anchor.px_cnt, conv_start);
+
+    int64_t sums_start = search_prof_start(sink);
+    struct rk_sums_h_pass anchor_hpass_sums = rk_calc_hpass_sums(anchor8, anchor.width, anchor.height, anchor.width);
+    struct rk_sums_h_pass canv_hpass_sums = rk_calc_hpass_sums(canvas8, canvas_w, canvas_h, anchor.width);
+    search_prof_end(sink, SEARCH_PHASE_SUMS, sums_start);
+
+    rk_match_vpass(canvas_img, canv_hpass_sums, anchor, rk_vpass_sum(anchor_hpass_sums), mask, sink);
+
+    rk_free_sums(canv_hpass_sums);
+    rk_free_sums(anchor_hpass_sums);
+    free(anchor8);
+}
+
+void rk_match_hpass(Img canvas_img, struct rk_sums_h_pass canv_hpass_sums, Img pat_img, struct search_sink *sink) {
+    int64_t conv_start = search_prof_start(sink);
     uint8_t *pat8 = malloc(pat_img.px_cnt);
     condensed_hsv_a(pat_img.pxs, pat8, pat_img.px_cnt, H_BITS, S_BITS, V_BITS);
+    search_prof_conv(sink, pat_img.px_cnt, conv_start);
 
-    struct rk_sums_h_pass canv_hpass_sums = rk_calc_hpass_sums(canvas8, canvas_img.width, canvas_img.height, pat_img.width);
+    int64_t sums_start = search_prof_start(sink);
     struct rk_sums_h_pass pat_hpass_sums = rk_calc_hpass_sums(pat8, pat_img.width, pat_img.height, pat_img.width);
+    search_prof_end(sink, SEARCH_PHASE_SUMS, sums_start);
+
+    rk_match_vpass(canvas_img, canv_hpass_sums, pat_img, rk_vpass_sum(pat_hpass_sums), NULL, sink);
+
+    rk_free_sums(pat_hpass_sums);
+    free(pat8);
+}
+
+int rk_vpass_sum(struct rk_sums_h_pass hpass_sums) {
+    int vpass_sum = 0;
+    for (int h_s_row = 0; h_s_row < hpass_sums.height; h_s_row++) {
+        vpass_sum = rk_in(vpass_sum, *(hpass_sums.sums + h_s_row));
+    }
+    return vpass_sum;
+}
+
+// with a mask, pat_img is the mask's anchor
+void rk_match_vpass(Img canvas_img, struct rk_sums_h_pass canv_hpass_sums, Img pat_img,
+    int pat_vpass_sum, struct pat_mask *mask, struct search_sink *sink
+) {
+    int64_t scan_start = search_prof_start(sink);
+    int threads_cnt = search_get_threads();
+    if ((threads_cnt > 1) && (canv_hpass_sums.width > 1)) {
+        rk_match_vpass_parallel(canvas_img, canv_hpass_sums, pat_img, pat_vpass_sum, mask, sink, threads_cnt);
+    } else {
+        rk_match_vpass_cols(canvas_img, canv_hpass_sums, pat_img, pat_vpass_sum, mask,
+            0, canv_hpass_sums.width, sink, NULL);
+    }
+    search_prof_end(sink, SEARCH_PHASE_SCAN, scan_start);
+}
+
+struct rk_vpass_job {
+    Img canvas_img;
+    struct rk_sums_h_pass canv_hpass_sums;
+    Img pat_img;
+    int pat_vpass_sum;
+    struct pat_mask *mask;
+    struct search_stripe *stripes;
+};
+
+static void rk_match_vpass_stripe(void *arg, int stripe_i) {
+    struct rk_vpass_job *job = arg;
+    struct search_stripe *stripe = job->stripes + stripe_i;
+    rk_match_vpass_cols(job->canvas_img, job->canv_hpass_sums, job->pat_img, job->pat_vpass_sum, job->mask,
+        stripe->col_from, stripe->col_to, &stripe->buf.sink, stripe);
+}
+
+static void rk_match_vpass_stripes(Img canvas_img, struct rk_sums_h_pass canv_hpass_sums, Img pat_img,
+    int pat_vpass_sum, struct pat_mask *mask, struct search_sink *sink, struct search_stripe *stripes, int stripe_cnt
+) {
+    struct rk_vpass_job job;
+    job.canvas_img = canvas_img;
+    job.canv_hpass_sums = canv_hpass_sums;
+    job.pat_img = pat_img;
+    job.pat_vpass_sum = pat_vpass_sum;
+    job.mask = mask;
+    job.stripes = stripes;
+
+    search_run_stripes(rk_match_vpass_stripe, &job, stripe_cnt);
 
-    int pat_vpass_sum = 0;
-    for (int pat_h_s_row = 0; pat_h_s_row < pat_hpass_sums.height; pat_h_s_row++) {
-        pat_vpass_sum = rk_in(pat_vpass_sum, *(pat_hpass_sums.sums + pat_h_s_row));
+    search_stripes_merge(stripes, stripe_cnt, sink);
+}
+
+// stripes collect into their own buffers, sink only sees the merge
+void rk_match_vpass_parallel(Img canvas_img, struct rk_sums_h_pass canv_hpass_sums,
+    Img pat_img, int pat_vpass_sum, struct pat_mask *mask, struct search_sink *sink, int stripe_cnt
+) {
+    if (stripe_cnt > canv_hpass_sums.width) {
+        stripe_cnt = canv_hpass_sums.width;
     }
 
-    struct search_results results;
-    results.occurrences = malloc(SEARCH_MAX_RESULTS * sizeof(struct match_item));
-    results.res_count = 0;
-    results.collisions = 0;
+    struct search_stripe *stripes = search_stripes_mk(canv_hpass_sums.width, stripe_cnt, sink);
+    rk_match_vpass_stripes(canvas_img, canv_hpass_sums, pat_img, pat_vpass_sum, mask, sink, stripes, stripe_cnt);
+    search_stripes_free(stripes, stripe_cnt);
+}
+
+// rk_match_c8_sink with every buffer taken from ws, which is reused across
+// calls; only a masked pattern differing from ws's last one allocates. No
+// results for a pattern larger than the canvas, false when a buffer can't
+// be allocated
+bool rk_match_ws(struct search_ws *ws, Img canvas_img, Img pat_img, struct search_sink *sink) {
+    if ((pat_img.width > canvas_img.width) || (pat_img.height > canvas_img.height)) {
+        return true;
+    }
+
+    int64_t conv_start = search_prof_start(sink);
+    uint8_t *canvas8 = search_ws_slot(ws, WS_CANVAS_CH, canvas_img.px_cnt);
+    if (canvas8 == NULL) {
+        return false;
+    }
+    condensed_hsv_a(canvas_img.pxs, canvas8, canvas_img.px_cnt, H_BITS, S_BITS, V_BITS);
+
+    struct pat_mask *mask = search_ws_mask(ws, pat_img);
+    Img hashed = (mask != NULL) ? mask->anchor : pat_img;
+
+    uint8_t *pat8 = search_ws_slot(ws, WS_PAT_CH, hashed.px_cnt);
+    if (pat8 == NULL) {
+        return false;
+    }
+    condensed_hsv_a(hashed.pxs, pat8, hashed.px_cnt, H_BITS, S_BITS, V_BITS);
+    search_prof_conv(sink, canvas_img.px_cnt + hashed.px_cnt, conv_start);
+
+    int64_t sums_start = search_prof_start(sink);
+    int sums_w = canvas_img.width - hashed.width + 1;
+    rk_sum_hpass_value *pat_sums_mem = search_ws_slot(ws, WS_PAT_SUMS, sizeof(rk_sum_hpass_value) * hashed.height);
+    rk_sum_hpass_value *canv_sums_mem = search_ws_slot(ws, WS_CANVAS_SUMS,
+        sizeof(rk_sum_hpass_value) * sums_w * canvas_img.height);
+    if ((pat_sums_mem == NULL) || (canv_sums_mem == NULL)) {
+        return false;
+    }
+    struct rk_sums_h_pass pat_hpass_sums = rk_calc_hpass_sums_in(pat8, hashed.width, hashed.height, hashed.width,
+        pat_sums_mem);
+    struct rk_sums_h_pass canv_hpass_sums = rk_calc_hpass_sums_in(canvas8, canvas_img.width, canvas_img.height,
+        hashed.width, canv_sums_mem);
+    search_prof_end(sink, SEARCH_PHASE_SUMS, sums_start);
+
+    int64_t scan_start = search_prof_start(sink);
+    int pat_vpass_sum = rk_vpass_sum(pat_hpass_sums);
+    int threads_cnt = search_get_threads();
+    if ((threads_cnt > 1) && (sums_w > 1)) {
+        int stripe_cnt = (threads_cnt > sums_w) ? sums_w : threads_cnt;
+        struct search_stripe *stripes = search_ws_stripes(ws, sums_w, stripe_cnt, sink);
+        rk_match_vpass_stripes(canvas_img, canv_hpass_sums, hashed, pat_vpass_sum, mask, sink, stripes, stripe_cnt);
+    } else {
+        rk_match_vpass_cols(canvas_img, canv_hpass_sums, hashed, pat_vpass_sum, mask, 0, sums_w, sink, NULL);
+    }
+    search_prof_end(sink, SEARCH_PHASE_SCAN, scan_start);
+    return true;
+}
+
+static bool rk_confirm(Img canvas_img, Img pat_img, int sx, int sy, int64_t *confirm_pxs) {
+    for (int y = 0; y < pat_img.height; y++) {
+        for (int x = 0; x < pat_img.width; x++) {
+            if (!val_eq(val_at(canvas_img, sx + x, sy + y), val_at(pat_img, x, y))) {
+                *confirm_pxs += (y * pat_img.width) + x + 1;
+                return false;
+            }
+        }
+    }
+    *confirm_pxs += pat_img.px_cnt;
+    return true;
+}
+
+void rk_match_vpass_cols(Img canvas_img, struct rk_sums_h_pass canv_hpass_sums, Img pat_img, int pat_vpass_sum,
+    struct pat_mask *mask, int col_from, int col_to, struct search_sink *sink, struct search_stripe *stripe
+) {
+    int pat_hpass_height = pat_img.height;
+
+    int clear_factor_vpass = modpow(1 + 0xFF, pat_hpass_height - 1, Q);
+    for (int c_s_col = col_from; c_s_col < col_to; c_s_col++) {
+        if ((stripe != NULL) && search_stripe_superseded(stripe)) {
+            return;
+        }
 
-    int clear_factor_vpass = modpow(1 + 0xFF, pat_hpass_sums.height - 1, Q);
-    for (int c_s_col = 0; c_s_col < canv_hpass_sums.width; c_s_col++) {
         int canv_vpass_sum = 0;
         for (int c_s_row = 0; c_s_row < canv_hpass_sums.height; c_s_row++) {
             uint8_t canv_sum = rk_sum_at(canv_hpass_sums, c_s_col, c_s_row);
-            if (c_s_row >= pat_hpass_sums.height) {
+            if (c_s_row >= pat_hpass_height) {
                 uint8_t leaving = rk_sum_at(canv_hpass_sums, c_s_col,
-                    c_s_row - pat_hpass_sums.height);
+                    c_s_row - pat_hpass_height);
                 canv_vpass_sum = rk_out(canv_vpass_sum, leaving, clear_factor_vpass);
             }
 
             canv_vpass_sum = rk_in(canv_vpass_sum, canv_sum);
 
-            if (c_s_row < (pat_hpass_sums.height - 1)) {
+            if (c_s_row < (pat_hpass_height - 1)) {
                 continue;
             }
 
-            int inp_img_row = c_s_row - pat_hpass_sums.height + 1;
+            int inp_img_row = c_s_row - pat_hpass_height + 1;
             int inp_img_col = c_s_col;
             if (canv_vpass_sum == pat_vpass_sum) {
-                int confirm_y, confirm_x;
-                for (confirm_y = 0; confirm_y < pat_img.height; confirm_y++) {
-                    for (confirm_x = 0; confirm_x < pat_img.width; confirm_x++) {
-                        struct pixel c_px = val_at(canvas_img, inp_img_col + confirm_x, inp_img_row + confirm_y);
-                        struct pixel p_px = val_at(pat_img, confirm_x, confirm_y);
-                        if (!val_eq(c_px, p_px)) {
-                            goto confirm_stop;
-                        }
+                int64_t confirm_start = search_prof_start(sink);
+                bool confirmed;
+                if (mask != NULL) {
+                    if (!pat_mask_fits(canv_hpass_sums.width + pat_img.width - 1, canv_hpass_sums.height, mask,
+                        inp_img_col, inp_img_row)
+                    ) {
+                        continue;
                     }
+                    confirmed = pat_mask_confirm(canvas_img, mask, inp_img_col, inp_img_row, 0, &sink->confirm_pxs);
+                } else {
+                    confirmed = rk_confirm(canvas_img, pat_img, inp_img_col, inp_img_row, &sink->confirm_pxs);
                 }
-                confirm_stop:
-
-                if ((confirm_y == pat_img.height) && (confirm_x == pat_img.width)) {
-                    (results.occurrences + results.res_count)->x = inp_img_col;
-                    (results.occurrences + results.res_count)->y = inp_img_row;
-                    results.res_count++;
-                    if (results.res_count == SEARCH_MAX_RESULTS) {
-                        goto search_stop;
+                search_prof_candidate(sink, confirm_start);
+
+                if (confirmed) {
+                    int res_x = inp_img_col - ((mask != NULL) ? mask->anchor_x : 0);
+                    int res_y = inp_img_row - ((mask != NULL) ? mask->anchor_y : 0);
+                    if (!search_sink_add(sink, res_x, res_y)) {
+                        if (stripe != NULL) {
+                            search_stripe_filled(stripe);
+                        }
+                        return;
                     }
                 } else {
-                    results.collisions++;
+                    sink->collisions++;
                 }
             }
         }
     }
-    search_stop:
-
-    rk_free_sums(canv_hpass_sums);
-    rk_free_sums(pat_hpass_sums);
-    free(canvas8);
-    free(pat8);
-
-    return results;
 }
 
 uint32_t rk_in(uint32_t value, int in) {
@@ -117,14 +411,19 @@ int rk_advance_hpass(rk_state *state, rk_sum_hpass_value *sum,
 }
 
 struct rk_sums_h_pass rk_calc_hpass_sums(uint8_t *img_channel, int img_width, int img_height, int win) {
+    size_t sums_mem_size = sizeof(rk_sum_hpass_value) * (img_width - win + 1) * img_height;
+    return rk_calc_hpass_sums_in(img_channel, img_width, img_height, win, malloc(sums_mem_size));
+}
+
+// sums_start has room for (img_width - win + 1) * img_height sums, the result refers to it
+struct rk_sums_h_pass rk_calc_hpass_sums_in(uint8_t *img_channel, int img_width, int img_height, int win,
+    rk_sum_hpass_value *sums_start
+) {
     rk_state state;
     rk_sum_hpass_value sum;
 
     uint8_t *in_row_start = img_channel;
     int sums_stride = (img_width - win + 1);
-    size_t sums_mem_size = sizeof(rk_sum_hpass_value) * sums_stride * img_height;
-
-    rk_sum_hpass_value *sums_start = malloc(sums_mem_size);
 
     int clear_factor = modpow(256, win - 1, Q);
 
@@ -0,0 +1,255 @@
+#include <stdlib.h>
+#include <string.h>
+#include <pthread.h>
+#include "search_parallel.h"
+#include "search.h"
+#include "drscbt.h"
+
+// the pool searches run on, released by search_set_threads() replacing it
+// and by every search that took a reference; freed with the last one
+struct pool_ref {
+    struct wpool *pool;
+    int refs;
+    // a pool runs one batch of stripes at a time
+    pthread_mutex_t run_lock;
+};
+
+// guards shared_pool, shared_threads and the refs, held only briefly
+static pthread_mutex_t pool_cfg_lock = PTHREAD_MUTEX_INITIALIZER;
+static struct pool_ref *shared_pool = NULL;
+static int shared_threads = 1;
+
+static void *wpool_thread_body(void *arg) {
+    struct wpool *pool = arg;
+
+    pthread_mutex_lock(&pool->lock);
+    for (;;) {
+        while (!pool->shutdown && (pool->next_task >= pool->task_cnt)) {
+            pthread_cond_wait(&pool->work_cond, &pool->lock);
+        }
+
+        if (pool->shutdown) {
+            break;
+        }
+
+        int task_i = pool->next_task++;
+        pthread_mutex_unlock(&pool->lock);
+
+        pool->fn(pool->arg, task_i);
+
+        pthread_mutex_lock(&pool->lock);
+        pool->tasks_done++;
+        if (pool->tasks_done == pool->task_cnt) {
+            pthread_cond_signal(&pool->done_cond);
+        }
+    }
+    pthread_mutex_unlock(&pool->lock);
+
+    return NULL;
+}
+
+struct wpool *wpool_create(int threads_cnt) {
+    struct wpool *pool = malloc(sizeof(struct wpool));
+    pool->threads_cnt = threads_cnt;
+    pool->threads = malloc(threads_cnt * sizeof(pthread_t));
+    pthread_mutex_init(&pool->lock, NULL);
+    pthread_cond_init(&pool->work_cond, NULL);
+    pthread_cond_init(&pool->done_cond, NULL);
+    pool->fn = NULL;
+    pool->arg = NULL;
+    pool->task_cnt = 0;
+    pool->next_task = 0;
+    pool->tasks_done = 0;
+    pool->shutdown = false;
+
+    for (int i = 0; i < threads_cnt; i++) {
+        pthread_create(pool->threads + i, NULL, wpool_thread_body, pool);
+    }
+
+    return pool;
+}
+
+void wpool_run(struct wpool *pool, void (*fn)(void *arg, int task_i), void *arg, int task_cnt) {
+    pthread_mutex_lock(&pool->lock);
+    pool->fn = fn;
+    pool->arg = arg;
+    pool->tasks_done = 0;
+    pool->next_task = 0;
+    pool->task_cnt = task_cnt;
+    pthread_cond_broadcast(&pool->work_cond);
+
+    while (pool->tasks_done < task_cnt) {
+        pthread_cond_wait(&pool->done_cond, &pool->lock);
+    }
+
+    pool->task_cnt = 0;
+    pool->next_task = 0;
+    pool->fn = NULL;
+    pool->arg = NULL;
+    pthread_mutex_unlock(&pool->lock);
+}
+
+void wpool_destroy(struct wpool *pool) {
+    pthread_mutex_lock(&pool->lock);
+    pool->shutdown = true;
+    pthread_cond_broadcast(&pool->work_cond);
+    pthread_mutex_unlock(&pool->lock);
+
+    for (int i = 0; i < pool->threads_cnt; i++) {
+        pthread_join(*(pool->threads + i), NULL);
+    }
+
+    pthread_cond_destroy(&pool->done_cond);
+    pthread_cond_destroy(&pool->work_cond);
+    pthread_mutex_destroy(&pool->lock);
+    free(pool->threads);
+    free(pool);
+}
+
+static struct pool_ref *pool_ref_mk(int threads_cnt) {
+    struct pool_ref *ref = malloc(sizeof(struct pool_ref));
+    ref->pool = wpool_create(threads_cnt);
+    ref->refs = 1;
+    pthread_mutex_init(&ref->run_lock, NULL);
+    return ref;
+}
+
+static struct pool_ref *pool_ref_take(void) {
+    pthread_mutex_lock(&pool_cfg_lock);
+    struct pool_ref *ref = shared_pool;
+    if (ref != NULL) {
+        ref->refs++;
+    }
+    pthread_mutex_unlock(&pool_cfg_lock);
+    return ref;
+}
+
+static void pool_ref_release(struct pool_ref *ref) {
+    pthread_mutex_lock(&pool_cfg_lock);
+    bool last = (--ref->refs == 0);
+    pthread_mutex_unlock(&pool_cfg_lock);
+
+    if (last) {
+        wpool_destroy(ref->pool);
+        pthread_mutex_destroy(&ref->run_lock);
+        free(ref);
+    }
+}
+
+void search_set_threads(int threads_cnt) {
+    if (threads_cnt < 1) {
+        threads_cnt = 1;
+    }
+
+    struct pool_ref *replaced = NULL;
+    pthread_mutex_lock(&pool_cfg_lock);
+    if (threads_cnt != shared_threads) {
+        replaced = shared_pool;
+        shared_pool = (threads_cnt > 1) ? pool_ref_mk(threads_cnt) : NULL;
+        shared_threads = threads_cnt;
+    }
+    pthread_mutex_unlock(&pool_cfg_lock);
+
+    // searches still running on it keep it alive until they're done
+    if (replaced != NULL) {
+        pool_ref_release(replaced);
+    }
+}
+
+int search_get_threads(void) {
+    pthread_mutex_lock(&pool_cfg_lock);
+    int threads_cnt = shared_threads;
+    pthread_mutex_unlock(&pool_cfg_lock);
+    return threads_cnt;
+}
+
+// the stripes are independent and merged in order afterwards, so when the
+// pool is busy with another search they just run on the calling thread
+void search_run_stripes(void (*fn)(void *arg, int stripe_i), void *arg, int stripe_cnt) {
+    struct pool_ref *ref = pool_ref_take();
+    if ((ref != NULL) && (pthread_mutex_trylock(&ref->run_lock) == 0)) {
+        wpool_run(ref->pool, fn, arg, stripe_cnt);
+        pthread_mutex_unlock(&ref->run_lock);
+    } else {
+        for (int stripe_i = 0; stripe_i < stripe_cnt; stripe_i++) {
+            fn(arg, stripe_i);
+        }
+    }
+    if (ref != NULL) {
+        pool_ref_release(ref);
+    }
+}
+
+// stripes collecting for sink, with its limit, profiled if sink is
+struct search_stripe *search_stripes_mk(int cols, int stripe_cnt, struct search_sink *sink) {
+    struct search_stripe *stripes = malloc(stripe_cnt * sizeof(struct search_stripe));
+    int *filled_from = malloc(sizeof(int));
+    for (int stripe_i = 0; stripe_i < stripe_cnt; stripe_i++) {
+        search_sink_buf_init(&(stripes + stripe_i)->buf, sink->limit);
+    }
+    search_stripes_layout(stripes, cols, stripe_cnt, sink, filled_from);
+    return stripes;
+}
+
+// (re)splits cols over stripes with initialized buffers, emptying them
+void search_stripes_layout(struct search_stripe *stripes, int cols, int stripe_cnt, struct search_sink *sink,
+    int *filled_from
+) {
+    *filled_from = stripe_cnt;
+    for (int stripe_i = 0; stripe_i < stripe_cnt; stripe_i++) {
+        struct search_stripe *stripe = stripes + stripe_i;
+        stripe->col_from = (int)(((int64_t)cols * stripe_i) / stripe_cnt);
+        stripe->col_to = (int)(((int64_t)cols * (stripe_i + 1)) / stripe_cnt);
+        search_sink_buf_reset(&stripe->buf, sink->limit);
+        stripe->buf.sink.prof = (sink->prof != NULL) ? &stripe->buf.prof : NULL;
+        stripe->stripe_i = stripe_i;
+        stripe->filled_from = filled_from;
+    }
+}
+
+// once a stripe alone has reached the limit, stripes to the right of it
+// can't contribute to the merged result and may stop scanning
+void search_stripe_filled(struct search_stripe *stripe) {
+    int seen = __atomic_load_n(stripe->filled_from, __ATOMIC_RELAXED);
+    while ((stripe->stripe_i < seen) &&
+        !__atomic_compare_exchange_n(stripe->filled_from, &seen, stripe->stripe_i,
+            false, __ATOMIC_RELAXED, __ATOMIC_RELAXED)
+    ) {
+    }
+}
+
+bool search_stripe_superseded(struct search_stripe *stripe) {
+    return __atomic_load_n(stripe->filled_from, __ATOMIC_RELAXED) < stripe->stripe_i;
+}
+
+// replays the stripes' occurrences into sink in column order, on the calling
+// thread; collisions are counted as the serial loop would have up to where
+// sink stopped, confirmed pixels and the profile are the work all stripes
+// actually did, confirmation times summed over the threads
+void search_stripes_merge(struct search_stripe *stripes, int stripe_cnt, struct search_sink *sink) {
+    for (int stripe_i = 0; stripe_i < stripe_cnt; stripe_i++) {
+        sink->confirm_pxs += (stripes + stripe_i)->buf.sink.confirm_pxs;
+        if (sink->prof != NULL) {
+            search_prof_add(sink->prof, &(stripes + stripe_i)->buf.prof);
+        }
+    }
+    for (int stripe_i = 0; stripe_i < stripe_cnt; stripe_i++) {
+        struct search_sink_buf *buf = &(stripes + stripe_i)->buf;
+        int coll_base = sink->collisions;
+        for (int occ_i = 0; occ_i < buf->sink.count; occ_i++) {
+            sink->collisions = coll_base + *(buf->coll_at + occ_i);
+            if (!search_sink_add(sink, (buf->items + occ_i)->x, (buf->items + occ_i)->y)) {
+                return;
+            }
+        }
+        sink->collisions = coll_base + buf->sink.collisions;
+    }
+}
+
+void search_stripes_free(struct search_stripe *stripes, int stripe_cnt) {
+    for (int stripe_i = 0; stripe_i < stripe_cnt; stripe_i++) {
+        search_sink_buf_free(&(stripes + stripe_i)->buf);
+    }
+    free(stripes->filled_from);
+    free(stripes);
+}
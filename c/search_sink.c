@@ -0,0 +1,131 @@
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+#include "search.h"
+
+#define SINK_BUF_MIN_CAP 64
+
+static bool profiling = false;
+
+void search_sink_init(struct search_sink *sink, bool (*emit)(struct search_sink *sink, int x, int y), int limit) {
+    sink->emit = emit;
+    sink->limit = limit;
+    sink->count = 0;
+    sink->collisions = 0;
+    sink->confirm_pxs = 0;
+    sink->prof = NULL;
+}
+
+// false once the search has to stop, the sink's limit is reached or emit()
+// asked for it
+bool search_sink_add(struct search_sink *sink, int x, int y) {
+    bool more = sink->emit(sink, x, y);
+    sink->count++;
+    return more && ((sink->limit <= 0) || (sink->count < sink->limit));
+}
+
+static bool search_sink_buf_emit(struct search_sink *sink, int x, int y) {
+    struct search_sink_buf *buf = (struct search_sink_buf *)sink;
+    if (sink->count == buf->cap) {
+        int cap = (buf->cap < SINK_BUF_MIN_CAP) ? SINK_BUF_MIN_CAP : (buf->cap * 2);
+        if ((sink->limit > 0) && (cap > sink->limit)) {
+            cap = sink->limit;
+        }
+        buf->items = realloc(buf->items, cap * sizeof(struct match_item));
+        buf->coll_at = realloc(buf->coll_at, cap * sizeof(int));
+        buf->cap = cap;
+    }
+    (buf->items + sink->count)->x = x;
+    (buf->items + sink->count)->y = y;
+    *(buf->coll_at + sink->count) = sink->collisions;
+    return true;
+}
+
+// collects occurrences, growing as needed instead of reserving the limit up
+// front; profiled while search_set_profiling() is on
+void search_sink_buf_init(struct search_sink_buf *buf, int limit) {
+    search_sink_init(&buf->sink, search_sink_buf_emit, limit);
+    buf->items = NULL;
+    buf->coll_at = NULL;
+    buf->cap = 0;
+    memset(&buf->prof, 0, sizeof(struct search_prof));
+    buf->sink.prof = profiling ? &buf->prof : NULL;
+}
+
+// keeps the memory for the next search
+void search_sink_buf_reset(struct search_sink_buf *buf, int limit) {
+    buf->sink.limit = limit;
+    buf->sink.count = 0;
+    buf->sink.collisions = 0;
+    buf->sink.confirm_pxs = 0;
+    memset(&buf->prof, 0, sizeof(struct search_prof));
+    buf->sink.prof = profiling ? &buf->prof : NULL;
+}
+
+// hands the occurrences over, the buffer is empty afterwards
+struct search_results search_sink_buf_take(struct search_sink_buf *buf) {
+    struct search_results results;
+    results.occurrences = buf->items;
+    results.res_count = buf->sink.count;
+    results.collisions = buf->sink.collisions;
+    results.confirm_pxs = buf->sink.confirm_pxs;
+    results.profiled = buf->sink.prof != NULL;
+    results.prof = buf->prof;
+
+    free(buf->coll_at);
+    search_sink_buf_init(buf, buf->sink.limit);
+
+    return results;
+}
+
+void search_sink_buf_free(struct search_sink_buf *buf) {
+    free(buf->items);
+    free(buf->coll_at);
+    search_sink_buf_init(buf, buf->sink.limit);
+}
+
+// per phase timings and counters of searches into a search_sink_buf, off by
+// default as timing every confirmation isn't free
+void search_set_profiling(bool on) {
+    profiling = on;
+}
+
+int64_t search_prof_now(void) {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return ((int64_t)ts.tv_sec * 1000000000) + ts.tv_nsec;
+}
+
+// 0 when sink isn't profiled, pass it on to search_prof_end()
+int64_t search_prof_start(struct search_sink *sink) {
+    return (sink->prof != NULL) ? search_prof_now() : 0;
+}
+
+void search_prof_end(struct search_sink *sink, enum search_phase phase, int64_t start) {
+    if (sink->prof != NULL) {
+        sink->prof->ns[phase] += search_prof_now() - start;
+    }
+}
+
+// a hash hit or sums candidate, confirmed or not, starting at start
+void search_prof_candidate(struct search_sink *sink, int64_t start) {
+    if (sink->prof != NULL) {
+        sink->prof->ns[SEARCH_PHASE_CONFIRM] += search_prof_now() - start;
+        sink->prof->candidates++;
+    }
+}
+
+void search_prof_conv(struct search_sink *sink, int px_cnt, int64_t start) {
+    if (sink->prof != NULL) {
+        sink->prof->ns[SEARCH_PHASE_CONV] += search_prof_now() - start;
+        sink->prof->conv_pxs += px_cnt;
+    }
+}
+
+void search_prof_add(struct search_prof *to, const struct search_prof *from) {
+    for (int phase = 0; phase < SEARCH_PHASE_CNT; phase++) {
+        to->ns[phase] += from->ns[phase];
+    }
+    to->conv_pxs += from->conv_pxs;
+    to->candidates += from->candidates;
+}
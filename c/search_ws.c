@@ -0,0 +1,81 @@
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include "search_ws.h"
+#include "search_parallel.h"
+#include "pat_mask.h"
+#include "drscbt.h"
+
+// Buffers for rk_match_ws/bs_match_ws kept between searches. Each slot only
+// grows, so once the largest canvas and pattern have been seen a search
+// allocates nothing. Not thread safe, one search at a time per workspace.
+struct search_ws *search_ws_mk(void) {
+    struct search_ws *ws = calloc(1, sizeof(struct search_ws));
+    search_sink_buf_init(&ws->results, 0);
+    return ws;
+}
+
+void search_ws_free(struct search_ws *ws) {
+    for (int slot = 0; slot < WS_SLOT_CNT; slot++) {
+        free(ws->slots[slot]);
+    }
+    for (int stripe_i = 0; stripe_i < ws->stripes_cap; stripe_i++) {
+        search_sink_buf_free(&(ws->stripes + stripe_i)->buf);
+    }
+    free(ws->stripes);
+    pat_mask_free(ws->mask);
+    free_img(ws->mask_pat);
+    search_sink_buf_free(&ws->results);
+    free(ws);
+}
+
+// NULL when the slot can't grow to size, it's left empty then
+void *search_ws_slot(struct search_ws *ws, enum search_ws_slot slot, size_t size) {
+    if (size > ws->slot_caps[slot]) {
+        free(ws->slots[slot]);
+        ws->slots[slot] = malloc(size);
+        ws->slot_caps[slot] = (ws->slots[slot] != NULL) ? size : 0;
+        if (ws->slots[slot] == NULL) {
+            fprintf(stderr, "search workspace slot %d: can't allocate %zu bytes\n", slot, size);
+        }
+    }
+    return ws->slots[slot];
+}
+
+// stripe buffers keep their memory too
+struct search_stripe *search_ws_stripes(struct search_ws *ws, int cols, int stripe_cnt, struct search_sink *sink) {
+    if (stripe_cnt > ws->stripes_cap) {
+        ws->stripes = realloc(ws->stripes, stripe_cnt * sizeof(struct search_stripe));
+        for (int stripe_i = ws->stripes_cap; stripe_i < stripe_cnt; stripe_i++) {
+            search_sink_buf_init(&(ws->stripes + stripe_i)->buf, sink->limit);
+        }
+        ws->stripes_cap = stripe_cnt;
+    }
+    search_stripes_layout(ws->stripes, cols, stripe_cnt, sink, &ws->filled_from);
+    return ws->stripes;
+}
+
+// like pat_mask_mk, but the mask of the last masked pattern is kept over a
+// copy of it and reused while the pattern stays the same
+struct pat_mask *search_ws_mask(struct search_ws *ws, Img pat_img) {
+    if ((ws->mask != NULL) && (ws->mask_pat.width == pat_img.width) && (ws->mask_pat.height == pat_img.height)
+        && (memcmp(ws->mask_pat.pxs, pat_img.pxs, pat_img.px_cnt * sizeof(struct pixel)) == 0)
+    ) {
+        return ws->mask;
+    }
+
+    struct pat_mask *m = pat_mask_mk(pat_img);
+    if (m == NULL) {
+        return NULL;
+    }
+
+    pat_mask_free(ws->mask);
+    free_img(ws->mask_pat);
+    ws->mask_pat = pat_img;
+    ws->mask_pat.pxs = malloc(pat_img.px_cnt * sizeof(struct pixel));
+    memcpy(ws->mask_pat.pxs, pat_img.pxs, pat_img.px_cnt * sizeof(struct pixel));
+    m->pat_img = ws->mask_pat;
+    ws->mask = m;
+
+    return m;
+}
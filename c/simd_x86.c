@@ -0,0 +1,401 @@
+#include <stdlib.h>
+#include <stdbool.h>
+#include "simd_x86.h"
+#include "color.h"
+#include "bs_search.h"
+#include "drscbt.h"
+
+#if defined(__x86_64__) && defined(__GNUC__)
+
+#include <immintrin.h>
+
+#define BS_PREFIX_STACK_LEN 4096
+
+static enum simd_level detected_level = SIMD_UNDETECTED;
+
+enum simd_level simd_level(void) {
+    if (detected_level == SIMD_UNDETECTED) {
+        __builtin_cpu_init();
+        if (__builtin_cpu_supports("avx2")) {
+            detected_level = SIMD_AVX2;
+        } else if (__builtin_cpu_supports("sse4.1")) {
+            detected_level = SIMD_SSE41;
+        } else {
+            detected_level = SIMD_NONE;
+        }
+    }
+    return detected_level;
+}
+
+__attribute__((target("avx2")))
+static inline __m256i round_half_away_avx2(__m256 q) {
+    __m256 t = _mm256_round_ps(q, _MM_FROUND_TO_ZERO | _MM_FROUND_NO_EXC);
+    __m256 f = _mm256_sub_ps(q, t);
+    __m256 up = _mm256_cmp_ps(f, _mm256_set1_ps(0.5f), _CMP_GE_OQ);
+    __m256 down = _mm256_cmp_ps(f, _mm256_set1_ps(-0.5f), _CMP_LE_OQ);
+    __m256i r = _mm256_cvttps_epi32(t);
+    r = _mm256_sub_epi32(r, _mm256_castps_si256(up));
+    r = _mm256_add_epi32(r, _mm256_castps_si256(down));
+    return r;
+}
+
+__attribute__((target("avx2")))
+static inline void to_hsv_avx2(__m256i px, __m256i *hue_out, __m256i *sat_out, __m256i *v_out) {
+    __m256i byte_mask = _mm256_set1_epi32(0xFF);
+    __m256i a = _mm256_srli_epi32(px, 24);
+    __m256i b = _mm256_and_si256(_mm256_srli_epi32(px, 16), byte_mask);
+    __m256i c = _mm256_and_si256(_mm256_srli_epi32(px, 8), byte_mask);
+
+    __m256i highest = _mm256_max_epi32(_mm256_max_epi32(a, b), c);
+    __m256i lowest = _mm256_min_epi32(_mm256_min_epi32(a, b), c);
+    __m256i range = _mm256_sub_epi32(highest, lowest);
+    __m256 f_highest = _mm256_cvtepi32_ps(highest);
+    __m256 f_range = _mm256_cvtepi32_ps(range);
+    __m256i zero = _mm256_setzero_si256();
+
+    __m256 sat_q = _mm256_div_ps(
+        _mm256_cvtepi32_ps(_mm256_mullo_epi32(range, _mm256_set1_epi32(HSV_MAX_SAT))), f_highest);
+    __m256i sat = round_half_away_avx2(sat_q);
+    sat = _mm256_andnot_si256(_mm256_cmpeq_epi32(highest, zero), sat);
+
+    __m256i a_is_max = _mm256_cmpeq_epi32(a, highest);
+    __m256i b_is_max = _mm256_andnot_si256(a_is_max, _mm256_cmpeq_epi32(b, highest));
+    __m256i diff = _mm256_sub_epi32(a, b);
+    diff = _mm256_blendv_epi8(diff, _mm256_sub_epi32(c, a), b_is_max);
+    diff = _mm256_blendv_epi8(diff, _mm256_sub_epi32(b, c), a_is_max);
+    __m256i hue_base = _mm256_set1_epi32(HUE_TWO_THIRDS);
+    hue_base = _mm256_blendv_epi8(hue_base, _mm256_set1_epi32(HUE_ONE_THIRD), b_is_max);
+    hue_base = _mm256_blendv_epi8(hue_base, zero, a_is_max);
+
+    __m256 hue_q = _mm256_div_ps(
+        _mm256_mul_ps(_mm256_set1_ps(HUE_ONE_SIXTH), _mm256_cvtepi32_ps(diff)), f_range);
+    __m256i hue = _mm256_add_epi32(hue_base, round_half_away_avx2(hue_q));
+    __m256i hue_full = _mm256_set1_epi32(HUE_FULL);
+    hue = _mm256_add_epi32(hue, _mm256_and_si256(_mm256_cmpgt_epi32(zero, hue), hue_full));
+    hue = _mm256_sub_epi32(hue, _mm256_and_si256(_mm256_cmpgt_epi32(hue, hue_full), hue_full));
+    hue = _mm256_andnot_si256(_mm256_cmpeq_epi32(hue, hue_full), hue);
+    hue = _mm256_andnot_si256(_mm256_cmpeq_epi32(sat, zero), hue);
+
+    __m256 v_q = _mm256_mul_ps(_mm256_div_ps(f_highest, _mm256_set1_ps(255.0f)), _mm256_set1_ps(HSV_MAX_V));
+
+    *hue_out = hue;
+    *sat_out = sat;
+    *v_out = round_half_away_avx2(v_q);
+}
+
+__attribute__((target("avx2")))
+static inline __m256i condensed_hsv_avx2(__m256i px, __m128i shift_2, __m128i shift_3,
+    __m256i mask_1, __m256i mask_2, __m256i mask_3
+) {
+    __m256i hue, sat, v;
+    to_hsv_avx2(px, &hue, &sat, &v);
+    __m256i co1 = _mm256_and_si256(hue, mask_1);
+    __m256i co2 = _mm256_and_si256(_mm256_srl_epi32(sat, shift_2), mask_2);
+    __m256i co3 = _mm256_and_si256(_mm256_srl_epi32(v, shift_3), mask_3);
+    return _mm256_add_epi32(_mm256_add_epi32(co1, co2), co3);
+}
+
+__attribute__((target("avx2")))
+static inline __m256i grayscale_avx2(__m256i px) {
+    __m256i byte_mask = _mm256_set1_epi32(0xFF);
+    __m256i sum = _mm256_add_epi32(
+        _mm256_add_epi32(_mm256_srli_epi32(px, 24), _mm256_and_si256(_mm256_srli_epi32(px, 16), byte_mask)),
+        _mm256_and_si256(_mm256_srli_epi32(px, 8), byte_mask));
+    // round(sum / 3.0) == (sum + 1) / 3 == ((sum + 1) * 21846) >> 16 for sum <= 765
+    sum = _mm256_add_epi32(sum, _mm256_set1_epi32(1));
+    return _mm256_srli_epi32(_mm256_mullo_epi32(sum, _mm256_set1_epi32(21846)), 16);
+}
+
+__attribute__((target("avx2")))
+static inline void store_bytes32_avx2(uint8_t *out, __m256i d0, __m256i d1, __m256i d2, __m256i d3) {
+    __m256i w01 = _mm256_packus_epi32(d0, d1);
+    __m256i w23 = _mm256_packus_epi32(d2, d3);
+    __m256i b = _mm256_packus_epi16(w01, w23);
+    b = _mm256_permutevar8x32_epi32(b, _mm256_setr_epi32(0, 4, 1, 5, 2, 6, 3, 7));
+    _mm256_storeu_si256((__m256i *)out, b);
+}
+
+__attribute__((target("avx2")))
+static int pic_to_grayscale_avx2(const struct pixel *in, uint8_t *out, int len) {
+    int i = 0;
+    for (; i + 32 <= len; i += 32) {
+        const __m256i *src = (const __m256i *)(in + i);
+        store_bytes32_avx2(out + i,
+            grayscale_avx2(_mm256_loadu_si256(src)),
+            grayscale_avx2(_mm256_loadu_si256(src + 1)),
+            grayscale_avx2(_mm256_loadu_si256(src + 2)),
+            grayscale_avx2(_mm256_loadu_si256(src + 3)));
+    }
+    return i;
+}
+
+__attribute__((target("avx2")))
+static int condensed_hsv_a_avx2(const struct pixel *in, uint8_t *out, int len, int bits_1, int bits_2, int bits_3) {
+    __m128i shift_2 = _mm_cvtsi32_si128(bits_1);
+    __m128i shift_3 = _mm_cvtsi32_si128(bits_1 + bits_2);
+    __m256i mask_1 = _mm256_set1_epi32(((1 << bits_1) - 1) << (8 - bits_1));
+    __m256i mask_2 = _mm256_set1_epi32(((1 << bits_2) - 1) << (8 - bits_1 - bits_2));
+    __m256i mask_3 = _mm256_set1_epi32((1 << bits_3) - 1);
+
+    int i = 0;
+    for (; i + 32 <= len; i += 32) {
+        const __m256i *src = (const __m256i *)(in + i);
+        store_bytes32_avx2(out + i,
+            condensed_hsv_avx2(_mm256_loadu_si256(src), shift_2, shift_3, mask_1, mask_2, mask_3),
+            condensed_hsv_avx2(_mm256_loadu_si256(src + 1), shift_2, shift_3, mask_1, mask_2, mask_3),
+            condensed_hsv_avx2(_mm256_loadu_si256(src + 2), shift_2, shift_3, mask_1, mask_2, mask_3),
+            condensed_hsv_avx2(_mm256_loadu_si256(src + 3), shift_2, shift_3, mask_1, mask_2, mask_3));
+    }
+    return i;
+}
+
+__attribute__((target("avx2")))
+static int to_hsv_a_avx2(const struct pixel *in, uint32_t *out, int len) {
+    int i = 0;
+    for (; i + 8 <= len; i += 8) {
+        __m256i hue, sat, v;
+        to_hsv_avx2(_mm256_loadu_si256((const __m256i *)(in + i)), &hue, &sat, &v);
+        __m256i packed = _mm256_or_si256(
+            _mm256_or_si256(_mm256_slli_epi32(hue, 24), _mm256_slli_epi32(sat, 16)),
+            _mm256_or_si256(_mm256_slli_epi32(v, 8), _mm256_set1_epi32(0xFF)));
+        _mm256_storeu_si256((__m256i *)(out + i), packed);
+    }
+    return i;
+}
+
+__attribute__((target("avx2")))
+static void bs_row_sums_avx2(const int32_t *prefix, int sums_cnt, int win, bs_sum_value *out) {
+    __m256 f_win = _mm256_set1_ps((float)win);
+    int32_t quot[8];
+    int x = 0;
+    for (; x + 8 <= sums_cnt; x += 8) {
+        __m256i s = _mm256_sub_epi32(
+            _mm256_loadu_si256((const __m256i *)(prefix + x + win)),
+            _mm256_loadu_si256((const __m256i *)(prefix + x)));
+        _mm256_storeu_si256((__m256i *)quot,
+            _mm256_cvttps_epi32(_mm256_div_ps(_mm256_cvtepi32_ps(s), f_win)));
+        for (int l = 0; l < 8; l++) {
+            *(out + x + l) = quot[l];
+        }
+    }
+    for (; x < sums_cnt; x++) {
+        *(out + x) = (*(prefix + x + win) - *(prefix + x)) / win;
+    }
+}
+
+__attribute__((target("sse4.1")))
+static inline __m128i round_half_away_sse41(__m128 q) {
+    __m128 t = _mm_round_ps(q, _MM_FROUND_TO_ZERO | _MM_FROUND_NO_EXC);
+    __m128 f = _mm_sub_ps(q, t);
+    __m128 up = _mm_cmpge_ps(f, _mm_set1_ps(0.5f));
+    __m128 down = _mm_cmple_ps(f, _mm_set1_ps(-0.5f));
+    __m128i r = _mm_cvttps_epi32(t);
+    r = _mm_sub_epi32(r, _mm_castps_si128(up));
+    r = _mm_add_epi32(r, _mm_castps_si128(down));
+    return r;
+}
+
+__attribute__((target("sse4.1")))
+static inline void to_hsv_sse41(__m128i px, __m128i *hue_out, __m128i *sat_out, __m128i *v_out) {
+    __m128i byte_mask = _mm_set1_epi32(0xFF);
+    __m128i a = _mm_srli_epi32(px, 24);
+    __m128i b = _mm_and_si128(_mm_srli_epi32(px, 16), byte_mask);
+    __m128i c = _mm_and_si128(_mm_srli_epi32(px, 8), byte_mask);
+
+    __m128i highest = _mm_max_epi32(_mm_max_epi32(a, b), c);
+    __m128i lowest = _mm_min_epi32(_mm_min_epi32(a, b), c);
+    __m128i range = _mm_sub_epi32(highest, lowest);
+    __m128 f_highest = _mm_cvtepi32_ps(highest);
+    __m128 f_range = _mm_cvtepi32_ps(range);
+    __m128i zero = _mm_setzero_si128();
+
+    __m128 sat_q = _mm_div_ps(
+        _mm_cvtepi32_ps(_mm_mullo_epi32(range, _mm_set1_epi32(HSV_MAX_SAT))), f_highest);
+    __m128i sat = round_half_away_sse41(sat_q);
+    sat = _mm_andnot_si128(_mm_cmpeq_epi32(highest, zero), sat);
+
+    __m128i a_is_max = _mm_cmpeq_epi32(a, highest);
+    __m128i b_is_max = _mm_andnot_si128(a_is_max, _mm_cmpeq_epi32(b, highest));
+    __m128i diff = _mm_sub_epi32(a, b);
+    diff = _mm_blendv_epi8(diff, _mm_sub_epi32(c, a), b_is_max);
+    diff = _mm_blendv_epi8(diff, _mm_sub_epi32(b, c), a_is_max);
+    __m128i hue_base = _mm_set1_epi32(HUE_TWO_THIRDS);
+    hue_base = _mm_blendv_epi8(hue_base, _mm_set1_epi32(HUE_ONE_THIRD), b_is_max);
+    hue_base = _mm_blendv_epi8(hue_base, zero, a_is_max);
+
+    __m128 hue_q = _mm_div_ps(
+        _mm_mul_ps(_mm_set1_ps(HUE_ONE_SIXTH), _mm_cvtepi32_ps(diff)), f_range);
+    __m128i hue = _mm_add_epi32(hue_base, round_half_away_sse41(hue_q));
+    __m128i hue_full = _mm_set1_epi32(HUE_FULL);
+    hue = _mm_add_epi32(hue, _mm_and_si128(_mm_cmpgt_epi32(zero, hue), hue_full));
+    hue = _mm_sub_epi32(hue, _mm_and_si128(_mm_cmpgt_epi32(hue, hue_full), hue_full));
+    hue = _mm_andnot_si128(_mm_cmpeq_epi32(hue, hue_full), hue);
+    hue = _mm_andnot_si128(_mm_cmpeq_epi32(sat, zero), hue);
+
+    __m128 v_q = _mm_mul_ps(_mm_div_ps(f_highest, _mm_set1_ps(255.0f)), _mm_set1_ps(HSV_MAX_V));
+
+    *hue_out = hue;
+    *sat_out = sat;
+    *v_out = round_half_away_sse41(v_q);
+}
+
+__attribute__((target("sse4.1")))
+static inline __m128i condensed_hsv_sse41(__m128i px, __m128i shift_2, __m128i shift_3,
+    __m128i mask_1, __m128i mask_2, __m128i mask_3
+) {
+    __m128i hue, sat, v;
+    to_hsv_sse41(px, &hue, &sat, &v);
+    __m128i co1 = _mm_and_si128(hue, mask_1);
+    __m128i co2 = _mm_and_si128(_mm_srl_epi32(sat, shift_2), mask_2);
+    __m128i co3 = _mm_and_si128(_mm_srl_epi32(v, shift_3), mask_3);
+    return _mm_add_epi32(_mm_add_epi32(co1, co2), co3);
+}
+
+__attribute__((target("sse4.1")))
+static inline __m128i grayscale_sse41(__m128i px) {
+    __m128i byte_mask = _mm_set1_epi32(0xFF);
+    __m128i sum = _mm_add_epi32(
+        _mm_add_epi32(_mm_srli_epi32(px, 24), _mm_and_si128(_mm_srli_epi32(px, 16), byte_mask)),
+        _mm_and_si128(_mm_srli_epi32(px, 8), byte_mask));
+    sum = _mm_add_epi32(sum, _mm_set1_epi32(1));
+    return _mm_srli_epi32(_mm_mullo_epi32(sum, _mm_set1_epi32(21846)), 16);
+}
+
+__attribute__((target("sse4.1")))
+static inline void store_bytes16_sse41(uint8_t *out, __m128i d0, __m128i d1, __m128i d2, __m128i d3) {
+    __m128i w01 = _mm_packus_epi32(d0, d1);
+    __m128i w23 = _mm_packus_epi32(d2, d3);
+    _mm_storeu_si128((__m128i *)out, _mm_packus_epi16(w01, w23));
+}
+
+__attribute__((target("sse4.1")))
+static int pic_to_grayscale_sse41(const struct pixel *in, uint8_t *out, int len) {
+    int i = 0;
+    for (; i + 16 <= len; i += 16) {
+        const __m128i *src = (const __m128i *)(in + i);
+        store_bytes16_sse41(out + i,
+            grayscale_sse41(_mm_loadu_si128(src)),
+            grayscale_sse41(_mm_loadu_si128(src + 1)),
+            grayscale_sse41(_mm_loadu_si128(src + 2)),
+            grayscale_sse41(_mm_loadu_si128(src + 3)));
+    }
+    return i;
+}
+
+__attribute__((target("sse4.1")))
+static int condensed_hsv_a_sse41(const struct pixel *in, uint8_t *out, int len, int bits_1, int bits_2, int bits_3) {
+    __m128i shift_2 = _mm_cvtsi32_si128(bits_1);
+    __m128i shift_3 = _mm_cvtsi32_si128(bits_1 + bits_2);
+    __m128i mask_1 = _mm_set1_epi32(((1 << bits_1) - 1) << (8 - bits_1));
+    __m128i mask_2 = _mm_set1_epi32(((1 << bits_2) - 1) << (8 - bits_1 - bits_2));
+    __m128i mask_3 = _mm_set1_epi32((1 << bits_3) - 1);
+
+    int i = 0;
+    for (; i + 16 <= len; i += 16) {
+        const __m128i *src = (const __m128i *)(in + i);
+        store_bytes16_sse41(out + i,
+            condensed_hsv_sse41(_mm_loadu_si128(src), shift_2, shift_3, mask_1, mask_2, mask_3),
+            condensed_hsv_sse41(_mm_loadu_si128(src + 1), shift_2, shift_3, mask_1, mask_2, mask_3),
+            condensed_hsv_sse41(_mm_loadu_si128(src + 2), shift_2, shift_3, mask_1, mask_2, mask_3),
+            condensed_hsv_sse41(_mm_loadu_si128(src + 3), shift_2, shift_3, mask_1, mask_2, mask_3));
+    }
+    return i;
+}
+
+__attribute__((target("sse4.1")))
+static int to_hsv_a_sse41(const struct pixel *in, uint32_t *out, int len) {
+    int i = 0;
+    for (; i + 4 <= len; i += 4) {
+        __m128i hue, sat, v;
+        to_hsv_sse41(_mm_loadu_si128((const __m128i *)(in + i)), &hue, &sat, &v);
+        __m128i packed = _mm_or_si128(
+            _mm_or_si128(_mm_slli_epi32(hue, 24), _mm_slli_epi32(sat, 16)),
+            _mm_or_si128(_mm_slli_epi32(v, 8), _mm_set1_epi32(0xFF)));
+        _mm_storeu_si128((__m128i *)(out + i), packed);
+    }
+    return i;
+}
+
+int simd_pic_to_grayscale(const struct pixel *in, uint8_t *out, int len) {
+    switch (simd_level()) {
+        case SIMD_AVX2:
+            return pic_to_grayscale_avx2(in, out, len);
+        case SIMD_SSE41:
+            return pic_to_grayscale_sse41(in, out, len);
+        default:
+            return 0;
+    }
+}
+
+int simd_condensed_hsv_a(const struct pixel *in, uint8_t *out, int len, int bits_1, int bits_2, int bits_3) {
+    switch (simd_level()) {
+        case SIMD_AVX2:
+            return condensed_hsv_a_avx2(in, out, len, bits_1, bits_2, bits_3);
+        case SIMD_SSE41:
+            return condensed_hsv_a_sse41(in, out, len, bits_1, bits_2, bits_3);
+        default:
+            return 0;
+    }
+}
+
+int simd_to_hsv_a(const struct pixel *in, uint32_t *out, int len) {
+    switch (simd_level()) {
+        case SIMD_AVX2:
+            return to_hsv_a_avx2(in, out, len);
+        case SIMD_SSE41:
+            return to_hsv_a_sse41(in, out, len);
+        default:
+            return 0;
+    }
+}
+
+// exact while win < 2^16: the float quotient of two integers below 2^24
+// can't round across an integer boundary, so truncation equals state / win
+bool simd_bs_calc_sums(const uint8_t *img_channel, int img_width, int img_height, int win, bs_sum_value *sums) {
+    if ((simd_level() != SIMD_AVX2) || (win >= (1 << 16))) {
+        return false;
+    }
+
+    // on the stack for screen sized rows, bs_match_ws expects no allocation
+    int32_t prefix_stack[BS_PREFIX_STACK_LEN];
+    int sums_stride = (img_width - win + 1);
+    int32_t *prefix = (img_width < BS_PREFIX_STACK_LEN) ? prefix_stack : malloc((img_width + 1) * sizeof(int32_t));
+    *prefix = 0;
+
+    for (int y = 0; y < img_height; y++) {
+        const uint8_t *in_row = img_channel + (y * img_width);
+        for (int x = 0; x < img_width; x++) {
+            *(prefix + x + 1) = *(prefix + x) + *(in_row + x);
+        }
+        bs_row_sums_avx2(prefix, sums_stride, win, sums + (y * sums_stride));
+    }
+
+    if (prefix != prefix_stack) {
+        free(prefix);
+    }
+    return true;
+}
+
+#else
+
+enum simd_level simd_level(void) {
+    return SIMD_NONE;
+}
+
+int simd_pic_to_grayscale(const struct pixel *in, uint8_t *out, int len) {
+    return 0;
+}
+
+int simd_condensed_hsv_a(const struct pixel *in, uint8_t *out, int len, int bits_1, int bits_2, int bits_3) {
+    return 0;
+}
+
+int simd_to_hsv_a(const struct pixel *in, uint32_t *out, int len) {
+    return 0;
+}
+
+bool simd_bs_calc_sums(const uint8_t *img_channel, int img_width, int img_height, int win, bs_sum_value *sums) {
+    return false;
+}
+
+#endif
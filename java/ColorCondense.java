@@ -1,11 +1,14 @@
 package com.drscbt.shared.color;
 
+import com.drscbt.shared.piclib.DirectPic;
 import com.drscbt.shared.piclib.Pic8;
 import com.drscbt.shared.piclib.PicData;
 import com.drscbt.shared.piclib.PicGrayscale;
 import com.drscbt.shared.utils.LoadLib;
 import com.drscbt.shared.utils.Utils;
 
+import java.nio.ByteBuffer;
+
 public class ColorCondense {
     static Pic8 condenseJ(PicData picDataRgba, ColorCondense.TruncConfig tc) {
         ColorConv.HsvC255 hsv = new ColorConv.HsvC255();
@@ -36,6 +39,14 @@ public class ColorCondense {
 
     native static void condenseNaCall(int[] rgb, byte[]pic8Out, int bits1, int bits2, int bits3);
 
+    public static Pic8 condenseNa(DirectPic pic, TruncConfig tc) {
+        Pic8 pic8 = new Pic8(new byte[pic.width * pic.height], pic.width, pic.height);
+        condenseDirectNaCall(pic.buf, pic.width * pic.height, pic8.data, tc.bits1, tc.bits2, tc.bits3);
+        return pic8;
+    }
+
+    native static void condenseDirectNaCall(ByteBuffer rgb, int pxCnt, byte[] pic8Out, int bits1, int bits2, int bits3);
+
     static void expand(Pic8 hsv8, ColorCondense.TruncConfig tc, PicData destRgbPicdata) {
         ColorConv.RgbC rgb24;
         ColorConv.HsvC255 hsv24 = new ColorConv.HsvC255();
@@ -1,5 +1,6 @@
 package com.drscbt.shared.color;
 
+import com.drscbt.shared.piclib.DirectPic;
 import com.drscbt.shared.piclib.PicData;
 import com.drscbt.shared.piclib.PicGrayscale;
 import com.drscbt.shared.utils.LoadLib;
@@ -8,6 +9,8 @@ import com.drscbt.shared.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+
 public class ColorConv {
     private static Logger _log = LoggerFactory.getLogger(ColorConv.class);
     static abstract class ThreeCompIntColor {
@@ -246,6 +249,22 @@ public class ColorConv {
         rgb2hsvArrNaCall(rgbIn, hsvOut);
     }
 
+    public static native void grayscaleNaCall(int[] rgba, byte[] gray);
+
+    static public PicGrayscale grayscaleNa(PicData pic) {
+        PicGrayscale g = PicGrayscale.create(pic.width, pic.height);
+        grayscaleNaCall(pic.rgba, g.data);
+        return g;
+    }
+
+    public static native void grayscaleDirectNaCall(ByteBuffer rgba, int pxCnt, byte[] gray);
+
+    static public PicGrayscale grayscaleNa(DirectPic pic) {
+        PicGrayscale g = PicGrayscale.create(pic.width, pic.height);
+        grayscaleDirectNaCall(pic.buf, pic.width * pic.height, g.data);
+        return g;
+    }
+
     static public PicGrayscale grayscale(PicData pic) {
         int[] rgba = pic.rgba;
         PicGrayscale g = PicGrayscale.create(pic.width, pic.height);
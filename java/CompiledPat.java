@@ -0,0 +1,73 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.FramePlanes;
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.utils.LoadLib;
+
+// A pattern's condensed and grayscale planes, hashes and sums, computed once
+// natively for searching it over many frames. The searches run under the
+// pattern's lock, so close() waits for them to return before freeing it.
+public class CompiledPat implements AutoCloseable {
+    private final PicData _pic;
+    private long _handle;
+
+    public CompiledPat(PicData pic) {
+        this._pic = pic;
+        this._handle = compileCall(pic.rgba, pic.width);
+    }
+
+    public PicData getPic() {
+        return this._pic;
+    }
+
+    // same as RK2DCrossNa.match(); IllegalArgumentException when the pattern
+    // doesn't fit pic
+    public synchronized NativePicSearchResults rkMatch(PicData pic) {
+        return rkMatchCall(this._open(), pic.rgba, null, pic.width);
+    }
+
+    // reuses the frame's condensed plane
+    public synchronized NativePicSearchResults rkMatch(FramePlanes planes) {
+        PicData pic = planes.pic();
+        return rkMatchCall(this._open(), pic.rgba, planes.condensed().data, pic.width);
+    }
+
+    // same as TwoDBasicSumCrossNa.match()
+    public synchronized NativePicSearchResults bsMatch(PicData pic, int chanErrToler) {
+        return bsMatchCall(this._open(), pic.rgba, null, pic.width, chanErrToler);
+    }
+
+    // reuses the frame's grayscale plane
+    public synchronized NativePicSearchResults bsMatch(FramePlanes planes, int chanErrToler) {
+        PicData pic = planes.pic();
+        return bsMatchCall(this._open(), pic.rgba, planes.grayscaleNa().data, pic.width, chanErrToler);
+    }
+
+    public synchronized void close() {
+        if (this._handle != 0) {
+            freeCall(this._handle);
+            this._handle = 0;
+        }
+    }
+
+    private long _open() {
+        if (this._handle == 0) {
+            throw new IllegalStateException("compiled pattern is closed");
+        }
+        return this._handle;
+    }
+
+    native static long compileCall(int[] rgba, int width);
+
+    native static void freeCall(long handle);
+
+    // text8/textGs null to compute them from text
+    native static NativePicSearchResults rkMatchCall(long handle, int[] text, byte[] text8, int textW);
+
+    native static NativePicSearchResults bsMatchCall(long handle, int[] text, byte[] textGs, int textW,
+        int chanErrToler);
+
+    static {
+        LoadLib.loadLib();
+    }
+}
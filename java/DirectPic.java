@@ -0,0 +1,64 @@
+package com.drscbt.shared.piclib;
+
+import com.drscbt.shared.utils.LoadLib;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+public class DirectPic {
+    public final ByteBuffer buf;
+    public final int width;
+    public final int height;
+
+    public DirectPic(ByteBuffer buf, int width, int height) {
+        if (!buf.isDirect()) {
+            throw new IllegalArgumentException("DirectPic needs a direct buffer");
+        }
+        if (buf.capacity() < (width * height * 4)) {
+            throw new IllegalArgumentException(String.format(
+                "buffer capacity %d is less than %dx%d pixels", buf.capacity(), width, height));
+        }
+        this.buf = buf.order(ByteOrder.nativeOrder());
+        this.width = width;
+        this.height = height;
+    }
+
+    public static DirectPic create(int width, int height) {
+        return new DirectPic(ByteBuffer.allocateDirect(width * height * 4), width, height);
+    }
+
+    public static DirectPic fromPicData(PicData pic) {
+        DirectPic dp = create(pic.width, pic.height);
+        dp.ints().put(pic.rgba);
+        return dp;
+    }
+
+    // glReadPixels byte order (R, G, B, A) is rearranged in place
+    // into native-order 0xRRGGBBAA ints, the layout PicData.rgba has
+    public static DirectPic wrapGlRgba(ByteBuffer glRgba, int width, int height) {
+        DirectPic dp = new DirectPic(glRgba, width, height);
+        glRgbaToPixelsNaCall(dp.buf, width * height);
+        return dp;
+    }
+
+    public IntBuffer ints() {
+        ByteBuffer whole = this.buf.duplicate().order(ByteOrder.nativeOrder());
+        whole.clear();
+        IntBuffer ib = whole.asIntBuffer();
+        ib.limit(this.width * this.height);
+        return ib;
+    }
+
+    public PicData toPicData() {
+        PicData pic = PicData.create(this.width, this.height);
+        this.ints().get(pic.rgba);
+        return pic;
+    }
+
+    native static void glRgbaToPixelsNaCall(ByteBuffer buf, int pxCnt);
+
+    static {
+        LoadLib.loadLib();
+    }
+}
@@ -0,0 +1,100 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+// in-place radix-2 complex FFT over square power of two sized planes,
+// [y * n + x] layout, separate real and imaginary arrays
+class Fft {
+    private final int _n;
+    private final int _log;
+    private final double[] _cos;
+    private final double[] _sin;
+    private final int[] _rev;
+    private final double[] _colRe;
+    private final double[] _colIm;
+
+    Fft(int n) {
+        if ((n < 2) || (Integer.bitCount(n) != 1)) {
+            throw new IllegalArgumentException(String.format("fft size must be a power of two, got %d", n));
+        }
+        this._n = n;
+        this._log = Integer.numberOfTrailingZeros(n);
+        this._cos = new double[n / 2];
+        this._sin = new double[n / 2];
+        for (int i = 0; i < (n / 2); i++) {
+            this._cos[i] = Math.cos((2 * Math.PI * i) / n);
+            this._sin[i] = Math.sin((2 * Math.PI * i) / n);
+        }
+        this._rev = new int[n];
+        for (int i = 0; i < n; i++) {
+            this._rev[i] = Integer.reverse(i) >>> (32 - this._log);
+        }
+        this._colRe = new double[n];
+        this._colIm = new double[n];
+    }
+
+    int size() {
+        return this._n;
+    }
+
+    void forward2d(double[] re, double[] im) {
+        this._transform2d(re, im, false);
+    }
+
+    // unscaled, the caller divides by n * n
+    void inverse2d(double[] re, double[] im) {
+        this._transform2d(re, im, true);
+    }
+
+    private void _transform2d(double[] re, double[] im, boolean inverse) {
+        int n = this._n;
+        for (int y = 0; y < n; y++) {
+            this._transform(re, im, y * n, inverse);
+        }
+        double[] cRe = this._colRe;
+        double[] cIm = this._colIm;
+        for (int x = 0; x < n; x++) {
+            for (int y = 0; y < n; y++) {
+                cRe[y] = re[(y * n) + x];
+                cIm[y] = im[(y * n) + x];
+            }
+            this._transform(cRe, cIm, 0, inverse);
+            for (int y = 0; y < n; y++) {
+                re[(y * n) + x] = cRe[y];
+                im[(y * n) + x] = cIm[y];
+            }
+        }
+    }
+
+    private void _transform(double[] re, double[] im, int off, boolean inverse) {
+        int n = this._n;
+        for (int i = 0; i < n; i++) {
+            int j = this._rev[i];
+            if (j > i) {
+                double t = re[off + i];
+                re[off + i] = re[off + j];
+                re[off + j] = t;
+                t = im[off + i];
+                im[off + i] = im[off + j];
+                im[off + j] = t;
+            }
+        }
+        double sign = inverse ? 1 : -1;
+        for (int len = 2; len <= n; len <<= 1) {
+            int half = len >> 1;
+            int step = n / len;
+            for (int i = 0; i < n; i += len) {
+                for (int k = 0; k < half; k++) {
+                    double wr = this._cos[k * step];
+                    double wi = sign * this._sin[k * step];
+                    int a = off + i + k;
+                    int b = a + half;
+                    double xr = (re[b] * wr) - (im[b] * wi);
+                    double xi = (re[b] * wi) + (im[b] * wr);
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+}
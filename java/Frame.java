@@ -0,0 +1,15 @@
+package com.drscbt.shared.piclib;
+
+// a captured screen frame; serial identifies its pixels, timestampNs is
+// System.nanoTime() at capture
+public class Frame {
+    public final PicData pic;
+    public final int serial;
+    public final long timestampNs;
+
+    public Frame(PicData pic, int serial, long timestampNs) {
+        this.pic = pic;
+        this.serial = serial;
+        this.timestampNs = timestampNs;
+    }
+}
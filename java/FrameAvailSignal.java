@@ -0,0 +1,36 @@
+package com.drscbt.screencapture;
+
+// Counts frames composed into the capture surface, as reported by
+// SurfaceFrameReader.onFrameAvailable(), so consumers can sleep until the
+// screen changes instead of capturing it over and over.
+public class FrameAvailSignal {
+    static private final FrameAvailSignal instance = new FrameAvailSignal();
+
+    private long _cnt;
+
+    static public FrameAvailSignal getInstance() {
+        return FrameAvailSignal.instance;
+    }
+
+    public synchronized void signal() {
+        this._cnt++;
+        this.notifyAll();
+    }
+
+    public synchronized long count() {
+        return this._cnt;
+    }
+
+    // blocks until count() is past seenCnt, at most timeoutMs; the count
+    public synchronized long await(long seenCnt, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + (timeoutMs * 1000000);
+        while (this._cnt <= seenCnt) {
+            long remainingMs = (deadline - System.nanoTime()) / 1000000;
+            if (remainingMs <= 0) {
+                break;
+            }
+            this.wait(remainingMs);
+        }
+        return this._cnt;
+    }
+}
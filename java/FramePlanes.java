@@ -0,0 +1,73 @@
+package com.drscbt.shared.piclib;
+
+import com.drscbt.shared.color.ColorCondense;
+import com.drscbt.shared.color.ColorConv;
+
+public class FramePlanes {
+    static private FramePlanes current;
+
+    private final PicData _pic;
+    private final int _serial;
+    private PicGrayscale _grayscale;
+    private PicGrayscale _grayscaleNa;
+    private Pic8 _condensed;
+    private int[] _hsv;
+
+    static public synchronized FramePlanes forFrame(PicData pic, int serial) {
+        if ((FramePlanes.current == null)
+            || (FramePlanes.current._serial != serial)
+            || (FramePlanes.current._pic != pic)) {
+            FramePlanes.current = new FramePlanes(pic, serial);
+        }
+        return FramePlanes.current;
+    }
+
+    private FramePlanes(PicData pic, int serial) {
+        this._pic = pic;
+        this._serial = serial;
+    }
+
+    public PicData pic() {
+        return this._pic;
+    }
+
+    public int serial() {
+        return this._serial;
+    }
+
+    // ColorConv.grayscale() semantics (truncating average), as used by OCR
+    public synchronized PicGrayscale grayscale() {
+        if (this._grayscale == null) {
+            this._grayscale = ColorConv.grayscale(this._pic);
+        }
+        return this._grayscale;
+    }
+
+    // grayscale() if some caller already had it converted, null otherwise
+    public synchronized PicGrayscale grayscaleIfConverted() {
+        return this._grayscale;
+    }
+
+    // native pic_to_grayscale() semantics (rounded average), as used by bs_match
+    public synchronized PicGrayscale grayscaleNa() {
+        if (this._grayscaleNa == null) {
+            this._grayscaleNa = ColorConv.grayscaleNa(this._pic);
+        }
+        return this._grayscaleNa;
+    }
+
+    public synchronized Pic8 condensed() {
+        if (this._condensed == null) {
+            this._condensed = ColorCondense.condenseNa(this._pic, ColorCondense.TruncConfig.getDefault());
+        }
+        return this._condensed;
+    }
+
+    public synchronized int[] hsv() {
+        if (this._hsv == null) {
+            this._hsv = new int[this._pic.rgba.length];
+            ColorConv.rgbArrToHsv255Na(this._pic.rgba, this._hsv);
+        }
+        return this._hsv;
+    }
+}
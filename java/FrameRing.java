@@ -0,0 +1,103 @@
+package com.drscbt.screencapture;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Frame buffers shared by one writer and any number of consumers, each
+// holding at most one slot through its own Hold, without locks. The writer
+// never picks the slot of the latest frame nor a held one, so with 2 slots
+// more than there are holders it always has one to read into. Buffers are
+// allocated when a slot is first written.
+class FrameRing {
+    private final ByteBuffer[] _slots;
+    private final AtomicIntegerArray _holds;
+    private final AtomicReference<SurfaceFrame> _latest = new AtomicReference<>();
+    private int _writing = -1;
+    private int _serial;
+
+    // a consumer's hold on the slot of the frame it took last
+    class Hold {
+        private int _slot = -1;
+
+        // the latest frame, kept from the writer until the next take() or
+        // release(); null before the first one
+        SurfaceFrame take() {
+            while (true) {
+                SurfaceFrame latest = FrameRing.this._latest.get();
+                if (latest == null) {
+                    return null;
+                }
+                // the writer skips held slots, the frame in ours is still the one taken
+                if (latest.slot == this._slot) {
+                    return latest;
+                }
+                FrameRing.this._holds.incrementAndGet(latest.slot);
+                // still the latest, the writer picked its slot knowing of it
+                if (FrameRing.this._latest.get() == latest) {
+                    this.release();
+                    this._slot = latest.slot;
+                    return latest;
+                }
+                FrameRing.this._holds.decrementAndGet(latest.slot);
+            }
+        }
+
+        void release() {
+            if (this._slot != -1) {
+                FrameRing.this._holds.decrementAndGet(this._slot);
+                this._slot = -1;
+            }
+        }
+    }
+
+    FrameRing(int slots) {
+        if (slots < 3) {
+            throw new IllegalArgumentException(String.format("at least 3 slots needed, got %d", slots));
+        }
+        this._slots = new ByteBuffer[slots];
+        this._holds = new AtomicIntegerArray(slots);
+    }
+
+    Hold hold() {
+        return new Hold();
+    }
+
+    // writer: a cleared buffer of capacity bytes to read the next frame into;
+    // null when every other slot is held, the frame isn't read then
+    ByteBuffer writeSlot(int capacity) {
+        SurfaceFrame latest = this._latest.get();
+        int latestSlot = (latest == null) ? -1 : latest.slot;
+        for (int slot = 0; slot < this._slots.length; slot++) {
+            if ((slot == latestSlot) || (this._holds.get(slot) != 0)) {
+                continue;
+            }
+            if ((this._slots[slot] == null) || (this._slots[slot].capacity() < capacity)) {
+                this._slots[slot] = ByteBuffer.allocateDirect(capacity);
+            }
+            this._writing = slot;
+            ByteBuffer buf = this._slots[slot];
+            buf.clear();
+            buf.limit(capacity);
+            return buf;
+        }
+        return null;
+    }
+
+    // writer: the buffer of the last writeSlot() holds a complete frame
+    SurfaceFrame publish(long timestampNs, long availCnt) {
+        if (this._writing == -1) {
+            throw new IllegalStateException("writeSlot() first");
+        }
+        ByteBuffer buf = this._slots[this._writing];
+        buf.rewind();
+        SurfaceFrame frame = new SurfaceFrame(buf, ++this._serial, timestampNs, availCnt, this._writing);
+        this._writing = -1;
+        this._latest.set(frame);
+        return frame;
+    }
+
+    SurfaceFrame latest() {
+        return this._latest.get();
+    }
+}
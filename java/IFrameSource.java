@@ -0,0 +1,7 @@
+package com.drscbt.shared.piclib;
+
+public interface IFrameSource {
+    // blocks until a frame other than the one with afterSerial has been
+    // composed, at most timeoutMs; null when none was
+    Frame nextFrame(int afterSerial, long timeoutMs) throws InterruptedException;
+}
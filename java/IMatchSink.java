@@ -0,0 +1,10 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+// Receives the occurrences of a streaming native search
+// (NativeSearch.rkMatchSink(), bsMatchSink()) in column-major order, a chunk
+// at a time. xy is the
+// caller's chunk array, reused between calls: [x0, y0, x1, y1, ...] with
+// count occurrences valid. Returning false stops the search.
+public interface IMatchSink {
+    boolean accept(int[] xy, int count);
+}
@@ -0,0 +1,246 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclib.PicOps;
+import com.drscbt.shared.piclocate.Point;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+// Wraps another matcher for polling loops that search nearly identical
+// frames over and over. Per pattern it keeps 64 bit hashes of the tiles of
+// the frame it was last matched against, and the results. On the next frame
+// only start locations whose window overlaps a changed tile are searched
+// again (each group of changed tiles plus a pattern sized halo, cropped and
+// passed to the inner matcher), the other results are carried over. For
+// matchers deciding every location by the pixels under it (rk, bs and the
+// J ones other than NccFftCrossJ) the results equal a full search, sorted
+// column-major like bs_match's. Falls back to a full search when most of the
+// frame changed or the results reach maxResults.
+public class IncrementalCrossJ implements ITwoDMatcher {
+    static final int DEFAULT_TILE = 64;
+    private static final double FULL_SEARCH_SHARE = 0.5;
+
+    private final ITwoDMatcher _inner;
+    private final int _tile;
+    private final int _maxResults;
+    private final Map<PicData, State> _states = new WeakHashMap<>();
+    private int _falseMatches;
+    private long _searchedArea;
+
+    private static class State {
+        int cw;
+        int ch;
+        long[] tileHashes;
+        List<Point> results;
+    }
+
+    public IncrementalCrossJ(ITwoDMatcher inner) {
+        this(inner, DEFAULT_TILE, RK2DCrossJ.MAX_RESULTS);
+    }
+
+    // maxResults is expected to be the inner matcher's
+    public IncrementalCrossJ(ITwoDMatcher inner, int tile, int maxResults) {
+        if (tile < 1) {
+            throw new IllegalArgumentException(String.format("tile must be positive, got %d", tile));
+        }
+        this._inner = inner;
+        this._tile = tile;
+        this._maxResults = MatcherUtils.chkMaxResults(maxResults);
+    }
+
+    public Set<Point> match(PicData pic, PicData pat) {
+        this._falseMatches = 0;
+        this._searchedArea = 0;
+
+        int cw = pic.width;
+        int ch = pic.height;
+        int pw = pat.width;
+        int ph = pat.height;
+        if ((pw > cw) || (ph > ch)) {
+            return new LinkedHashSet<>();
+        }
+
+        int tilesX = (cw + this._tile - 1) / this._tile;
+        int tilesY = (ch + this._tile - 1) / this._tile;
+        long[] hashes = this._tileHashes(pic, tilesX, tilesY);
+
+        State st = this._states.get(pat);
+        List<Point> results;
+        if ((st == null) || (st.cw != cw) || (st.ch != ch) || (st.results.size() >= this._maxResults)) {
+            results = this._fullSearch(pic, pat);
+        } else {
+            results = this._searchDirty(pic, pat, st, hashes, tilesX, tilesY);
+        }
+
+        if (st == null) {
+            st = new State();
+            this._states.put(pat, st);
+        }
+        st.cw = cw;
+        st.ch = ch;
+        st.tileHashes = hashes;
+        st.results = results;
+        return new LinkedHashSet<>(results);
+    }
+
+    public int getFalseMatchesCount() {
+        return this._falseMatches;
+    }
+
+    // canvas pixels passed to the inner matcher by the last match(), 0 for an unchanged frame
+    public long getSearchedArea() {
+        return this._searchedArea;
+    }
+
+    private List<Point> _searchDirty(PicData pic, PicData pat, State st, long[] hashes, int tilesX, int tilesY) {
+        int cw = pic.width;
+        int ch = pic.height;
+        int pw = pat.width;
+        int ph = pat.height;
+        int maxSx = cw - pw;
+        int maxSy = ch - ph;
+
+        boolean[] dirty = new boolean[hashes.length];
+        boolean any = false;
+        for (int i = 0; i < hashes.length; i++) {
+            dirty[i] = hashes[i] != st.tileHashes[i];
+            any |= dirty[i];
+        }
+        if (!any) {
+            return st.results;
+        }
+
+        // start location ranges [x0, x1] x [y0, y1] to search, one per
+        // 4-connected group of changed tiles
+        List<int[]> ranges = new ArrayList<>();
+        long area = 0;
+        int[] queue = new int[hashes.length];
+        for (int i = 0; i < dirty.length; i++) {
+            if (!dirty[i]) {
+                continue;
+            }
+            int tx0 = Integer.MAX_VALUE;
+            int ty0 = Integer.MAX_VALUE;
+            int tx1 = -1;
+            int ty1 = -1;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = i;
+            dirty[i] = false;
+            while (head < tail) {
+                int t = queue[head++];
+                int tx = t % tilesX;
+                int ty = t / tilesX;
+                tx0 = Math.min(tx0, tx);
+                ty0 = Math.min(ty0, ty);
+                tx1 = Math.max(tx1, tx);
+                ty1 = Math.max(ty1, ty);
+                int[] nbs = new int[]{
+                    (tx > 0) ? (t - 1) : -1,
+                    (tx < (tilesX - 1)) ? (t + 1) : -1,
+                    (ty > 0) ? (t - tilesX) : -1,
+                    (ty < (tilesY - 1)) ? (t + tilesX) : -1
+                };
+                for (int nb : nbs) {
+                    if ((nb >= 0) && dirty[nb]) {
+                        dirty[nb] = false;
+                        queue[tail++] = nb;
+                    }
+                }
+            }
+
+            int[] r = new int[]{
+                Math.max(0, (tx0 * this._tile) - pw + 1),
+                Math.max(0, (ty0 * this._tile) - ph + 1),
+                Math.min(maxSx, Math.min(cw, (tx1 + 1) * this._tile) - 1),
+                Math.min(maxSy, Math.min(ch, (ty1 + 1) * this._tile) - 1)
+            };
+            ranges.add(r);
+            area += (long) ((r[2] - r[0]) + pw) * ((r[3] - r[1]) + ph);
+        }
+        if (area > (FULL_SEARCH_SHARE * cw * ch)) {
+            return this._fullSearch(pic, pat);
+        }
+
+        Set<Point> merged = new LinkedHashSet<>();
+        for (Point p : st.results) {
+            if (!_inRanges(ranges, p.x, p.y)) {
+                merged.add(p);
+            }
+        }
+        for (int[] r : ranges) {
+            PicData crop = PicData.create((r[2] - r[0]) + pw, (r[3] - r[1]) + ph);
+            PicOps.copy(pic, crop, r[0], r[1]);
+            this._searchedArea += (long) crop.width * crop.height;
+            Set<Point> found = this._inner.match(crop, pat);
+            this._falseMatches += this._inner.getFalseMatchesCount();
+            for (Point p : found) {
+                merged.add(new Point(p.x + r[0], p.y + r[1]));
+            }
+            if ((found.size() >= this._maxResults) || (merged.size() >= this._maxResults)) {
+                // the inner matcher may have stopped early, carried over results can't be trusted
+                return this._fullSearch(pic, pat);
+            }
+        }
+
+        List<Point> results = new ArrayList<>(merged);
+        _sortColumnMajor(results);
+        return results;
+    }
+
+    private List<Point> _fullSearch(PicData pic, PicData pat) {
+        this._searchedArea = (long) pic.width * pic.height;
+        Set<Point> found = this._inner.match(pic, pat);
+        this._falseMatches = this._inner.getFalseMatchesCount();
+        List<Point> results = new ArrayList<>(found);
+        _sortColumnMajor(results);
+        return results;
+    }
+
+    // FNV-1a over the pixels of each tile, walking the frame row by row
+    private long[] _tileHashes(PicData pic, int tilesX, int tilesY) {
+        long[] hashes = new long[tilesX * tilesY];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = 0xCBF29CE484222325L;
+        }
+        int w = pic.width;
+        int[] px = pic.rgba;
+        for (int y = 0; y < pic.height; y++) {
+            int tOff = (y / this._tile) * tilesX;
+            int rowOff = y * w;
+            for (int tx = 0; tx < tilesX; tx++) {
+                long h = hashes[tOff + tx];
+                int xEnd = Math.min(w, (tx + 1) * this._tile);
+                for (int x = tx * this._tile; x < xEnd; x++) {
+                    h = (h ^ px[rowOff + x]) * 0x100000001B3L;
+                }
+                hashes[tOff + tx] = h;
+            }
+        }
+        return hashes;
+    }
+
+    private static boolean _inRanges(List<int[]> ranges, int x, int y) {
+        for (int[] r : ranges) {
+            if ((x >= r[0]) && (x <= r[2]) && (y >= r[1]) && (y <= r[3])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void _sortColumnMajor(List<Point> points) {
+        Collections.sort(points, (p1, p2) -> (p1.x != p2.x) ? Integer.compare(p1.x, p2.x) : Integer.compare(p1.y, p2.y));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IncrementalCrossJ(%s)", this._inner);
+    }
+}
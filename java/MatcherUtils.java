@@ -0,0 +1,119 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.PicData;
+
+// Pixel helpers shared by the Java matchers, kept to the native search's
+// semantics so their results can be compared with TwoDBasicSumCrossNa's.
+final class MatcherUtils {
+    private MatcherUtils() {
+    }
+
+    static int chkMaxResults(int maxResults) {
+        if (maxResults < 1) {
+            throw new IllegalArgumentException(String.format("maxResults must be positive, got %d", maxResults));
+        }
+        return maxResults;
+    }
+
+    // same rounding as native desaturate(): round(sum / 3.0) == (sum + 1) / 3;
+    // ColorConv.grayscale() truncates instead, as OCR expects
+    static int gray(int rgba) {
+        return (((rgba >>> 8) & 0xFF) + ((rgba >>> 16) & 0xFF) + (rgba >>> 24) + 1) / 3;
+    }
+
+    // pattern pixels with alpha other than PicData.A_OPAQUE are don't-care, as
+    // in native pat_mask, for patterns with both kinds only. The prefilters
+    // cover the anchor, the largest opaque rectangle, which is the whole
+    // pattern when it isn't masked
+    static final class Anchor {
+        final boolean masked;
+        final int x;
+        final int y;
+        final int w;
+        final int h;
+
+        Anchor(boolean masked, int x, int y, int w, int h) {
+            this.masked = masked;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+        }
+    }
+
+    static boolean opaque(int rgba) {
+        return (rgba & 0xFF) == PicData.A_OPAQUE;
+    }
+
+    static boolean masked(PicData pat) {
+        int opaqueCnt = 0;
+        for (int p : pat.rgba) {
+            if (opaque(p)) {
+                opaqueCnt++;
+            }
+        }
+        return (opaqueCnt != 0) && (opaqueCnt != pat.rgba.length);
+    }
+
+    static Anchor anchor(PicData pat) {
+        if (!masked(pat)) {
+            return new Anchor(false, 0, 0, pat.width, pat.height);
+        }
+
+        // largest rectangle in the histogram of opaque run heights per row,
+        // same pick as pat_mask_anchor_rect()
+        int w = pat.width;
+        int[] heights = new int[w];
+        int[] stack = new int[w + 1];
+        int best = 0;
+        int ax = 0;
+        int ay = 0;
+        int aw = 0;
+        int ah = 0;
+        for (int y = 0; y < pat.height; y++) {
+            for (int x = 0; x < w; x++) {
+                heights[x] = opaque(pat.rgba[(y * w) + x]) ? (heights[x] + 1) : 0;
+            }
+            int top = 0;
+            for (int x = 0; x <= w; x++) {
+                int h = (x < w) ? heights[x] : 0;
+                while ((top > 0) && (heights[stack[top - 1]] >= h)) {
+                    int rectH = heights[stack[--top]];
+                    int left = (top > 0) ? (stack[top - 1] + 1) : 0;
+                    int area = rectH * (x - left);
+                    if (area > best) {
+                        best = area;
+                        ax = left;
+                        ay = y - rectH + 1;
+                        aw = x - left;
+                        ah = rectH;
+                    }
+                }
+                stack[top++] = x;
+            }
+        }
+        return new Anchor(true, ax, ay, aw, ah);
+    }
+
+    // pat at (sx, sy) of canv, every channel of every pixel within toler, as
+    // native val_eq_err(); the transparent pixels of a masked pat are skipped
+    static boolean confirm(int[] canv, int cw, int[] pat, int pw, int ph, int sx, int sy, int toler, boolean masked) {
+        for (int y = 0; y < ph; y++) {
+            int cOff = ((sy + y) * cw) + sx;
+            int pOff = y * pw;
+            for (int x = 0; x < pw; x++) {
+                int c = canv[cOff + x];
+                int p = pat[pOff + x];
+                if ((c != p)
+                    && (!masked || opaque(p))
+                    && ((Math.abs((c >>> 24) - (p >>> 24)) > toler)
+                        || (Math.abs(((c >>> 16) & 0xFF) - ((p >>> 16) & 0xFF)) > toler)
+                        || (Math.abs(((c >>> 8) & 0xFF) - ((p >>> 8) & 0xFF)) > toler))
+                ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
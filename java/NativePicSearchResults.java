@@ -0,0 +1,79 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclocate.Point;
+
+import java.util.AbstractSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+// Filled in natively, see j_matchresults_from_struct() in drscbtjni.c.
+public class NativePicSearchResults {
+    public int collisionsCnt;
+    // the Points are made on first use of the set, not natively
+    public Set<Point> matches;
+    // canvas pixels compared while confirming hash hits, true or false ones
+    public long confirmPxCnt;
+    // per search phase, laid out as read by SearchPhaseStats; null unless
+    // SearchPhaseStats is enabled
+    public long[] phaseStats;
+
+    public NativePicSearchResults() {
+    }
+
+    // xy [x0, y0, x1, y1, ...], one entry per location
+    NativePicSearchResults(int collisionsCnt, long confirmPxCnt, int[] xy) {
+        this.collisionsCnt = collisionsCnt;
+        this.confirmPxCnt = confirmPxCnt;
+        this.matches = new PackedPoints(xy);
+    }
+
+    // a HashSet of the packed locations, built when first needed beyond
+    // size(); modifiable like one
+    static class PackedPoints extends AbstractSet<Point> {
+        private final int[] _xy;
+        private Set<Point> _set;
+
+        PackedPoints(int[] xy) {
+            if ((xy.length % 2) != 0) {
+                throw new IllegalArgumentException(String.format("odd packed locations length %d", xy.length));
+            }
+            this._xy = xy;
+        }
+
+        public int size() {
+            return (this._set == null) ? (this._xy.length / 2) : this._set.size();
+        }
+
+        public boolean contains(Object o) {
+            return this._built().contains(o);
+        }
+
+        public boolean add(Point p) {
+            return this._built().add(p);
+        }
+
+        public boolean remove(Object o) {
+            return this._built().remove(o);
+        }
+
+        public Iterator<Point> iterator() {
+            return this._built().iterator();
+        }
+
+        boolean isBuilt() {
+            return this._set != null;
+        }
+
+        private Set<Point> _built() {
+            if (this._set == null) {
+                Set<Point> set = new HashSet<>(((this._xy.length * 2) / 3) + 1);
+                for (int i = 0; i < this._xy.length; i += 2) {
+                    set.add(new Point(this._xy[i], this._xy[i + 1]));
+                }
+                this._set = set;
+            }
+            return this._set;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.DirectPic;
+import com.drscbt.shared.piclib.FramePlanes;
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclocate.MaskConf;
+import com.drscbt.shared.piclocate.Point;
+import com.drscbt.shared.utils.LoadLib;
+
+import java.nio.ByteBuffer;
+
+// Native searches with no matcher state of their own, next to the
+// ITwoDMatcher implementations.
+public class NativeSearch {
+    private NativeSearch() {
+    }
+
+    // results[i] same as a RK2DCrossNa search of pats[i] alone; patterns of
+    // equal width share the canvas' horizontal hash pass
+    public static NativePicSearchResults[] rkMatchMany(PicData pic, PicData[] pats) {
+        int[][] patPxs = new int[pats.length][];
+        int[] patWs = new int[pats.length];
+        for (int i = 0; i < pats.length; i++) {
+            patPxs[i] = pats[i].rgba;
+            patWs[i] = pats[i].width;
+        }
+        return rkMatchManyCall(pic.rgba, patPxs, pic.width, patWs);
+    }
+
+    // The first limit occurrences in scan order, by x then y; the scan stops
+    // there, with any number of threads. collisionsCnt counts the hash hits
+    // rejected up to that point.
+    public static NativePicSearchResults rkMatchLimit(PicData pic, PicData pat, int limit) {
+        return rkMatchLimitCall(pic.rgba, pat.rgba, pic.width, pat.width, _chkLimit(limit));
+    }
+
+    public static NativePicSearchResults bsMatchLimit(PicData pic, PicData pat, int chanErrToler, int limit) {
+        return bsMatchLimitCall(pic.rgba, pat.rgba, pic.width, pat.width, chanErrToler, _chkLimit(limit));
+    }
+
+    // the first occurrence in scan order, null when there is none
+    public static Point rkMatchFirst(PicData pic, PicData pat) {
+        return rkMatchFirstCall(pic.rgba, pat.rgba, pic.width, pat.width);
+    }
+
+    public static Point bsMatchFirst(PicData pic, PicData pat, int chanErrToler) {
+        return bsMatchFirstCall(pic.rgba, pat.rgba, pic.width, pat.width, chanErrToler);
+    }
+
+    public static boolean rkMatchExists(PicData pic, PicData pat) {
+        return rkMatchExistsCall(pic.rgba, pat.rgba, pic.width, pat.width);
+    }
+
+    public static boolean bsMatchExists(PicData pic, PicData pat, int chanErrToler) {
+        return bsMatchExistsCall(pic.rgba, pat.rgba, pic.width, pat.width, chanErrToler);
+    }
+
+    // RK2DCrossNa.match() results as one int[], no Point or set built
+    // natively
+    public static PackedMatches rkMatchPacked(PicData pic, PicData pat) {
+        return new PackedMatches(rkMatchPackedCall(pic.rgba, pat.rgba, pic.width, pat.width, 0));
+    }
+
+    public static PackedMatches rkMatchPacked(PicData pic, PicData pat, int limit) {
+        return new PackedMatches(rkMatchPackedCall(pic.rgba, pat.rgba, pic.width, pat.width, _chkLimit(limit)));
+    }
+
+    public static PackedMatches bsMatchPacked(PicData pic, PicData pat, int chanErrToler) {
+        return new PackedMatches(bsMatchPackedCall(pic.rgba, pat.rgba, pic.width, pat.width, chanErrToler, 0));
+    }
+
+    public static PackedMatches bsMatchPacked(PicData pic, PicData pat, int chanErrToler, int limit) {
+        return new PackedMatches(bsMatchPackedCall(pic.rgba, pat.rgba, pic.width, pat.width, chanErrToler,
+            _chkLimit(limit)));
+    }
+
+    // Every occurrence in scan order, none dropped at the matchers' cap,
+    // handed to sink in chunk; chunk.length / 2 occurrences at most per
+    // accept(). Returns the collisions count.
+    public static int rkMatchSink(PicData pic, PicData pat, int[] chunk, IMatchSink sink) {
+        return rkMatchSinkCall(pic.rgba, pat.rgba, pic.width, pat.width, 0, chunk, sink);
+    }
+
+    public static int rkMatchSink(PicData pic, PicData pat, int limit, int[] chunk, IMatchSink sink) {
+        return rkMatchSinkCall(pic.rgba, pat.rgba, pic.width, pat.width, _chkLimit(limit), chunk, sink);
+    }
+
+    public static int bsMatchSink(PicData pic, PicData pat, int chanErrToler, int[] chunk, IMatchSink sink) {
+        return bsMatchSinkCall(pic.rgba, pat.rgba, pic.width, pat.width, chanErrToler, 0, chunk, sink);
+    }
+
+    public static int bsMatchSink(PicData pic, PicData pat, int chanErrToler, int limit, int[] chunk,
+        IMatchSink sink
+    ) {
+        return bsMatchSinkCall(pic.rgba, pat.rgba, pic.width, pat.width, chanErrToler, _chkLimit(limit), chunk,
+            sink);
+    }
+
+    // RK2DCrossNa search of the roi rectangle of pic, without copying it out;
+    // locations in pic's coordinates
+    public static NativePicSearchResults rkMatchRoi(PicData pic, PicData pat, MaskConf roi) {
+        return rkMatchRoiCall(pic.rgba, pat.rgba, pic.width, pat.width, roi.fromX, roi.fromY, roi.width, roi.height);
+    }
+
+    public static NativePicSearchResults bsMatchRoi(PicData pic, PicData pat, MaskConf roi, int chanErrToler) {
+        return bsMatchRoiCall(pic.rgba, pat.rgba, pic.width, pat.width, roi.fromX, roi.fromY, roi.width, roi.height,
+            chanErrToler);
+    }
+
+    // RK2DCrossNa search of a frame still in its direct buffer, no int[] copy
+    // of it made
+    public static NativePicSearchResults rkMatchDirect(DirectPic pic, PicData pat) {
+        return rkMatchDirectCall(pic.buf, pat.rgba, pic.width, pic.height, pat.width);
+    }
+
+    public static NativePicSearchResults bsMatchDirect(DirectPic pic, PicData pat, int chanErrToler) {
+        return bsMatchDirectCall(pic.buf, pat.rgba, pic.width, pic.height, pat.width, chanErrToler);
+    }
+
+    // RK2DCrossNa search of planes.pic() hashing the frame's condensed()
+    // plane, converted once for any number of patterns
+    public static NativePicSearchResults rkMatch(FramePlanes planes, PicData pat) {
+        PicData pic = planes.pic();
+        return rkMatchC8Call(pic.rgba, planes.condensed().data, pat.rgba, pic.width, pat.width);
+    }
+
+    // TwoDBasicSumCrossNa search of planes.pic() summing the frame's
+    // grayscaleNa() plane
+    public static NativePicSearchResults bsMatch(FramePlanes planes, PicData pat, int chanErrToler) {
+        PicData pic = planes.pic();
+        return bsMatchGsCall(pic.rgba, planes.grayscaleNa().data, pat.rgba, pic.width, pat.width, chanErrToler);
+    }
+
+    // threads the RK and basic sum scans split the canvas' columns over, for
+    // all searches; 1, the default, scans on the calling thread only
+    public static void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format("threads must be positive, got %d", threads));
+        }
+        setThreadsCall(threads);
+    }
+
+    public static int getThreads() {
+        return getThreadsCall();
+    }
+
+    private static int _chkLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException(String.format("match limit must be positive, got %d", limit));
+        }
+        return limit;
+    }
+
+    native static NativePicSearchResults[] rkMatchManyCall(int[] text, int[][] pats, int textW, int[] patWs);
+
+    native static NativePicSearchResults rkMatchLimitCall(int[] text, int[] pat, int textW, int patW, int limit);
+
+    native static NativePicSearchResults bsMatchLimitCall(int[] text, int[] pat, int textW, int patW,
+        int chanErrToler, int limit);
+
+    native static Point rkMatchFirstCall(int[] text, int[] pat, int textW, int patW);
+
+    native static Point bsMatchFirstCall(int[] text, int[] pat, int textW, int patW, int chanErrToler);
+
+    native static boolean rkMatchExistsCall(int[] text, int[] pat, int textW, int patW);
+
+    native static boolean bsMatchExistsCall(int[] text, int[] pat, int textW, int patW, int chanErrToler);
+
+    // limit 0 for up to the native SEARCH_MAX_RESULTS
+    native static int[] rkMatchPackedCall(int[] text, int[] pat, int textW, int patW, int limit);
+
+    native static int[] bsMatchPackedCall(int[] text, int[] pat, int textW, int patW, int chanErrToler, int limit);
+
+    // limit 0 for no limit
+    native static int rkMatchSinkCall(int[] text, int[] pat, int textW, int patW, int limit, int[] chunk,
+        IMatchSink sink);
+
+    native static int bsMatchSinkCall(int[] text, int[] pat, int textW, int patW, int chanErrToler, int limit,
+        int[] chunk, IMatchSink sink);
+
+    native static NativePicSearchResults rkMatchRoiCall(int[] text, int[] pat, int textStride, int patW,
+        int roiX, int roiY, int roiW, int roiH);
+
+    native static NativePicSearchResults bsMatchRoiCall(int[] text, int[] pat, int textStride, int patW,
+        int roiX, int roiY, int roiW, int roiH, int chanErrToler);
+
+    native static NativePicSearchResults rkMatchDirectCall(ByteBuffer text, int[] pat, int textW, int textH,
+        int patW);
+
+    native static NativePicSearchResults bsMatchDirectCall(ByteBuffer text, int[] pat, int textW, int textH,
+        int patW, int chanErrToler);
+
+    // text8/textGs one byte per pixel of text
+    native static NativePicSearchResults rkMatchC8Call(int[] text, byte[] text8, int[] pat, int textW, int patW);
+
+    native static NativePicSearchResults bsMatchGsCall(int[] text, byte[] textGs, int[] pat, int textW, int patW,
+        int chanErrToler);
+
+    native static void setThreadsCall(int threads);
+
+    native static int getThreadsCall();
+
+    static {
+        LoadLib.loadLib();
+    }
+}
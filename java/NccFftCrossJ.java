@@ -0,0 +1,256 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclocate.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Normalized cross-correlation of the grayscale planes, tolerant to the
+// brightness/contrast drift of real captures. The correlation for all
+// offsets comes from FFTs of overlapping canvas tiles (overlap-save), two
+// tiles per complex transform, so the cost per frame barely depends on the
+// pattern size; below roughly 64x64 the direct matchers are cheaper.
+// Window variances come from integral images. Locations scoring at least
+// the threshold are reported best first, the ones closer than half a
+// pattern to a better one are suppressed.
+public class NccFftCrossJ implements ITwoDMatcher {
+    private static final double FLAT_EPS = 1e-6;
+    private static final int MIN_TILE = 64;
+
+    private final double _threshold;
+    private final int _maxResults;
+
+    public NccFftCrossJ(double threshold) {
+        this(threshold, RK2DCrossJ.MAX_RESULTS);
+    }
+
+    public NccFftCrossJ(double threshold, int maxResults) {
+        if ((threshold <= -1) || (threshold > 1)) {
+            throw new IllegalArgumentException(String.format("threshold must be in (-1, 1], got %f", threshold));
+        }
+        this._threshold = threshold;
+        this._maxResults = MatcherUtils.chkMaxResults(maxResults);
+    }
+
+    public static class Match {
+        public final int x;
+        public final int y;
+        public final double score;
+
+        Match(int x, int y, double score) {
+            this.x = x;
+            this.y = y;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("(%d,%d %.4f)", this.x, this.y, this.score);
+        }
+    }
+
+    public Set<Point> match(PicData pic, PicData pat) {
+        Set<Point> matches = new LinkedHashSet<>();
+        for (Match m : this.matchScored(pic, pat)) {
+            matches.add(new Point(m.x, m.y));
+        }
+        return matches;
+    }
+
+    // no hash or sum prefilter, nothing to collide
+    public int getFalseMatchesCount() {
+        return 0;
+    }
+
+    // best first; empty for a flat pattern, its correlation is undefined
+    public List<Match> matchScored(PicData pic, PicData pat) {
+        int cw = pic.width;
+        int ch = pic.height;
+        int pw = pat.width;
+        int ph = pat.height;
+        if ((pw > cw) || (ph > ch)) {
+            return new ArrayList<>();
+        }
+
+        int n = pw * ph;
+        double[] patZm = new double[n];
+        double patMean = 0;
+        for (int i = 0; i < n; i++) {
+            patZm[i] = MatcherUtils.gray(pat.rgba[i]);
+            patMean += patZm[i];
+        }
+        patMean /= n;
+        double patEnergy = 0;
+        for (int i = 0; i < n; i++) {
+            patZm[i] -= patMean;
+            patEnergy += patZm[i] * patZm[i];
+        }
+        if (patEnergy < FLAT_EPS) {
+            return new ArrayList<>();
+        }
+
+        int[] gray = new int[cw * ch];
+        for (int i = 0; i < gray.length; i++) {
+            gray[i] = MatcherUtils.gray(pic.rgba[i]);
+        }
+        int satW = cw + 1;
+        long[] sat = new long[satW * (ch + 1)];
+        long[] sqSat = new long[satW * (ch + 1)];
+        for (int y = 0; y < ch; y++) {
+            long rowAcc = 0;
+            long sqRowAcc = 0;
+            for (int x = 0; x < cw; x++) {
+                int g = gray[(y * cw) + x];
+                rowAcc += g;
+                sqRowAcc += g * g;
+                sat[((y + 1) * satW) + x + 1] = sat[(y * satW) + x + 1] + rowAcc;
+                sqSat[((y + 1) * satW) + x + 1] = sqSat[(y * satW) + x + 1] + sqRowAcc;
+            }
+        }
+
+        int maxSx = cw - pw;
+        int maxSy = ch - ph;
+        Fft fft = new Fft(_tileSize(pw, ph, maxSx + 1, maxSy + 1));
+        int tn = fft.size();
+        int stepX = tn - pw + 1;
+        int stepY = tn - ph + 1;
+
+        double[] patRe = new double[tn * tn];
+        double[] patIm = new double[tn * tn];
+        for (int y = 0; y < ph; y++) {
+            System.arraycopy(patZm, y * pw, patRe, y * tn, pw);
+        }
+        fft.forward2d(patRe, patIm);
+
+        List<int[]> origins = new ArrayList<>();
+        for (int oy = 0; oy <= maxSy; oy += stepY) {
+            for (int ox = 0; ox <= maxSx; ox += stepX) {
+                origins.add(new int[]{ox, oy});
+            }
+        }
+
+        List<Match> cands = new ArrayList<>();
+        double[] re = new double[tn * tn];
+        double[] im = new double[tn * tn];
+        double scale = 1.0 / ((double) tn * tn);
+        for (int t = 0; t < origins.size(); t += 2) {
+            int[] a = origins.get(t);
+            int[] b = ((t + 1) < origins.size()) ? origins.get(t + 1) : null;
+            _loadTile(gray, cw, ch, a[0], a[1], tn, re);
+            if (b != null) {
+                _loadTile(gray, cw, ch, b[0], b[1], tn, im);
+            } else {
+                Arrays.fill(im, 0);
+            }
+
+            // the pattern is real, so conj(P) keeps the two tiles' correlations
+            // apart in the real and imaginary parts
+            fft.forward2d(re, im);
+            for (int i = 0; i < (tn * tn); i++) {
+                double r = (re[i] * patRe[i]) + (im[i] * patIm[i]);
+                double m = (im[i] * patRe[i]) - (re[i] * patIm[i]);
+                re[i] = r;
+                im[i] = m;
+            }
+            fft.inverse2d(re, im);
+
+            this._collect(re, scale, a[0], a[1], tn, stepX, stepY, maxSx, maxSy,
+                sat, sqSat, satW, pw, ph, patEnergy, cands);
+            if (b != null) {
+                this._collect(im, scale, b[0], b[1], tn, stepX, stepY, maxSx, maxSy,
+                    sat, sqSat, satW, pw, ph, patEnergy, cands);
+            }
+        }
+
+        return this._suppress(cands, Math.max(1, pw / 2), Math.max(1, ph / 2));
+    }
+
+    private void _collect(
+        double[] corr, double scale, int ox, int oy, int tn, int stepX, int stepY,
+        int maxSx, int maxSy, long[] sat, long[] sqSat, int satW,
+        int pw, int ph, double patEnergy, List<Match> cands
+    ) {
+        int n = pw * ph;
+        int yEnd = Math.min(stepY, (maxSy - oy) + 1);
+        int xEnd = Math.min(stepX, (maxSx - ox) + 1);
+        for (int y = 0; y < yEnd; y++) {
+            int sy = oy + y;
+            int top = sy * satW;
+            int bottom = (sy + ph) * satW;
+            for (int x = 0; x < xEnd; x++) {
+                int sx = ox + x;
+                long s = sat[bottom + sx + pw] - sat[top + sx + pw] - sat[bottom + sx] + sat[top + sx];
+                long sq = sqSat[bottom + sx + pw] - sqSat[top + sx + pw] - sqSat[bottom + sx] + sqSat[top + sx];
+                double var = sq - (((double) s * s) / n);
+                if (var < FLAT_EPS) {
+                    continue;
+                }
+                double score = (corr[(y * tn) + x] * scale) / Math.sqrt(var * patEnergy);
+                if (score >= this._threshold) {
+                    cands.add(new Match(sx, sy, score));
+                }
+            }
+        }
+    }
+
+    private List<Match> _suppress(List<Match> cands, int rx, int ry) {
+        Collections.sort(cands, (m1, m2) -> Double.compare(m2.score, m1.score));
+        List<Match> kept = new ArrayList<>();
+        nextCand:
+        for (Match c : cands) {
+            for (Match k : kept) {
+                if ((Math.abs(k.x - c.x) < rx) && (Math.abs(k.y - c.y) < ry)) {
+                    continue nextCand;
+                }
+            }
+            kept.add(c);
+            if (kept.size() == this._maxResults) {
+                break;
+            }
+        }
+        return kept;
+    }
+
+    // smallest total work over the power of two sizes that fit the pattern twice
+    private static int _tileSize(int pw, int ph, int locsX, int locsY) {
+        int min = Math.max(MIN_TILE, Integer.highestOneBit((Math.max(pw, ph) * 2) - 1) << 1);
+        int best = min;
+        double bestCost = Double.MAX_VALUE;
+        for (int tn = min; tn <= (min * 8); tn <<= 1) {
+            long tiles = (long) _ceilDiv(locsX, tn - pw + 1) * _ceilDiv(locsY, tn - ph + 1);
+            double cost = ((tiles + 1) / 2) * (double) tn * tn * Integer.numberOfTrailingZeros(tn);
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = tn;
+            }
+        }
+        return best;
+    }
+
+    private static int _ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    private static void _loadTile(int[] gray, int cw, int ch, int ox, int oy, int tn, double[] out) {
+        Arrays.fill(out, 0);
+        int w = Math.min(tn, cw - ox);
+        int h = Math.min(tn, ch - oy);
+        for (int y = 0; y < h; y++) {
+            int gOff = ((oy + y) * cw) + ox;
+            int tOff = y * tn;
+            for (int x = 0; x < w; x++) {
+                out[tOff + x] = gray[gOff + x];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NccFftCrossJ(%.2f)", this._threshold);
+    }
+}
@@ -0,0 +1,51 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclocate.Point;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class PackedMatches {
+    private final int[] _packed;
+    private Set<Point> _matches;
+
+    // packed layout as produced natively: [collisions, x0, y0, x1, y1, ...]
+    public PackedMatches(int[] packed) {
+        if ((packed.length == 0) || ((packed.length % 2) != 1)) {
+            throw new IllegalArgumentException(String.format("malformed packed matches of length %d", packed.length));
+        }
+        this._packed = packed;
+    }
+
+    public int collisionsCnt() {
+        return this._packed[0];
+    }
+
+    public int count() {
+        return (this._packed.length - 1) / 2;
+    }
+
+    public boolean isEmpty() {
+        return this.count() == 0;
+    }
+
+    public int x(int i) {
+        return this._packed[1 + (i * 2)];
+    }
+
+    public int y(int i) {
+        return this._packed[2 + (i * 2)];
+    }
+
+    public synchronized Set<Point> matches() {
+        if (this._matches == null) {
+            Set<Point> set = new HashSet<>(((this.count() * 4) / 3) + 1);
+            for (int i = 0; i < this.count(); i++) {
+                set.add(new Point(this.x(i), this.y(i)));
+            }
+            this._matches = Collections.unmodifiableSet(set);
+        }
+        return this._matches;
+    }
+}
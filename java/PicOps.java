@@ -41,22 +41,60 @@ public class PicOps {
         return dst;
     }
 
+    public static void copy(PicGrayscale src, PicGrayscale dst, int srcFromX, int srcFromY) {
+        for (int y = 0; y < dst.height; y++) {
+            int srcOff = (y + srcFromY) * src.width + srcFromX;
+            int dstOff = y * dst.width;
+            System.arraycopy(src.data, srcOff, dst.data, dstOff, dst.width);
+        }
+    }
+
     public static void replace(PicData p,
         int hFrom, int hTo,
         int sFrom, int sTo,
         int vFrom, int vTo, int replWithRgba
+    ) {
+        int[] hsv = new int[p.rgba.length];
+        ColorConv.rgbArrToHsv255Na(p.rgba, hsv);
+        replace(p, hsv, hFrom, hTo, sFrom, sTo, vFrom, vTo, replWithRgba);
+    }
+
+    public static void replace(PicData p, int[] hsv,
+        int hFrom, int hTo,
+        int sFrom, int sTo,
+        int vFrom, int vTo, int replWithRgba
     ) {
         int[] rgba = p.rgba;
-        ColorConv.RgbC rgb = new ColorConv.RgbC();
-        ColorConv.HsvC255 hsv = new ColorConv.HsvC255();
         for (int i = 0; i < rgba.length; i++) {
-            rgb.setFromInt(rgba[i]);
-            ColorConv.rgbPxToHsv255Na(rgb, hsv);
-            if ((hsv.c1 >= hFrom) && (hsv.c1 <= hTo)
-                && (hsv.c2 >= sFrom) && (hsv.c2 <= sTo)
-                && (hsv.c3 >= vFrom) && (hsv.c3 <= vTo)) {
+            int h = (hsv[i] >> 24) & 0xFF;
+            int s = (hsv[i] >> 16) & 0xFF;
+            int v = (hsv[i] >> 8) & 0xFF;
+            if ((h >= hFrom) && (h <= hTo)
+                && (s >= sFrom) && (s <= sTo)
+                && (v >= vFrom) && (v <= vTo)) {
                 rgba[i] = replWithRgba;
             }
         }
     }
+
+    // one pattern for variants differing only in some pixels (the background
+    // behind an icon, say): a copy of the first variant with the pixels any
+    // other variant differs in made transparent, which the native matchers
+    // skip. All variants must be the same size.
+    public static PicData maskDiffering(PicData... variants) {
+        PicData first = variants[0];
+        PicData masked = first.copy();
+        for (PicData v : variants) {
+            if ((v.width != first.width) || (v.height != first.height)) {
+                throw new IllegalArgumentException(String.format("variant is %dx%d, expected %dx%d",
+                    v.width, v.height, first.width, first.height));
+            }
+            for (int i = 0; i < masked.rgba.length; i++) {
+                if ((v.rgba[i] & 0xFFFFFF00) != (first.rgba[i] & 0xFFFFFF00)) {
+                    masked.rgba[i] &= 0xFFFFFF00;
+                }
+            }
+        }
+        return masked;
+    }
 }
@@ -0,0 +1,354 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.FramePlanes;
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclocate.Point;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// Coarse-to-fine fuzzy matcher. The canvas is reduced to min/max grayscale
+// per 2x2 and 4x4 cell, the pattern to min/max gray per 2x2 and 4x4 block.
+// A block placed anywhere in a group of f*f start locations lands inside a
+// known 2x2 cell region, so the whole group is dropped when the block's range
+// doesn't fit the region's widened by toler: first at 4x, then at 2x for the
+// surviving quarters. The rest is confirmed pixel by pixel with the
+// per-channel tolerance of bs_match. Pixels within toler per channel have
+// grays at most toler apart, so no true match is dropped and results equal
+// bs_match's. Blocks with transparent pixels of a masked pattern aren't
+// tested. The levels of the last FramePlanes searched are kept, so more
+// patterns over the same frame only pay for the coarse scan and confirmation.
+public class PyramidCrossJ implements ITwoDMatcher {
+    private final int _chanErrToler;
+    private final int _maxResults;
+    private int _falseMatches;
+    private int[] _cand = new int[64];
+    private final Level _l2 = new Level(2);
+    private final Level _l4 = new Level(4);
+    private byte[] _gray = new byte[0];
+    // the frame the levels were built from, null when built from a PicData
+    private FramePlanes _levelsOf;
+
+    public PyramidCrossJ(int chanErrToler) {
+        this(chanErrToler, RK2DCrossJ.MAX_RESULTS);
+    }
+
+    public PyramidCrossJ(int chanErrToler, int maxResults) {
+        this._chanErrToler = chanErrToler;
+        this._maxResults = MatcherUtils.chkMaxResults(maxResults);
+    }
+
+    public Set<Point> match(PicData pic, PicData pat) {
+        if ((pat.width <= pic.width) && (pat.height <= pic.height)) {
+            byte[] gray = this._grayBuf(pic.rgba.length);
+            for (int i = 0; i < pic.rgba.length; i++) {
+                gray[i] = (byte)MatcherUtils.gray(pic.rgba[i]);
+            }
+            this._build(gray, pic.width, pic.height);
+            this._levelsOf = null;
+        }
+        return this._match(pic, pat);
+    }
+
+    // same as match(planes.pic(), pat), from the frame's grayscaleNa() plane
+    public Set<Point> match(FramePlanes planes, PicData pat) {
+        PicData pic = planes.pic();
+        if ((pat.width <= pic.width) && (pat.height <= pic.height) && (planes != this._levelsOf)) {
+            this._build(planes.grayscaleNa().data, pic.width, pic.height);
+            this._levelsOf = planes;
+        }
+        return this._match(pic, pat);
+    }
+
+    private void _build(byte[] gray, int w, int h) {
+        this._l2.buildFromGray(gray, w, h);
+        this._l4.buildFrom(this._l2);
+    }
+
+    private Set<Point> _match(PicData pic, PicData pat) {
+        this._falseMatches = 0;
+        Set<Point> matches = new LinkedHashSet<>();
+
+        int cw = pic.width;
+        int ch = pic.height;
+        int pw = pat.width;
+        int ph = pat.height;
+        if ((pw > cw) || (ph > ch)) {
+            return matches;
+        }
+
+        int[] canv = pic.rgba;
+        int[] patPx = pat.rgba;
+        int toler = this._chanErrToler;
+        boolean masked = MatcherUtils.masked(pat);
+
+        // -1 for don't-care pixels
+        int[] patGray = new int[pw * ph];
+        for (int i = 0; i < patGray.length; i++) {
+            patGray[i] = (masked && !MatcherUtils.opaque(patPx[i])) ? -1 : MatcherUtils.gray(patPx[i]);
+        }
+
+        Level l4 = this._l4;
+        Level l2 = this._l2;
+        l2.setPattern(patGray, pw, ph, toler);
+        l4.setPattern(patGray, pw, ph, toler);
+
+        int maxSx = cw - pw;
+        int maxSy = ch - ph;
+        int rows = maxSy + 1;
+        for (int g4x = 0; (g4x * 4) <= maxSx; g4x++) {
+            // candidates of one 4 columns wide strip as dx * rows + sy, sorted
+            // so results come out in the same column-major order as bs_match
+            int candCnt = 0;
+            for (int g4y = 0; (g4y * 4) <= maxSy; g4y++) {
+                if (!l4.groupPasses(g4x, g4y)) {
+                    continue;
+                }
+                for (int q = 0; q < 4; q++) {
+                    int g2x = (g4x * 2) + (q & 1);
+                    int g2y = (g4y * 2) + (q >> 1);
+                    if (((g2x * 2) > maxSx) || ((g2y * 2) > maxSy) || !l2.groupPasses(g2x, g2y)) {
+                        continue;
+                    }
+                    for (int p = 0; p < 4; p++) {
+                        int sx = (g2x * 2) + (p & 1);
+                        int sy = (g2y * 2) + (p >> 1);
+                        if ((sx <= maxSx) && (sy <= maxSy)) {
+                            this._candBuf(candCnt + 1)[candCnt++] = ((sx - (g4x * 4)) * rows) + sy;
+                        }
+                    }
+                }
+            }
+
+            int[] cand = this._cand;
+            Arrays.sort(cand, 0, candCnt);
+            for (int i = 0; i < candCnt; i++) {
+                int sx = (g4x * 4) + (cand[i] / rows);
+                int sy = cand[i] % rows;
+                if (MatcherUtils.confirm(canv, cw, patPx, pw, ph, sx, sy, toler, masked)) {
+                    matches.add(new Point(sx, sy));
+                    if (matches.size() == this._maxResults) {
+                        return matches;
+                    }
+                } else {
+                    this._falseMatches++;
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    public int getFalseMatchesCount() {
+        return this._falseMatches;
+    }
+
+    static class Level {
+        final int f;
+        int cw;
+        int ch;
+        // per f*f cell of the canvas, [cy * cw + cx]
+        int[] cellMin = new int[0];
+        int[] cellMax = new int[0];
+        // per 2x2 cells, the pixels any f*f box cornered in cell (cx, cy) can cover
+        int[] regMin = new int[0];
+        int[] regMax = new int[0];
+        // per pattern f*f block, row-major, with the offset of the
+        // block's region from the group's
+        int[] patMin;
+        int[] patMax;
+        int[] blockOffs;
+        int toler;
+
+        Level(int f) {
+            this.f = f;
+        }
+
+        // canvas grays go into 2x2 cells, the last row/column of an odd
+        // sized canvas is paired with itself
+        void buildFromGray(byte[] gray, int w, int h) {
+            this._alloc((w + 1) / 2, (h + 1) / 2);
+            int[] cMin = this.cellMin;
+            int[] cMax = this.cellMax;
+            int pairs = w / 2;
+            for (int cy = 0; cy < this.ch; cy++) {
+                int off0 = (cy * 2) * w;
+                int off1 = Math.min((cy * 2) + 1, h - 1) * w;
+                int cOff = cy * this.cw;
+                for (int cx = 0; cx < pairs; cx++) {
+                    int x0 = cx * 2;
+                    int g0 = gray[off0 + x0] & 0xFF;
+                    int g1 = gray[off0 + x0 + 1] & 0xFF;
+                    int g2 = gray[off1 + x0] & 0xFF;
+                    int g3 = gray[off1 + x0 + 1] & 0xFF;
+                    cMin[cOff + cx] = Math.min(Math.min(g0, g1), Math.min(g2, g3));
+                    cMax[cOff + cx] = Math.max(Math.max(g0, g1), Math.max(g2, g3));
+                }
+                if (pairs < this.cw) {
+                    int g0 = gray[off0 + w - 1] & 0xFF;
+                    int g2 = gray[off1 + w - 1] & 0xFF;
+                    cMin[cOff + pairs] = Math.min(g0, g2);
+                    cMax[cOff + pairs] = Math.max(g0, g2);
+                }
+            }
+            this._buildRegions();
+        }
+
+        // cells of this level are 2x2 cells of finer
+        void buildFrom(Level finer) {
+            this._alloc((finer.cw + 1) / 2, (finer.ch + 1) / 2);
+            int fw = finer.cw;
+            int fh = finer.ch;
+            for (int cy = 0; cy < this.ch; cy++) {
+                int top = (cy * 2) * fw;
+                int bot = (((cy * 2) + 1) < fh) ? (top + fw) : top;
+                int off = cy * this.cw;
+                for (int cx = 0; cx < this.cw; cx++) {
+                    int l = cx * 2;
+                    int r = ((l + 1) < fw) ? (l + 1) : l;
+                    this.cellMin[off + cx] = Math.min(
+                        Math.min(finer.cellMin[top + l], finer.cellMin[top + r]),
+                        Math.min(finer.cellMin[bot + l], finer.cellMin[bot + r]));
+                    this.cellMax[off + cx] = Math.max(
+                        Math.max(finer.cellMax[top + l], finer.cellMax[top + r]),
+                        Math.max(finer.cellMax[bot + l], finer.cellMax[bot + r]));
+                }
+            }
+            this._buildRegions();
+        }
+
+        // must follow the canvas build, block offsets depend on the cell grid
+        // width; blocks with a don't-care (-1) pixel are left out
+        void setPattern(int[] patGray, int pw, int ph, int toler) {
+            int f = this.f;
+            int pbw = pw / f;
+            int pbh = ph / f;
+            int cnt = 0;
+            this.toler = toler;
+
+            this.patMin = new int[pbw * pbh];
+            this.patMax = new int[pbw * pbh];
+            this.blockOffs = new int[pbw * pbh];
+            for (int j = 0; j < pbh; j++) {
+                nextBlock:
+                for (int i = 0; i < pbw; i++) {
+                    int min = Integer.MAX_VALUE;
+                    int max = Integer.MIN_VALUE;
+                    for (int y = 0; y < f; y++) {
+                        int off = (((j * f) + y) * pw) + (i * f);
+                        for (int x = 0; x < f; x++) {
+                            if (patGray[off + x] < 0) {
+                                continue nextBlock;
+                            }
+                            min = Math.min(min, patGray[off + x]);
+                            max = Math.max(max, patGray[off + x]);
+                        }
+                    }
+                    this.patMin[cnt] = min;
+                    this.patMax[cnt] = max;
+                    this.blockOffs[cnt] = (j * this.cw) + i;
+                    cnt++;
+                }
+            }
+            this.patMin = Arrays.copyOf(this.patMin, cnt);
+            this.patMax = Arrays.copyOf(this.patMax, cnt);
+            this.blockOffs = Arrays.copyOf(this.blockOffs, cnt);
+            this._extremeFirst();
+        }
+
+        // canvas regions span wide gray ranges, blocks reaching far to
+        // either end of the scale reject the most groups and are tried first
+        private void _extremeFirst() {
+            int cnt = this.patMin.length;
+            long[] keyed = new long[cnt];
+            for (int k = 0; k < cnt; k++) {
+                keyed[k] = ((long)(255 - Math.max(this.patMax[k], 255 - this.patMin[k])) << 32) | k;
+            }
+            Arrays.sort(keyed);
+            int[] min = new int[cnt];
+            int[] max = new int[cnt];
+            int[] offs = new int[cnt];
+            for (int n = 0; n < cnt; n++) {
+                int k = (int)keyed[n];
+                min[n] = this.patMin[k];
+                max[n] = this.patMax[k];
+                offs[n] = this.blockOffs[k];
+            }
+            this.patMin = min;
+            this.patMax = max;
+            this.blockOffs = offs;
+        }
+
+        // start locations [gx * f, gx * f + f) x [gy * f, gy * f + f) put every
+        // pixel of pattern block (i, j) somewhere in region (gx + i, gy + j),
+        // each needs a canvas gray within toler of its own
+        boolean groupPasses(int gx, int gy) {
+            int toler = this.toler;
+            int base = (gy * this.cw) + gx;
+            for (int n = 0; n < this.blockOffs.length; n++) {
+                int r = base + this.blockOffs[n];
+                if ((this.patMax[n] > (this.regMax[r] + toler)) || (this.patMin[n] < (this.regMin[r] - toler))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // min/max over each 2x2 cell square, pairs along rows first and then
+        // down in place; row cy + 1 still holds its row pairs when cy reads it
+        private void _buildRegions() {
+            int w = this.cw;
+            int h = this.ch;
+            int[] cMin = this.cellMin;
+            int[] cMax = this.cellMax;
+            int[] rMin = this.regMin;
+            int[] rMax = this.regMax;
+            for (int cy = 0; cy < h; cy++) {
+                int off = cy * w;
+                int last = off + w - 1;
+                for (int i = off; i < last; i++) {
+                    rMin[i] = Math.min(cMin[i], cMin[i + 1]);
+                    rMax[i] = Math.max(cMax[i], cMax[i + 1]);
+                }
+                rMin[last] = cMin[last];
+                rMax[last] = cMax[last];
+            }
+            int end = (h - 1) * w;
+            for (int i = 0; i < end; i++) {
+                rMin[i] = Math.min(rMin[i], rMin[i + w]);
+                rMax[i] = Math.max(rMax[i], rMax[i + w]);
+            }
+        }
+
+        private void _alloc(int cw, int ch) {
+            this.cw = cw;
+            this.ch = ch;
+            if (this.cellMin.length < (cw * ch)) {
+                this.cellMin = new int[cw * ch];
+                this.cellMax = new int[cw * ch];
+                this.regMin = new int[cw * ch];
+                this.regMax = new int[cw * ch];
+            }
+        }
+    }
+
+    private byte[] _grayBuf(int len) {
+        if (this._gray.length < len) {
+            this._gray = new byte[len];
+        }
+        return this._gray;
+    }
+
+    private int[] _candBuf(int len) {
+        if (this._cand.length < len) {
+            this._cand = Arrays.copyOf(this._cand, Math.max(len, this._cand.length * 2));
+        }
+        return this._cand;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PyramidCrossJ(%d)", this._chanErrToler);
+    }
+}
@@ -0,0 +1,140 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclocate.Point;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public class RK2DCrossJ implements ITwoDMatcher {
+    static final int MAX_RESULTS = 1000;
+    private static final int H_BASE = 0x01000193;
+    private static final int V_BASE = 0x5BD1E995;
+    private static final int RGB_MASK = 0xFFFFFF00;
+
+    private final int _maxResults;
+    private int _falseMatches;
+    private int[] _hpass = new int[0];
+
+    public RK2DCrossJ() {
+        this(MAX_RESULTS);
+    }
+
+    public RK2DCrossJ(int maxResults) {
+        this._maxResults = MatcherUtils.chkMaxResults(maxResults);
+    }
+
+    public Set<Point> match(PicData pic, PicData pat) {
+        this._falseMatches = 0;
+        Set<Point> matches = new LinkedHashSet<>();
+
+        int cw = pic.width;
+        int ch = pic.height;
+        int pw = pat.width;
+        int ph = pat.height;
+        if ((pw > cw) || (ph > ch)) {
+            return matches;
+        }
+
+        int[] canv = pic.rgba;
+        int[] patPx = pat.rgba;
+        // hashes cover the anchor only, start locations stay those the whole pattern fits
+        MatcherUtils.Anchor a = MatcherUtils.anchor(pat);
+        int aw = a.w;
+        int ah = a.h;
+        int sumsW = cw - aw + 1;
+        int hLead = _pow(H_BASE, aw - 1);
+        int vLead = _pow(V_BASE, ah - 1);
+
+        int patHash = 0;
+        for (int y = a.y; y < (a.y + ah); y++) {
+            int h = 0;
+            for (int x = a.x; x < (a.x + aw); x++) {
+                h = (h * H_BASE) + (patPx[(y * pw) + x] >>> 8);
+            }
+            patHash = (patHash * V_BASE) + h;
+        }
+
+        // stored column-major, [ax * ch + y], so the vertical pass below reads sequentially
+        int[] hpass = this._hpassBuf(sumsW * ch);
+        for (int y = 0; y < ch; y++) {
+            int rowOff = y * cw;
+            int h = 0;
+            for (int x = 0; x < cw; x++) {
+                if (x >= aw) {
+                    h -= (canv[rowOff + x - aw] >>> 8) * hLead;
+                }
+                h = (h * H_BASE) + (canv[rowOff + x] >>> 8);
+                if (x >= (aw - 1)) {
+                    hpass[((x - aw + 1) * ch) + y] = h;
+                }
+            }
+        }
+
+        int fromY = a.y;
+        int toY = a.y + (ch - ph) + ah;
+        for (int sx = 0; sx <= (cw - pw); sx++) {
+            int colOff = (sx + a.x) * ch;
+            int v = 0;
+            for (int y = fromY; y < toY; y++) {
+                if (y >= (fromY + ah)) {
+                    v -= hpass[colOff + y - ah] * vLead;
+                }
+                v = (v * V_BASE) + hpass[colOff + y];
+                if ((y < (fromY + ah - 1)) || (v != patHash)) {
+                    continue;
+                }
+
+                int sy = y - ah + 1 - a.y;
+                if (_confirm(canv, cw, patPx, pw, ph, sx, sy, a.masked)) {
+                    matches.add(new Point(sx, sy));
+                    if (matches.size() == this._maxResults) {
+                        return matches;
+                    }
+                } else {
+                    this._falseMatches++;
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    public int getFalseMatchesCount() {
+        return this._falseMatches;
+    }
+
+    private static boolean _confirm(int[] canv, int cw, int[] pat, int pw, int ph, int sx, int sy, boolean masked) {
+        for (int y = 0; y < ph; y++) {
+            int cOff = ((sy + y) * cw) + sx;
+            int pOff = y * pw;
+            for (int x = 0; x < pw; x++) {
+                int p = pat[pOff + x];
+                if ((((canv[cOff + x] ^ p) & RGB_MASK) != 0) && (!masked || MatcherUtils.opaque(p))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int _pow(int base, int exp) {
+        int r = 1;
+        for (int i = 0; i < exp; i++) {
+            r *= base;
+        }
+        return r;
+    }
+
+    private int[] _hpassBuf(int len) {
+        if (this._hpass.length < len) {
+            this._hpass = new int[len];
+        }
+        return this._hpass;
+    }
+
+    @Override
+    public String toString() {
+        return "RK2DCrossJ";
+    }
+}
@@ -0,0 +1,51 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclocate.Point;
+import com.drscbt.shared.utils.LoadLib;
+
+import java.util.Set;
+
+// Same results as RK2DCrossNa, hashed modulo 2^61 - 1 natively (rk64_search.c)
+// so repetitive screens cause far fewer hash hits needing confirmation.
+// getFalseMatchesCount() and getConfirmedPxCount() cover the last match().
+public class RK64CrossNa implements ITwoDMatcher {
+    private final int _maxResults;
+    private int _falseMatches;
+    private long _confirmedPx;
+
+    public RK64CrossNa() {
+        this(RK2DCrossJ.MAX_RESULTS);
+    }
+
+    public RK64CrossNa(int maxResults) {
+        this._maxResults = MatcherUtils.chkMaxResults(maxResults);
+    }
+
+    public Set<Point> match(PicData pic, PicData pat) {
+        NativePicSearchResults res = rk64MatchCall(pic.rgba, pat.rgba, pic.width, pat.width, this._maxResults);
+        this._falseMatches = res.collisionsCnt;
+        this._confirmedPx = res.confirmPxCnt;
+        return res.matches;
+    }
+
+    public int getFalseMatchesCount() {
+        return this._falseMatches;
+    }
+
+    // canvas pixels compared while confirming hash hits, true or false ones
+    public long getConfirmedPxCount() {
+        return this._confirmedPx;
+    }
+
+    @Override
+    public String toString() {
+        return "RK64CrossNa";
+    }
+
+    native NativePicSearchResults rk64MatchCall(int[] text, int[] pat, int textW, int patW, int limit);
+
+    static {
+        LoadLib.loadLib();
+    }
+}
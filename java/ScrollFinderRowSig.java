@@ -0,0 +1,263 @@
+package com.drscbt.shared.piclocate.scrollfinder;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclocate.MaskConf;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Vertical scroll estimate from per-row signatures of the clip: a hash and a
+// channel sum per row, computed once per frame serial and cached, so polling
+// the same pair of frames again costs nothing and a new frame costs one pass
+// over its pixels. Rows hashing uniquely in both frames vote for an offset,
+// the best voted offsets are checked on the row sums and confirmed pixel by
+// pixel with the channel tolerance, only there. Given the expected offset
+// that and its neighbours are tried first, before any voting.
+public class ScrollFinderRowSig {
+    private static final int CANDIDATES = 3;
+    private static final int MIN_OVERLAP_DIV = 8;
+
+    private final int _chanErrToler;
+    private RowSigs _older;
+    private RowSigs _newer;
+
+    private int _resPrevSerial = -1;
+    private int _resNextSerial = -1;
+    private RowSigs _resClip;
+    private int _resExpected;
+    private int _resWindow;
+    private Integer _res;
+
+    public ScrollFinderRowSig(int chanErrToler) {
+        if (chanErrToler < 0) {
+            throw new IllegalArgumentException(String.format("chanErrToler must not be negative, got %d",
+                chanErrToler));
+        }
+        this._chanErrToler = chanErrToler;
+    }
+
+    // nextY - prevY of the surface inside clip (null for the whole frame):
+    // negative when it moved up, 0 when still; null when the rows don't tell,
+    // no distinctive rows or no voted offset confirms. A serial has to
+    // identify the pixels of its frame.
+    public Integer shift(PicData prev, int prevSerial, PicData next, int nextSerial, MaskConf clip) {
+        return this._shift(prev, prevSerial, next, nextSerial, clip, 0, -1);
+    }
+
+    // same, but expected, then expected -+1 .. -+window are confirmed first,
+    // the first to confirm is returned without voting
+    public Integer shift(PicData prev, int prevSerial, PicData next, int nextSerial, MaskConf clip,
+        int expected, int window
+    ) {
+        if (window < 0) {
+            throw new IllegalArgumentException(String.format("window must not be negative, got %d", window));
+        }
+        return this._shift(prev, prevSerial, next, nextSerial, clip, expected, window);
+    }
+
+    // window -1 without an expected offset
+    private synchronized Integer _shift(PicData prev, int prevSerial, PicData next, int nextSerial, MaskConf clip,
+        int expected, int window
+    ) {
+        if ((prev.width != next.width) || (prev.height != next.height)) {
+            throw new IllegalArgumentException(String.format("frames differ in size, %dx%d and %dx%d",
+                prev.width, prev.height, next.width, next.height));
+        }
+
+        RowSigs prevSigs = this._sigs(prev, prevSerial, clip);
+        RowSigs nextSigs = this._sigs(next, nextSerial, clip);
+        if ((this._resPrevSerial == prevSerial) && (this._resNextSerial == nextSerial)
+            && (this._resClip != null) && this._resClip.sameClip(nextSigs)
+            && (this._resExpected == expected) && (this._resWindow == window)
+        ) {
+            return this._res;
+        }
+
+        this._res = this._hypothesis(prev, prevSigs, next, nextSigs, expected, window);
+        if (this._res == null) {
+            this._res = this._estimate(prev, prevSigs, next, nextSigs);
+        }
+        this._resPrevSerial = prevSerial;
+        this._resNextSerial = nextSerial;
+        this._resClip = nextSigs;
+        this._resExpected = expected;
+        this._resWindow = window;
+        return this._res;
+    }
+
+    private RowSigs _sigs(PicData pic, int serial, MaskConf clip) {
+        int fromX = (clip == null) ? 0 : clip.fromX;
+        int fromY = (clip == null) ? 0 : clip.fromY;
+        int width = (clip == null) ? pic.width : clip.width;
+        int height = (clip == null) ? pic.height : clip.height;
+
+        for (RowSigs cached : new RowSigs[] {this._newer, this._older}) {
+            if ((cached != null) && (cached.serial == serial) && cached.sameClip(fromX, fromY, width, height)) {
+                return cached;
+            }
+        }
+
+        if ((fromX < 0) || (fromY < 0) || (width <= 0) || (height <= 0)
+            || ((fromX + width) > pic.width) || ((fromY + height) > pic.height)
+        ) {
+            throw new IllegalArgumentException(String.format("clip %d,%d %dx%d outside of %dx%d frame",
+                fromX, fromY, width, height, pic.width, pic.height));
+        }
+
+        RowSigs sigs = new RowSigs(pic, serial, fromX, fromY, width, height);
+        this._older = this._newer;
+        this._newer = sigs;
+        return sigs;
+    }
+
+    private Integer _hypothesis(PicData prev, RowSigs prevSigs, PicData next, RowSigs nextSigs,
+        int expected, int window
+    ) {
+        for (int i = 0; i <= (window * 2); i++) {
+            // expected, expected - 1, expected + 1, ...
+            int shift = expected + (((i % 2) == 0) ? (i / 2) : -((i + 1) / 2));
+            if (this._confirm(prev, prevSigs, next, nextSigs, shift)) {
+                return shift;
+            }
+        }
+        return null;
+    }
+
+    private Integer _estimate(PicData prev, RowSigs prevSigs, PicData next, RowSigs nextSigs) {
+        int height = prevSigs.height;
+
+        // row hash -> prev row, -1 once it repeats (blank lines, separators)
+        Map<Long, Integer> prevRows = new HashMap<Long, Integer>(height * 2);
+        for (int row = 0; row < height; row++) {
+            Integer had = prevRows.put(prevSigs.hashes[row], row);
+            if (had != null) {
+                prevRows.put(prevSigs.hashes[row], -1);
+            }
+        }
+
+        // votes[shift + height - 1]
+        int[] votes = new int[(height * 2) - 1];
+        for (int row = 0; row < height; row++) {
+            Integer prevRow = prevRows.get(nextSigs.hashes[row]);
+            if ((prevRow != null) && (prevRow >= 0)) {
+                votes[row - prevRow + height - 1]++;
+            }
+        }
+
+        for (int cand = 0; cand < CANDIDATES; cand++) {
+            int bestIdx = -1;
+            for (int idx = 0; idx < votes.length; idx++) {
+                if ((votes[idx] > 0) && ((bestIdx == -1) || (votes[idx] > votes[bestIdx]))) {
+                    bestIdx = idx;
+                }
+            }
+            if (bestIdx == -1) {
+                break;
+            }
+            votes[bestIdx] = 0;
+
+            int shift = bestIdx - height + 1;
+            if (this._confirm(prev, prevSigs, next, nextSigs, shift)) {
+                return shift;
+            }
+        }
+
+        return null;
+    }
+
+    private boolean _confirm(PicData prev, RowSigs prevSigs, PicData next, RowSigs nextSigs, int shift) {
+        if ((prevSigs.height - Math.abs(shift)) < Math.max(1, prevSigs.height / MIN_OVERLAP_DIV)) {
+            return false;
+        }
+
+        int prevFrom = Math.max(0, -shift);
+        int prevTo = Math.min(prevSigs.height, prevSigs.height - shift);
+
+        // rows all alike would confirm any offset
+        boolean varies = false;
+        for (int row = prevFrom + 1; (row < prevTo) && !varies; row++) {
+            varies = prevSigs.hashes[row] != prevSigs.hashes[row - 1];
+        }
+        if (!varies) {
+            return false;
+        }
+
+        // every channel within the tolerance keeps the row sums within width times it
+        long sumToler = (long)this._chanErrToler * 3 * prevSigs.width;
+        for (int row = prevFrom; row < prevTo; row++) {
+            if (Math.abs(prevSigs.sums[row] - nextSigs.sums[row + shift]) > sumToler) {
+                return false;
+            }
+        }
+
+        for (int row = prevFrom; row < prevTo; row++) {
+            // same hash, same pixels
+            if (prevSigs.hashes[row] == nextSigs.hashes[row + shift]) {
+                continue;
+            }
+            int prevOff = ((prevSigs.fromY + row) * prev.width) + prevSigs.fromX;
+            int nextOff = ((prevSigs.fromY + row + shift) * next.width) + prevSigs.fromX;
+            for (int x = 0; x < prevSigs.width; x++) {
+                if (!this._eq(prev.rgba[prevOff + x], next.rgba[nextOff + x])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean _eq(int a, int b) {
+        if (a == b) {
+            return true;
+        }
+        for (int i = 0; i < 3; i++) {
+            int d = ((a >>= 8) & 0xFF) - ((b >>= 8) & 0xFF);
+            if (Math.abs(d) > this._chanErrToler) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static class RowSigs {
+        final int serial;
+        final int fromX;
+        final int fromY;
+        final int width;
+        final int height;
+        final long[] hashes;
+        final long[] sums;
+
+        RowSigs(PicData pic, int serial, int fromX, int fromY, int width, int height) {
+            this.serial = serial;
+            this.fromX = fromX;
+            this.fromY = fromY;
+            this.width = width;
+            this.height = height;
+            this.hashes = new long[height];
+            this.sums = new long[height];
+
+            for (int row = 0; row < height; row++) {
+                int off = ((fromY + row) * pic.width) + fromX;
+                // FNV-1a over the pixels, alpha ignored
+                long hash = 0xCBF29CE484222325L;
+                long sum = 0;
+                for (int x = 0; x < width; x++) {
+                    int px = pic.rgba[off + x];
+                    hash = (hash ^ (px >>> 8)) * 0x100000001B3L;
+                    sum += ((px >>> 24) & 0xFF) + ((px >>> 16) & 0xFF) + ((px >>> 8) & 0xFF);
+                }
+                this.hashes[row] = hash;
+                this.sums[row] = sum;
+            }
+        }
+
+        boolean sameClip(int fromX, int fromY, int width, int height) {
+            return (this.fromX == fromX) && (this.fromY == fromY) && (this.width == width) && (this.height == height);
+        }
+
+        boolean sameClip(RowSigs o) {
+            return this.sameClip(o.fromX, o.fromY, o.width, o.height);
+        }
+    }
+}
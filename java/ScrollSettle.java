@@ -0,0 +1,91 @@
+package com.drscbt.shared.piclocate.scrollfinder;
+
+import com.drscbt.shared.piclib.Frame;
+import com.drscbt.shared.piclib.IFrameSource;
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclocate.MaskConf;
+
+// Waits for a scroll to come to rest, looking only at newly composed frames.
+// Settled once settleFrames frames in a row show the same offset against the
+// frame before the scroll, or once no frame came for quietMs after a known
+// offset: the screen isn't composed again while nothing moves.
+public class ScrollSettle {
+    private final ScrollFinderRowSig _rowSig;
+    private final int _settleFrames;
+    private final long _quietMs;
+
+    public ScrollSettle(ScrollFinderRowSig rowSig, int settleFrames, long quietMs) {
+        if (settleFrames < 1) {
+            throw new IllegalArgumentException(String.format("settleFrames must be positive, got %d", settleFrames));
+        }
+        if (quietMs <= 0) {
+            throw new IllegalArgumentException(String.format("quietMs must be positive, got %d", quietMs));
+        }
+        this._rowSig = rowSig;
+        this._settleFrames = settleFrames;
+        this._quietMs = quietMs;
+    }
+
+    public static class Result {
+        // the last frame seen, null when none came before the timeout
+        public final Frame frame;
+        // its offset, see ScrollFinderRowSig.shift(), null when unknown
+        public final Integer shift;
+        public final boolean settled;
+        public final int framesSeen;
+
+        Result(Frame frame, Integer shift, boolean settled, int framesSeen) {
+            this.frame = frame;
+            this.shift = shift;
+            this.settled = settled;
+            this.framesSeen = framesSeen;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ScrollSettle.Result shift %s settled %b after %d frames",
+                this.shift, this.settled, this.framesSeen);
+        }
+    }
+
+    public Result await(IFrameSource src, PicData prev, int prevSerial, MaskConf clip,
+        int expected, int window, long timeoutMs
+    ) throws InterruptedException {
+        long deadline = System.nanoTime() + (timeoutMs * 1000000);
+        Frame last = null;
+        Integer lastShift = null;
+        int streak = 0;
+        int framesSeen = 0;
+
+        while (true) {
+            long remainingMs = (deadline - System.nanoTime()) / 1000000;
+            if (remainingMs <= 0) {
+                return new Result(last, lastShift, false, framesSeen);
+            }
+
+            // the first frame may take the whole timeout to come
+            long waitMs = (last == null) ? remainingMs : Math.min(remainingMs, this._quietMs);
+            Frame frame = src.nextFrame((last == null) ? prevSerial : last.serial, waitMs);
+            if (frame == null) {
+                boolean quiet = (last != null) && (waitMs < remainingMs);
+                return new Result(last, lastShift, quiet && (lastShift != null), framesSeen);
+            }
+            framesSeen++;
+
+            Integer shift = this._rowSig.shift(prev, prevSerial, frame.pic, frame.serial, clip, expected, window);
+            if (shift == null) {
+                streak = 0;
+            } else if (shift.equals(lastShift)) {
+                streak++;
+            } else {
+                streak = 1;
+            }
+            last = frame;
+            lastShift = shift;
+
+            if (streak >= this._settleFrames) {
+                return new Result(last, lastShift, true, framesSeen);
+            }
+        }
+    }
+}
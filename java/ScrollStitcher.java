@@ -0,0 +1,224 @@
+package com.drscbt.shared.piclocate.scrollfinder;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclocate.MaskConf;
+import com.drscbt.shared.piclocate.Point;
+import com.drscbt.shared.piclocate.twodmatcher.ITwoDMatcher;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+// Glues the clip of successive frames of a scrolling list into one long
+// virtual canvas, given each frame's offset against the one appended before
+// (ScrollFinderRowSig.shift()). Only rows not seen yet are copied. Virtual
+// coordinates keep the screen's x, y is 0 at the clip's top in the first
+// frame and grows down the list, so results found on the canvas stay valid
+// while scrolling and map back to the screen as long as they're visible.
+// findNew() searches only the rows a pattern hasn't been searched over.
+// Past maxRows the rows at the end away from the scroll direction are
+// dropped, along with the record of their searches.
+public class ScrollStitcher {
+    private final MaskConf _clip;
+    private final int _maxRows;
+
+    private int[] _rows;
+    // virtual y of the canvas' first row and the number of rows
+    private int _top;
+    private int _height;
+    // virtual y of the clip's first row in the last frame
+    private int _viewTop;
+
+    private final Map<PicData, int[]> _searched = new WeakHashMap<>();
+
+    public static class Strip {
+        public final int vFromY;
+        public final PicData pic;
+
+        Strip(int vFromY, PicData pic) {
+            this.vFromY = vFromY;
+            this.pic = pic;
+        }
+    }
+
+    public ScrollStitcher(MaskConf clip, int maxRows) {
+        if ((clip.width <= 0) || (clip.height <= 0)) {
+            throw new IllegalArgumentException(String.format("empty clip %dx%d", clip.width, clip.height));
+        }
+        if (maxRows < clip.height) {
+            throw new IllegalArgumentException(String.format("maxRows %d is less than the clip's %d rows",
+                maxRows, clip.height));
+        }
+        this._clip = clip;
+        this._maxRows = maxRows;
+    }
+
+    // starts over from the clip of first
+    public Strip reset(PicData first) {
+        this._rows = new int[this._clip.width * Math.min(this._clip.height * 2, this._maxRows)];
+        this._top = 0;
+        this._height = 0;
+        this._viewTop = 0;
+        this._searched.clear();
+        this._copyIn(first, 0, this._clip.height, 0);
+        this._height = this._clip.height;
+        return new Strip(0, this.region(0, this._clip.height));
+    }
+
+    // shift: nextY - prevY of frame against the frame appended last; the
+    // newly revealed rows, null when there are none
+    public Strip append(PicData frame, int shift) {
+        if (this._rows == null) {
+            throw new IllegalStateException("reset() first");
+        }
+        if (Math.abs(shift) >= this._clip.height) {
+            throw new IllegalArgumentException(String.format("shift %d leaves no overlap with the %d rows clip",
+                shift, this._clip.height));
+        }
+
+        int viewTop = this._viewTop - shift;
+        int bottom = this._top + this._height;
+        Strip strip = null;
+        if ((viewTop + this._clip.height) > bottom) {
+            int fromRow = bottom - viewTop;
+            int cnt = this._clip.height - fromRow;
+            this._makeRoom(cnt, true);
+            this._copyIn(frame, fromRow, cnt, this._height);
+            this._height += cnt;
+            strip = new Strip(bottom, this.region(bottom, cnt));
+        } else if (viewTop < this._top) {
+            int cnt = this._top - viewTop;
+            this._makeRoom(cnt, false);
+            System.arraycopy(this._rows, 0, this._rows, cnt * this._clip.width, this._height * this._clip.width);
+            this._copyIn(frame, 0, cnt, 0);
+            this._top = viewTop;
+            this._height += cnt;
+            strip = new Strip(viewTop, this.region(viewTop, cnt));
+        }
+        this._viewTop = viewTop;
+        return strip;
+    }
+
+    // virtual rows known, [top(), top() + height())
+    public int top() {
+        return this._top;
+    }
+
+    public int height() {
+        return this._height;
+    }
+
+    public int viewTop() {
+        return this._viewTop;
+    }
+
+    // a copy of rows [vFromY, vFromY + rows) of the canvas, clip wide
+    public PicData region(int vFromY, int rows) {
+        if ((vFromY < this._top) || (rows <= 0) || ((vFromY + rows) > (this._top + this._height))) {
+            throw new IllegalArgumentException(String.format("rows %d..%d outside of the canvas' %d..%d",
+                vFromY, vFromY + rows, this._top, this._top + this._height));
+        }
+        PicData pic = PicData.create(this._clip.width, rows);
+        System.arraycopy(this._rows, (vFromY - this._top) * this._clip.width, pic.rgba, 0, pic.rgba.length);
+        return pic;
+    }
+
+    // occurrences of pat, in virtual coordinates, at locations not searched
+    // for pat before: every start row is searched once while it stays on the
+    // canvas, the rows added since the last call plus the pattern's height
+    // above or below them
+    public Set<Point> findNew(ITwoDMatcher matcher, PicData pat) {
+        Set<Point> found = new LinkedHashSet<>();
+        if ((pat.width > this._clip.width) || (pat.height > this._height)) {
+            return found;
+        }
+
+        // start rows searched so far, [from, to)
+        int[] searched = this._searched.get(pat);
+        int startsTo = this._top + this._height - pat.height + 1;
+        if (searched == null) {
+            this._find(matcher, pat, this._top, startsTo, found);
+            this._searched.put(pat, new int[] {this._top, startsTo});
+            return found;
+        }
+
+        if (startsTo > searched[1]) {
+            this._find(matcher, pat, searched[1], startsTo, found);
+            searched[1] = startsTo;
+        }
+        if (this._top < searched[0]) {
+            this._find(matcher, pat, this._top, searched[0], found);
+            searched[0] = this._top;
+        }
+        return found;
+    }
+
+    // screen location of a virtual one in the last frame, null when it's
+    // outside of the clip there
+    public Point toScreen(Point v) {
+        int y = v.y - this._viewTop;
+        if ((y < 0) || (y >= this._clip.height) || (v.x < this._clip.fromX)
+            || (v.x >= (this._clip.fromX + this._clip.width))
+        ) {
+            return null;
+        }
+        return new Point(v.x, y + this._clip.fromY);
+    }
+
+    public Point toVirtual(Point screen) {
+        return new Point(screen.x, (screen.y - this._clip.fromY) + this._viewTop);
+    }
+
+    private void _find(ITwoDMatcher matcher, PicData pat, int startsFrom, int startsTo, Set<Point> found) {
+        PicData region = this.region(startsFrom, (startsTo - startsFrom) + pat.height - 1);
+        for (Point p : matcher.match(region, pat)) {
+            found.add(new Point(p.x + this._clip.fromX, p.y + startsFrom));
+        }
+    }
+
+    // room for rows more at the bottom or the top, dropping as many rows at
+    // the other end as maxRows requires; the clip's rows are never dropped
+    // since maxRows covers at least the clip
+    private void _makeRoom(int rows, boolean atBottom) {
+        int drop = Math.max(0, (this._height + rows) - this._maxRows);
+        if (drop > 0) {
+            if (atBottom) {
+                System.arraycopy(this._rows, drop * this._clip.width, this._rows, 0,
+                    (this._height - drop) * this._clip.width);
+                this._top += drop;
+            }
+            this._height -= drop;
+            this._trimSearched();
+        }
+        int height = this._height + rows;
+        if ((height * this._clip.width) > this._rows.length) {
+            int cap = Math.min(Math.max(height, this._height * 2), this._maxRows);
+            int[] grown = new int[cap * this._clip.width];
+            System.arraycopy(this._rows, 0, grown, 0, this._height * this._clip.width);
+            this._rows = grown;
+        }
+    }
+
+    // start rows searched that are no longer on the canvas are forgotten
+    private void _trimSearched() {
+        Iterator<Map.Entry<PicData, int[]>> it = this._searched.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<PicData, int[]> e = it.next();
+            int[] searched = e.getValue();
+            searched[0] = Math.max(searched[0], this._top);
+            searched[1] = Math.min(searched[1], this._top + this._height - e.getKey().height + 1);
+            if (searched[1] <= searched[0]) {
+                it.remove();
+            }
+        }
+    }
+
+    private void _copyIn(PicData frame, int fromRow, int cnt, int toRow) {
+        for (int row = 0; row < cnt; row++) {
+            System.arraycopy(frame.rgba, ((this._clip.fromY + fromRow + row) * frame.width) + this._clip.fromX,
+                this._rows, (toRow + row) * this._clip.width, this._clip.width);
+        }
+    }
+}
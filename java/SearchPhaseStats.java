@@ -0,0 +1,76 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.utils.LoadLib;
+
+// Where native search time goes. While enabled, results of the native
+// matchers carry NativePicSearchResults.phaseStats, laid out as the indices
+// below; add() sums them up over many searches, toString() fits
+// Measure.setDetails(). Scan time includes confirmation, confirmation time
+// is summed over the search threads, so it can exceed scan time.
+public class SearchPhaseStats {
+    public static final int CONV_NS = 0;
+    public static final int SUMS_NS = 1;
+    public static final int SCAN_NS = 2;
+    public static final int CONFIRM_NS = 3;
+    public static final int CONV_PXS = 4;
+    public static final int CANDIDATES = 5;
+    public static final int CONFIRM_PXS = 6;
+    public static final int COLLISIONS = 7;
+    public static final int LEN = 8;
+
+    private final long[] _totals = new long[LEN];
+    private int _searches;
+
+    // off by default, timing every confirmation isn't free
+    public static void setEnabled(boolean enabled) {
+        setEnabledCall(enabled);
+    }
+
+    // results searched while disabled are skipped
+    public synchronized void add(NativePicSearchResults res) {
+        if (res.phaseStats == null) {
+            return;
+        }
+        if (res.phaseStats.length < LEN) {
+            throw new IllegalArgumentException(String.format("malformed phase stats of length %d",
+                res.phaseStats.length));
+        }
+        for (int i = 0; i < LEN; i++) {
+            this._totals[i] += res.phaseStats[i];
+        }
+        this._searches++;
+    }
+
+    public synchronized long get(int idx) {
+        return this._totals[idx];
+    }
+
+    public synchronized int getSearches() {
+        return this._searches;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < LEN; i++) {
+            this._totals[i] = 0;
+        }
+        this._searches = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(
+            "searches %d; conv %.3fms (%d px); sums %.3fms; scan %.3fms; confirm %.3fms (%d cand, %d px, %d coll)",
+            this._searches,
+            this._totals[CONV_NS] / 1e6, this._totals[CONV_PXS],
+            this._totals[SUMS_NS] / 1e6,
+            this._totals[SCAN_NS] / 1e6,
+            this._totals[CONFIRM_NS] / 1e6, this._totals[CANDIDATES], this._totals[CONFIRM_PXS],
+            this._totals[COLLISIONS]);
+    }
+
+    native static void setEnabledCall(boolean enabled);
+
+    static {
+        LoadLib.loadLib();
+    }
+}
@@ -0,0 +1,53 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.utils.LoadLib;
+
+// Native buffers (pixel copies, condensed/grayscale planes, sums, stripes,
+// results) reused across searches, grown to the largest canvas and pattern
+// seen. Meant to be owned by one matcher instance polling the screen, the
+// native side then stops allocating once warmed up. One search at a time.
+public class SearchWorkspace implements AutoCloseable {
+    private long _handle;
+
+    public SearchWorkspace() {
+        this._handle = createCall();
+    }
+
+    // limit <= 0 for all occurrences
+    public synchronized NativePicSearchResults rkMatch(PicData pic, PicData pat, int limit) {
+        return rkMatchCall(this._open(), pic.rgba, pat.rgba, pic.width, pat.width, limit);
+    }
+
+    public synchronized NativePicSearchResults bsMatch(PicData pic, PicData pat, int chanErrToler, int limit) {
+        return bsMatchCall(this._open(), pic.rgba, pat.rgba, pic.width, pat.width, chanErrToler, limit);
+    }
+
+    public synchronized void close() {
+        if (this._handle != 0) {
+            freeCall(this._handle);
+            this._handle = 0;
+        }
+    }
+
+    private long _open() {
+        if (this._handle == 0) {
+            throw new IllegalStateException("search workspace is closed");
+        }
+        return this._handle;
+    }
+
+    native static long createCall();
+
+    native static void freeCall(long handle);
+
+    native static NativePicSearchResults rkMatchCall(long handle, int[] text, int[] pat, int textW, int patW,
+        int limit);
+
+    native static NativePicSearchResults bsMatchCall(long handle, int[] text, int[] pat, int textW, int patW,
+        int chanErrToler, int limit);
+
+    static {
+        LoadLib.loadLib();
+    }
+}
@@ -0,0 +1,226 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclocate.Point;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// Fuzzy matcher on integral images of the grayscale plane and its square.
+// Every start location is checked in O(1) before anything else: the gray
+// sums of the window's quadrants must be within toler per pixel of the
+// pattern's, and so must the standard deviations (the centered gray vectors
+// differ by no more than the raw ones). Survivors get bs_match's per-row sum
+// test, also read off the integral image, then the per-pixel confirm. None
+// of the tests can drop a location bs_match would confirm, so the results
+// are the same. For a masked pattern the tests cover its anchor, the largest
+// opaque rectangle. The integral images cover one strip of start rows at a time,
+// so their size follows the canvas width and not the frame.
+public class SummedAreaCrossJ implements ITwoDMatcher {
+    private static final double VAR_EPS = 1e-6;
+    private static final int STRIP_ROWS = 64;
+
+    private final int _chanErrToler;
+    private final int _maxResults;
+    private int _falseMatches;
+    private int _avoidedCollisions;
+    private int[] _sat = new int[0];
+    private long[] _sqSat = new long[0];
+    private int[] _cand = new int[64];
+
+    public SummedAreaCrossJ(int chanErrToler) {
+        this(chanErrToler, RK2DCrossJ.MAX_RESULTS);
+    }
+
+    public SummedAreaCrossJ(int chanErrToler, int maxResults) {
+        this._chanErrToler = chanErrToler;
+        this._maxResults = MatcherUtils.chkMaxResults(maxResults);
+    }
+
+    public Set<Point> match(PicData pic, PicData pat) {
+        this._falseMatches = 0;
+        this._avoidedCollisions = 0;
+        Set<Point> matches = new LinkedHashSet<>();
+
+        int cw = pic.width;
+        int ch = pic.height;
+        int pw = pat.width;
+        int ph = pat.height;
+        if ((pw > cw) || (ph > ch)) {
+            return matches;
+        }
+
+        int[] canv = pic.rgba;
+        int[] patPx = pat.rgba;
+        int toler = this._chanErrToler;
+        int satW = cw + 1;
+        MatcherUtils.Anchor a = MatcherUtils.anchor(pat);
+        int aw = a.w;
+        int ah = a.h;
+
+        int[] patSat = new int[(pw + 1) * (ph + 1)];
+        long[] patSqSat = new long[(pw + 1) * (ph + 1)];
+        _integrals(patPx, pw, 0, ph, patSat, patSqSat);
+
+        // quadrants split at the anchor's middle, empty ones for 1 pixel wide/high anchors are skipped
+        int[] qx = new int[]{a.x, a.x + (aw / 2), a.x, a.x + (aw / 2)};
+        int[] qy = new int[]{a.y, a.y, a.y + (ah / 2), a.y + (ah / 2)};
+        int[] qw = new int[]{aw / 2, aw - (aw / 2), aw / 2, aw - (aw / 2)};
+        int[] qh = new int[]{ah / 2, ah / 2, ah - (ah / 2), ah - (ah / 2)};
+        int[] qSum = new int[4];
+        int[] qMaxDiff = new int[4];
+        for (int q = 0; q < 4; q++) {
+            qSum[q] = _rect(patSat, pw + 1, qx[q], qy[q], qw[q], qh[q]);
+            qMaxDiff[q] = qw[q] * qh[q] * toler;
+        }
+
+        int[] patRows = new int[ah];
+        for (int r = 0; r < ah; r++) {
+            patRows[r] = _rect(patSat, pw + 1, a.x, a.y + r, aw, 1);
+        }
+        int rowMaxDiff = aw * toler;
+
+        int n = aw * ah;
+        double patDev = _dev(n, _rect(patSat, pw + 1, a.x, a.y, aw, ah), _rect(patSqSat, pw + 1, a.x, a.y, aw, ah));
+        double maxDevDiff = ((double) n * toler) + VAR_EPS;
+
+        int maxSx = cw - pw;
+        int maxSy = ch - ph;
+        int rows = maxSy + 1;
+        int stripRows = Math.max(STRIP_ROWS, ph);
+        int[] sat = this._satBuf(satW * (stripRows + ph + 1));
+        long[] sqSat = this._sqSatBuf(satW * (stripRows + ph + 1));
+        int candCnt = 0;
+
+        // prefilter strip by strip, the integrals of a strip start at its first row
+        for (int y0 = 0; y0 <= maxSy; y0 += stripRows) {
+            int y1 = Math.min(y0 + stripRows, rows);
+            _integrals(canv, cw, y0, (y1 - y0) + ph - 1, sat, sqSat);
+            for (int sy = y0; sy < y1; sy++) {
+                int ly = sy - y0;
+                nextLoc:
+                for (int sx = 0; sx <= maxSx; sx++) {
+                    for (int q = 0; q < 4; q++) {
+                        if ((qw[q] == 0) || (qh[q] == 0)) {
+                            continue;
+                        }
+                        int s = _rect(sat, satW, sx + qx[q], ly + qy[q], qw[q], qh[q]);
+                        if (Math.abs(s - qSum[q]) > qMaxDiff[q]) {
+                            continue nextLoc;
+                        }
+                    }
+                    int ax = sx + a.x;
+                    int ay = ly + a.y;
+                    double dev = _dev(n, _rect(sat, satW, ax, ay, aw, ah), _rect(sqSat, satW, ax, ay, aw, ah));
+                    if (Math.abs(dev - patDev) > maxDevDiff) {
+                        this._avoidedCollisions++;
+                        continue;
+                    }
+                    for (int r = 0; r < ah; r++) {
+                        if (Math.abs(_rect(sat, satW, ax, ay + r, aw, 1) - patRows[r]) > rowMaxDiff) {
+                            this._avoidedCollisions++;
+                            continue nextLoc;
+                        }
+                    }
+                    this._candBuf(candCnt + 1)[candCnt++] = (sx * rows) + sy;
+                }
+            }
+        }
+
+        // confirmed in bs_match's scan order, by x then y
+        int[] cand = this._cand;
+        Arrays.sort(cand, 0, candCnt);
+        for (int i = 0; i < candCnt; i++) {
+            int sx = cand[i] / rows;
+            int sy = cand[i] % rows;
+            if (MatcherUtils.confirm(canv, cw, patPx, pw, ph, sx, sy, toler, a.masked)) {
+                matches.add(new Point(sx, sy));
+                if (matches.size() == this._maxResults) {
+                    return matches;
+                }
+            } else {
+                this._falseMatches++;
+            }
+        }
+
+        return matches;
+    }
+
+    public int getFalseMatchesCount() {
+        return this._falseMatches;
+    }
+
+    // locations that passed the quadrant sums test and were rejected by the
+    // deviation or row sums test, each would have been a collision otherwise
+    public int getAvoidedCollisionsCount() {
+        return this._avoidedCollisions;
+    }
+
+    // (w + 1) x (h + 1) integral images of rows fromY to fromY + h - 1, with a
+    // zero first row and column
+    private static void _integrals(int[] px, int w, int fromY, int h, int[] sat, long[] sqSat) {
+        int satW = w + 1;
+        for (int x = 0; x < satW; x++) {
+            sat[x] = 0;
+            sqSat[x] = 0;
+        }
+        for (int y = 0; y < h; y++) {
+            int row = (y + 1) * satW;
+            int rowAcc = 0;
+            long sqRowAcc = 0;
+            sat[row] = 0;
+            sqSat[row] = 0;
+            for (int x = 0; x < w; x++) {
+                int g = MatcherUtils.gray(px[((fromY + y) * w) + x]);
+                rowAcc += g;
+                sqRowAcc += g * g;
+                sat[row + x + 1] = sat[row - satW + x + 1] + rowAcc;
+                sqSat[row + x + 1] = sqSat[row - satW + x + 1] + sqRowAcc;
+            }
+        }
+    }
+
+    private static int _rect(int[] sat, int satW, int x, int y, int w, int h) {
+        int top = y * satW;
+        int bottom = (y + h) * satW;
+        return sat[bottom + x + w] - sat[top + x + w] - sat[bottom + x] + sat[top + x];
+    }
+
+    private static long _rect(long[] sat, int satW, int x, int y, int w, int h) {
+        int top = y * satW;
+        int bottom = (y + h) * satW;
+        return sat[bottom + x + w] - sat[top + x + w] - sat[bottom + x] + sat[top + x];
+    }
+
+    // n * standard deviation, sqrt(n * sum(g^2) - sum(g)^2)
+    private static double _dev(int n, long sum, long sqSum) {
+        return Math.sqrt(Math.max(0, (n * sqSum) - (sum * sum)));
+    }
+
+    private int[] _satBuf(int len) {
+        if (this._sat.length < len) {
+            this._sat = new int[len];
+        }
+        return this._sat;
+    }
+
+    private long[] _sqSatBuf(int len) {
+        if (this._sqSat.length < len) {
+            this._sqSat = new long[len];
+        }
+        return this._sqSat;
+    }
+
+    private int[] _candBuf(int len) {
+        if (this._cand.length < len) {
+            this._cand = Arrays.copyOf(this._cand, Math.max(len, this._cand.length * 2));
+        }
+        return this._cand;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SummedAreaCrossJ(%d)", this._chanErrToler);
+    }
+}
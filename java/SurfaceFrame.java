@@ -0,0 +1,23 @@
+package com.drscbt.screencapture;
+
+import java.nio.ByteBuffer;
+
+// a frame read back from the capture surface; buf stays valid until its
+// consumer takes the next frame or is closed
+public class SurfaceFrame {
+    public final ByteBuffer buf;
+    public final int serial;
+    // System.nanoTime() when the frame was reported available
+    public final long timestampNs;
+    // frames reported available when it was read, this one included
+    final long availCnt;
+    final int slot;
+
+    SurfaceFrame(ByteBuffer buf, int serial, long timestampNs, long availCnt, int slot) {
+        this.buf = buf;
+        this.serial = serial;
+        this.timestampNs = timestampNs;
+        this.availCnt = availCnt;
+        this.slot = slot;
+    }
+}
@@ -9,19 +9,36 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
-
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Frames composed into the surface are read back on the GL thread into a
+// ring of buffers. While a Consumer is open every frame is read as it
+// arrives, several arriving during a read are read once, and consumers take
+// the latest read frame without waiting for the GL thread, unless a newer
+// frame is being read, then just for that one. With none open frames are
+// read only when asked for.
 public class SurfaceFrameReader implements SurfaceTexture.OnFrameAvailableListener {
+    // two consumers reading ahead, each keeping a frame, plus the latest and
+    // the one being read; slots are allocated when first written
+    private static final int FRAME_RING_SLOTS = 4;
+    private static final long READ_RETRY_MS = 100;
+
     private Logger _log = LoggerFactory.getLogger(SurfaceFrameReader.class);
     public Surface surface;
     final private Object _initializedSyncObj = new Object();
     private int _scrW;
     private int _scrH;
     private boolean _newFrameAvailable = false;
-    private final Object _glThreadMonitor = new Object();
     private boolean _readRequest = false;
-    private ByteBuffer _pic;
-    private boolean _readComplete;
-    private final Object _readCompleteSyncObj = new Object();
+    private final Object _glThreadMonitor = new Object();
+    private final AtomicLong _availCnt = new AtomicLong();
+    private long _availNs;
+    private final FrameRing _ring = new FrameRing(FRAME_RING_SLOTS);
+    private final Object _frameReadSyncObj = new Object();
+    private final AtomicInteger _consumers = new AtomicInteger();
+    private ByteBuffer _newFrameBuf;
+    private static volatile SurfaceFrameReader _active;
     private GLOffscreenSurface _gloss;
 
     private volatile Thread _onFrmAvailLooperThread;
@@ -33,18 +50,103 @@ public class SurfaceFrameReader implements SurfaceTexture.OnFrameAvailableListen
     private boolean _firstFrameArrived = false;
     private final Object _firstFrameArrivalMonitor = new Object();
 
-    public ByteBuffer getNewFrame() throws InterruptedException {
-        synchronized (this._glThreadMonitor) {
-            this._readRequest = true;
-            this._glThreadMonitor.notify();
+    // one consumer's frames, each kept from the GL thread until the
+    // consumer's next call or close(); for one thread at a time
+    public class Consumer implements AutoCloseable {
+        private final FrameRing.Hold _hold = SurfaceFrameReader.this._ring.hold();
+        private boolean _closed;
+
+        // a frame at least as new as the last one composed before the call,
+        // handed out again while no newer one is; its buffer is read only
+        public SurfaceFrame getNewSurfaceFrame() throws InterruptedException {
+            return SurfaceFrameReader.this._awaitNew(this._open());
+        }
+
+        // the last frame read, whatever composed since; null before the first
+        public SurfaceFrame getLatestFrame() {
+            return this._open().take();
+        }
+
+        public void close() {
+            if (!this._closed) {
+                this._closed = true;
+                this._hold.release();
+                SurfaceFrameReader.this._consumers.decrementAndGet();
+            }
         }
 
-        this._readComplete = false;
-        synchronized (this._readCompleteSyncObj) {
-            while (!this._readComplete) {
-                this._readCompleteSyncObj.wait();
+        private FrameRing.Hold _open() {
+            if (this._closed) {
+                throw new IllegalStateException("consumer is closed");
+            }
+            return this._hold;
+        }
+    }
+
+    // frames are read ahead until it's closed
+    public Consumer openConsumer() {
+        this._consumers.incrementAndGet();
+        return new Consumer();
+    }
+
+    // a frame at least as new as the last one composed before the call, in a
+    // buffer of the reader's that the next call reuses, as readPixels()'s
+    // was; callers may convert it in place (DirectPic.wrapGlRgba())
+    public synchronized ByteBuffer getNewFrame() throws InterruptedException {
+        this._newFrameBuf = this.getNewFrame(this._newFrameBuf);
+        return this._newFrameBuf;
+    }
+
+    // the same, copied into the caller's buffer when it's large enough, into
+    // a new one otherwise; the buffer holding the frame
+    public ByteBuffer getNewFrame(ByteBuffer into) throws InterruptedException {
+        FrameRing.Hold hold = this._ring.hold();
+        try {
+            ByteBuffer buf = this._awaitNew(hold).buf;
+            if ((into == null) || (into.capacity() < buf.remaining())) {
+                into = ByteBuffer.allocateDirect(buf.remaining());
+            }
+            into.clear();
+            into.order(buf.order());
+            into.put(buf.duplicate());
+            into.flip();
+            return into;
+        } finally {
+            hold.release();
+        }
+    }
+
+    // the reader capturing the screen, null when there's none
+    public static SurfaceFrameReader active() {
+        return SurfaceFrameReader._active;
+    }
+
+    private SurfaceFrame _awaitNew(FrameRing.Hold hold) throws InterruptedException {
+        long availCnt = this._availCnt.get();
+        while (true) {
+            SurfaceFrame frame = hold.take();
+            if ((frame != null) && (frame.availCnt >= availCnt)) {
+                return frame;
+            }
+            // leaves the GL thread a slot to read into
+            hold.release();
+            synchronized (this._glThreadMonitor) {
+                // the GL thread reads under the monitor, no read is under way here
+                SurfaceFrame latest = this._ring.latest();
+                if ((latest == null) || (latest.availCnt < availCnt)) {
+                    this._readRequest = true;
+                    this._glThreadMonitor.notify();
+                }
+            }
+            synchronized (this._frameReadSyncObj) {
+                frame = hold.take();
+                if ((frame != null) && (frame.availCnt >= availCnt)) {
+                    return frame;
+                }
+                hold.release();
+                // asks again if the read was skipped, every slot held by other consumers
+                this._frameReadSyncObj.wait(READ_RETRY_MS);
             }
-            return this._pic;
         }
     }
 
@@ -58,9 +160,13 @@ public class SurfaceFrameReader implements SurfaceTexture.OnFrameAvailableListen
         }
 
         synchronized (_glThreadMonitor) {
+            this._availCnt.incrementAndGet();
+            this._availNs = System.nanoTime();
             this._newFrameAvailable = true;
             this._glThreadMonitor.notify();
         }
+
+        FrameAvailSignal.getInstance().signal();
     }
 
     public void waitForFirstFrame() throws InterruptedException {
@@ -86,32 +192,54 @@ public class SurfaceFrameReader implements SurfaceTexture.OnFrameAvailableListen
                     break;
                 }
 
-                try {
-                    this._glThreadMonitor.wait();
-                } catch (InterruptedException e) {
-                    this._log.debug("InterruptedException thrown from wait() in gl loop");
-                    Thread.currentThread().interrupt();
-                    break;
+                if (!this._newFrameAvailable && !this._readRequest) {
+                    try {
+                        this._glThreadMonitor.wait();
+                    } catch (InterruptedException e) {
+                        this._log.debug("InterruptedException thrown from wait() in gl loop");
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
                 }
 
+                // the texture latches the newest frame, so at least this many are in
+                long availCnt = this._availCnt.get();
+                long availNs = this._availNs;
                 if (this._newFrameAvailable) {
                     this._gloss.onFrameAvailable();
                     this._newFrameAvailable = false;
+                    if (this._consumers.get() > 0) {
+                        this._readRequest = true;
+                    }
                 }
 
                 if (this._readRequest) {
                     this._readRequest = false;
-                    this._pic = this._gloss.readPixels();
-                    synchronized (this._readCompleteSyncObj) {
-                        this._readComplete = true;
-                        this._readCompleteSyncObj.notify();
-                    }
+                    this._readFrame(availCnt, availNs);
                 }
             }
         }
         this._log.debug("glThreadBody loop is complete, returning from _glThreadBody()");
     }
 
+    private void _readFrame(long availCnt, long availNs) {
+        ByteBuffer pixels = this._gloss.readPixels();
+        pixels.rewind();
+        ByteBuffer buf = this._ring.writeSlot(pixels.remaining());
+        if (buf == null) {
+            this._log.debug("every frame slot is held, frame not read");
+            return;
+        }
+        buf.order(pixels.order());
+        buf.put(pixels);
+        pixels.rewind();
+        this._ring.publish(availNs, availCnt);
+
+        synchronized (this._frameReadSyncObj) {
+            this._frameReadSyncObj.notifyAll();
+        }
+    }
+
     private void _glThreadExcpHndlr(Thread t, Throwable e) {
         this._log.error("exception in SurfaceFrameReader.glThreadBody. stack trace follows");
         this._log.error(Utils.getExcpText(e));
@@ -168,9 +296,13 @@ public class SurfaceFrameReader implements SurfaceTexture.OnFrameAvailableListen
         this._scrH = scrH;
         this._setUpGlThrd();
         this._setUpFrameAvailThrd();
+        SurfaceFrameReader._active = this;
     }
 
     public void shutdown() throws ScreenCaptureShutdownException {
+        if (SurfaceFrameReader._active == this) {
+            SurfaceFrameReader._active = null;
+        }
         if (this._glThread != null) {
             synchronized (this._glThreadMonitor) {
                 this._glThread.interrupt();
@@ -0,0 +1,115 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclocate.Point;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public class TwoDBasicSumCrossJ implements ITwoDMatcher {
+    private final int _chanErrToler;
+    private final int _maxResults;
+    private int _falseMatches;
+    private int[] _sums = new int[0];
+    private int[] _rowPrefix = new int[0];
+
+    public TwoDBasicSumCrossJ(int chanErrToler) {
+        this(chanErrToler, RK2DCrossJ.MAX_RESULTS);
+    }
+
+    public TwoDBasicSumCrossJ(int chanErrToler, int maxResults) {
+        this._chanErrToler = chanErrToler;
+        this._maxResults = MatcherUtils.chkMaxResults(maxResults);
+    }
+
+    public Set<Point> match(PicData pic, PicData pat) {
+        this._falseMatches = 0;
+        Set<Point> matches = new LinkedHashSet<>();
+
+        int cw = pic.width;
+        int ch = pic.height;
+        int pw = pat.width;
+        int ph = pat.height;
+        if ((pw > cw) || (ph > ch)) {
+            return matches;
+        }
+
+        int[] canv = pic.rgba;
+        int[] patPx = pat.rgba;
+        int toler = this._chanErrToler;
+        // row sums cover the anchor only, start locations stay those the whole pattern fits
+        MatcherUtils.Anchor a = MatcherUtils.anchor(pat);
+        int aw = a.w;
+        int ah = a.h;
+        int sumsW = cw - aw + 1;
+
+        int[] patSums = new int[ah];
+        for (int r = 0; r < ah; r++) {
+            int s = 0;
+            for (int x = a.x; x < (a.x + aw); x++) {
+                s += MatcherUtils.gray(patPx[((a.y + r) * pw) + x]);
+            }
+            patSums[r] = s / aw;
+        }
+
+        // stored column-major, [ax * ch + y], so the candidate scan below reads sequentially
+        int[] sums = this._sumsBuf(sumsW * ch);
+        int[] prefix = this._prefixBuf(cw + 1);
+        for (int y = 0; y < ch; y++) {
+            int rowOff = y * cw;
+            for (int x = 0; x < cw; x++) {
+                prefix[x + 1] = prefix[x] + MatcherUtils.gray(canv[rowOff + x]);
+            }
+            for (int ax = 0; ax < sumsW; ax++) {
+                sums[(ax * ch) + y] = (prefix[ax + aw] - prefix[ax]) / aw;
+            }
+        }
+
+        int maxStartRow = ch - ph;
+        for (int sx = 0; sx <= (cw - pw); sx++) {
+            int colOff = ((sx + a.x) * ch) + a.y;
+            nextStartRow:
+            for (int sy = 0; sy <= maxStartRow; sy++) {
+                for (int r = 0; r < ah; r++) {
+                    if (Math.abs(sums[colOff + sy + r] - patSums[r]) > toler) {
+                        continue nextStartRow;
+                    }
+                }
+
+                if (MatcherUtils.confirm(canv, cw, patPx, pw, ph, sx, sy, toler, a.masked)) {
+                    matches.add(new Point(sx, sy));
+                    if (matches.size() == this._maxResults) {
+                        return matches;
+                    }
+                } else {
+                    this._falseMatches++;
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    public int getFalseMatchesCount() {
+        return this._falseMatches;
+    }
+
+    private int[] _sumsBuf(int len) {
+        if (this._sums.length < len) {
+            this._sums = new int[len];
+        }
+        return this._sums;
+    }
+
+    private int[] _prefixBuf(int len) {
+        if (this._rowPrefix.length < len) {
+            this._rowPrefix = new int[len];
+        }
+        return this._rowPrefix;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TwoDBasicSumCrossJ(%d)", this._chanErrToler);
+    }
+}
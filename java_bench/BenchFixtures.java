@@ -0,0 +1,57 @@
+package com.drscbt.shared.bench;
+
+import com.drscbt.shared.assetloader.ApkJarAssetLoaderProv;
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclib.PlatformImgToolsExtProv;
+import com.drscbt.shared.utils.Utils;
+
+import java.util.Random;
+
+public class BenchFixtures {
+    public static final String FIXTURES_DIR = "match_test_pics";
+
+    public static PicData loadPic(String name) {
+        String picName = String.format("%s/%s", FIXTURES_DIR, name);
+        return PlatformImgToolsExtProv.getTools().fromExt(ApkJarAssetLoaderProv.getLoader().load(picName), picName);
+    }
+
+    public static byte[] loadBytes(String name) {
+        String resName = String.format("%s/%s", FIXTURES_DIR, name);
+        return Utils.streamToByteArr(ApkJarAssetLoaderProv.getLoader().load(resName));
+    }
+
+    // "WxH" as used by the size grid @Params
+    public static int[] parseSize(String size) {
+        String[] parts = size.split("x");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException(String.format("bad size \"%s\", expected WxH", size));
+        }
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    // levels limits distinct values per channel, fewer levels give more sum/hash collisions
+    public static PicData genPic(int w, int h, int levels, long seed) {
+        PicData pic = PicData.create(w, h);
+        Random rnd = new Random(seed);
+        for (int i = 0; i < pic.rgba.length; i++) {
+            int r = (rnd.nextInt(levels) * 255) / levels;
+            int g = (rnd.nextInt(levels) * 255) / levels;
+            int b = (rnd.nextInt(levels) * 255) / levels;
+            pic.rgba[i] = (r << 24) | (g << 16) | (b << 8) | PicData.A_OPAQUE;
+        }
+        return pic;
+    }
+
+    // screen-like canvas: flat background with pat planted every stepX/stepY pixels
+    public static PicData genCanvas(int w, int h, PicData pat, int stepX, int stepY, long seed) {
+        PicData pic = genPic(w, h, 4, seed);
+        for (int py = 0; (py + pat.height) <= h; py += stepY) {
+            for (int px = 0; (px + pat.width) <= w; px += stepX) {
+                for (int y = 0; y < pat.height; y++) {
+                    System.arraycopy(pat.rgba, y * pat.width, pic.rgba, ((py + y) * w) + px, pat.width);
+                }
+            }
+        }
+        return pic;
+    }
+}
@@ -0,0 +1,26 @@
+package com.drscbt.shared.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// runs the benchmarks matching args (all when none given) with the gc profiler,
+// so every result carries throughput, sampled latency percentiles and gc.alloc.rate.norm
+public class BenchMain {
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder ob = new OptionsBuilder();
+        if (args.length == 0) {
+            ob.include("com\\.drscbt\\.shared\\..*Bench");
+        }
+        for (String a : args) {
+            ob.include(a);
+        }
+        Options opts = ob
+            .addProfiler(GCProfiler.class)
+            .jvmArgsAppend("-Djava.library.path=" + System.getProperty("java.library.path"))
+            .build();
+        new Runner(opts).run();
+    }
+}
@@ -0,0 +1,70 @@
+package com.drscbt.shared.color;
+
+import com.drscbt.shared.bench.BenchFixtures;
+import com.drscbt.shared.piclib.Pic8;
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclib.PicGrayscale;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColorBench {
+    // either a fixture file name or a WxH size of a generated picture
+    @Param({"noise-checkboxes.png", "1080x2400"})
+    public String source;
+
+    private PicData _pic;
+    private ColorCondense.TruncConfig _tc;
+    private int[] _hsv;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (this.source.contains(".")) {
+            this._pic = BenchFixtures.loadPic(this.source);
+        } else {
+            int[] s = BenchFixtures.parseSize(this.source);
+            this._pic = BenchFixtures.genPic(s[0], s[1], 256, 3);
+        }
+        this._tc = ColorCondense.TruncConfig.getDefault();
+        this._hsv = new int[this._pic.rgba.length];
+    }
+
+    @Benchmark
+    public Pic8 condenseJ() {
+        return ColorCondense.condenseJ(this._pic, this._tc);
+    }
+
+    @Benchmark
+    public Pic8 condenseNa() {
+        return ColorCondense.condenseNa(this._pic, this._tc);
+    }
+
+    @Benchmark
+    public PicGrayscale grayscale() {
+        return ColorConv.grayscale(this._pic);
+    }
+
+    @Benchmark
+    public PicGrayscale grayscaleNa() {
+        return ColorConv.grayscaleNa(this._pic);
+    }
+
+    @Benchmark
+    public int[] rgbArrToHsv255J() {
+        ColorConv.rgbArrToHsv255J(this._pic.rgba, this._hsv);
+        return this._hsv;
+    }
+
+    @Benchmark
+    public int[] rgbArrToHsv255Na() {
+        ColorConv.rgbArrToHsv255Na(this._pic.rgba, this._hsv);
+        return this._hsv;
+    }
+}
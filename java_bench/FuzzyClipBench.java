@@ -0,0 +1,52 @@
+package com.drscbt.shared.piclib;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FuzzyClipBench {
+    @Param({"32x8", "240x64"})
+    public String size;
+
+    private FuzzyComparablePicClip _a;
+    private FuzzyComparablePicClip _similar;
+    private FuzzyComparablePicClip _differentAtEnd;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String[] s = this.size.split("x");
+        int w = Integer.parseInt(s[0]);
+        int h = Integer.parseInt(s[1]);
+        PicGrayscale a = PicGrayscale.create(w, h);
+        new Random(5).nextBytes(a.data);
+        PicGrayscale similar = PicGrayscale.create(w, h);
+        PicGrayscale differentAtEnd = PicGrayscale.create(w, h);
+        for (int i = 0; i < a.data.length; i++) {
+            int v = a.data[i] & 0xFF;
+            similar.data[i] = (byte) ((v < 128) ? (v + FuzzyComparablePicClip.SIMILAR) : (v - FuzzyComparablePicClip.SIMILAR));
+            differentAtEnd.data[i] = a.data[i];
+        }
+        differentAtEnd.data[a.data.length - 1] ^= (byte) 0x80;
+
+        this._a = new FuzzyComparablePicClip(a);
+        this._similar = new FuzzyComparablePicClip(similar);
+        this._differentAtEnd = new FuzzyComparablePicClip(differentAtEnd);
+    }
+
+    @Benchmark
+    public boolean equalsSimilar() {
+        return this._a.equals(this._similar);
+    }
+
+    @Benchmark
+    public boolean equalsDifferentAtEnd() {
+        return this._a.equals(this._differentAtEnd);
+    }
+}
@@ -0,0 +1,69 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.bench.BenchFixtures;
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclocate.Point;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatcherBench {
+    static final int FUZZY_ERR = 12;
+    static final double NCC_THRESHOLD = 0.9;
+
+    @Param({"720x1280", "1080x2400"})
+    public String canvas;
+
+    @Param({"16x16", "48x32", "128x96"})
+    public String pattern;
+
+    @Param({"RK2DCrossNa", "TwoDBasicSumCrossNa", "RK2DCrossJ", "TwoDBasicSumCrossJ", "PyramidCrossJ", "SummedAreaCrossJ", "NccFftCrossJ"})
+    public String impl;
+
+    private ITwoDMatcher _matcher;
+    private PicData _pic;
+    private PicData _pat;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int[] cs = BenchFixtures.parseSize(this.canvas);
+        int[] ps = BenchFixtures.parseSize(this.pattern);
+        this._pat = BenchFixtures.genPic(ps[0], ps[1], 255, 1);
+        this._pic = BenchFixtures.genCanvas(cs[0], cs[1], this._pat, ps[0] * 3, ps[1] * 4, 2);
+        this._matcher = matcherByName(this.impl);
+    }
+
+    @Benchmark
+    public Set<Point> match() {
+        return this._matcher.match(this._pic, this._pat);
+    }
+
+    static ITwoDMatcher matcherByName(String name) {
+        switch (name) {
+            case "RK2DCrossNa":
+                return new RK2DCrossNa();
+            case "TwoDBasicSumCrossNa":
+                return new TwoDBasicSumCrossNa(FUZZY_ERR);
+            case "RK2DCrossJ":
+                return new RK2DCrossJ();
+            case "TwoDBasicSumCrossJ":
+                return new TwoDBasicSumCrossJ(FUZZY_ERR);
+            case "PyramidCrossJ":
+                return new PyramidCrossJ(FUZZY_ERR);
+            case "SummedAreaCrossJ":
+                return new SummedAreaCrossJ(FUZZY_ERR);
+            case "NccFftCrossJ":
+                return new NccFftCrossJ(NCC_THRESHOLD);
+            default:
+                throw new IllegalArgumentException(String.format("unknown matcher %s", name));
+        }
+    }
+}
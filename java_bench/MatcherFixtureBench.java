@@ -0,0 +1,46 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.bench.BenchFixtures;
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclocate.Point;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatcherFixtureBench {
+    // canvas:pattern pairs from the CombinedPicMatchingTest fixtures
+    @Param({
+        "micro_canvas.ppm:micro_pat.ppm",
+        "andr-noise-canvas-1.png:andr-noise-pattern.png",
+        "noise-checkboxes.png:checkbox_1.png"
+    })
+    public String fixture;
+
+    @Param({"RK2DCrossNa", "TwoDBasicSumCrossNa", "RK2DCrossJ", "TwoDBasicSumCrossJ", "PyramidCrossJ", "SummedAreaCrossJ", "NccFftCrossJ"})
+    public String impl;
+
+    private ITwoDMatcher _matcher;
+    private PicData _pic;
+    private PicData _pat;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String[] names = this.fixture.split(":");
+        this._pic = BenchFixtures.loadPic(names[0]);
+        this._pat = BenchFixtures.loadPic(names[1]);
+        this._matcher = MatcherBench.matcherByName(this.impl);
+    }
+
+    @Benchmark
+    public Set<Point> match() {
+        return this._matcher.match(this._pic, this._pat);
+    }
+}
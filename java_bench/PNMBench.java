@@ -0,0 +1,82 @@
+package com.drscbt.shared.piclib.pnm;
+
+import com.drscbt.shared.bench.BenchFixtures;
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.utils.Utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PNMBench {
+    @Param({"64x48", "1080x2400"})
+    public String size;
+
+    private byte[] _p3;
+    private byte[] _p6;
+    private byte[] _fixture;
+    private PicData _out;
+    private PicData _fixtureOut;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int[] s = BenchFixtures.parseSize(this.size);
+        PicData src = BenchFixtures.genPic(s[0], s[1], 256, 4);
+        this._p3 = _encode(src, PNMType.PLAIN_COLOR_PPM_P_3);
+        this._p6 = _encode(src, PNMType.RAW_COLOR_PPM_P_6);
+        this._out = PicData.create(s[0], s[1]);
+
+        this._fixture = BenchFixtures.loadBytes("micro_canvas.ppm");
+        PicData fixturePic = BenchFixtures.loadPic("micro_canvas.ppm");
+        this._fixtureOut = PicData.create(fixturePic.width, fixturePic.height);
+    }
+
+    @Benchmark
+    public PicData readP3() {
+        PNM.getReader(new ByteArrayInputStream(this._p3)).readInto(this._out);
+        return this._out;
+    }
+
+    @Benchmark
+    public PicData readP6() {
+        PNM.getReader(new ByteArrayInputStream(this._p6)).readInto(this._out);
+        return this._out;
+    }
+
+    @Benchmark
+    public PicData readFixture() {
+        PNM.getReader(new ByteArrayInputStream(this._fixture)).readInto(this._fixtureOut);
+        return this._fixtureOut;
+    }
+
+    private static byte[] _encode(PicData pic, PNMType type) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        String header = String.format("P%d\n%d %d\n255\n", type.pId, pic.width, pic.height);
+        byte[] hb = Utils.strEncode(header, "latin1");
+        bos.write(hb, 0, hb.length);
+        StringBuilder sb = new StringBuilder();
+        for (int px : pic.rgba) {
+            int r = px >>> 24;
+            int g = (px >>> 16) & 0xFF;
+            int b = (px >>> 8) & 0xFF;
+            if (type == PNMType.RAW_COLOR_PPM_P_6) {
+                bos.write(r);
+                bos.write(g);
+                bos.write(b);
+            } else {
+                sb.append(r).append(' ').append(g).append(' ').append(b).append('\n');
+            }
+        }
+        byte[] plain = Utils.strEncode(sb.toString(), "latin1");
+        bos.write(plain, 0, plain.length);
+        return bos.toByteArray();
+    }
+}
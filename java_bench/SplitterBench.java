@@ -0,0 +1,34 @@
+package com.drscbt.shared.piclocate.split;
+
+import com.drscbt.shared.bench.BenchFixtures;
+import com.drscbt.shared.piclib.PicData;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplitterBench {
+    private PicData _pic;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this._pic = BenchFixtures.loadPic("split-double-real.png");
+    }
+
+    // same setup as TrivialSplitTest.realCasedoubleSplitVThenHSegmLengthConstraint
+    @Benchmark
+    public Set<Segment2D> doubleSplit() {
+        return new TrivialSplitter().doubleSplit(
+            this._pic, null, 0xFFFFFF00, 15, 1, 0,
+            TrivialSplitter.Axis.V, TrivialSplitter.Axis.H,
+            238, 238, 238, 238
+        );
+    }
+}
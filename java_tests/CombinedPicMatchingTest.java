@@ -5,7 +5,11 @@ import com.drscbt.shared.color.Compare;
 import com.drscbt.shared.piclib.PicData;
 import com.drscbt.shared.piclocate.srchpattern.PicLoader;
 import com.drscbt.shared.piclocate.twodmatcher.ITwoDMatcher;
+import com.drscbt.shared.piclocate.twodmatcher.PyramidCrossJ;
+import com.drscbt.shared.piclocate.twodmatcher.RK2DCrossJ;
 import com.drscbt.shared.piclocate.twodmatcher.RK2DCrossNa;
+import com.drscbt.shared.piclocate.twodmatcher.SummedAreaCrossJ;
+import com.drscbt.shared.piclocate.twodmatcher.TwoDBasicSumCrossJ;
 import com.drscbt.shared.piclocate.twodmatcher.TwoDBasicSumCrossNa;
 import com.drscbt.shared.utils.Measure;
 
@@ -26,6 +30,7 @@ public class CombinedPicMatchingTest {
     public void exactMatches() {
         List<ITwoDMatcher> impls = new LinkedList<>();
         impls.add(new RK2DCrossNa());
+        impls.add(new RK2DCrossJ());
 
         List<TestDefinition> testSet = this._getCleanTestsDefinitions();
         for (ITwoDMatcher matcherImplementation : impls) {
@@ -39,6 +44,9 @@ public class CombinedPicMatchingTest {
     public void fuzzyMatches() {
         List<ITwoDMatcher> matcherImpls = new LinkedList<>();
         matcherImpls.add(new TwoDBasicSumCrossNa(FUZZY_ERR));
+        matcherImpls.add(new TwoDBasicSumCrossJ(FUZZY_ERR));
+        matcherImpls.add(new PyramidCrossJ(FUZZY_ERR));
+        matcherImpls.add(new SummedAreaCrossJ(FUZZY_ERR));
 
         List<TestDefinition> testDefs = _getFuzzyTestDefinitions();
         for (ITwoDMatcher matcherImpl : matcherImpls) {
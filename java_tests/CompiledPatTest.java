@@ -0,0 +1,144 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.FramePlanes;
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclib.TestPics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompiledPatTest {
+    private static final int FUZZY_ERR = 12;
+
+    @Test
+    public void sameAsNotCompiled() {
+        for (int seed = 0; seed < 8; seed++) {
+            Random rnd = new Random(seed);
+            PicData pat = TestPics.random(3 + rnd.nextInt(12), 3 + rnd.nextInt(10), seed + 50);
+            if ((seed % 2) == 1) {
+                pat.rgba[rnd.nextInt(pat.rgba.length)] &= 0xFFFFFF00;
+            }
+            try (CompiledPat cp = new CompiledPat(pat)) {
+                // one pattern over several frames
+                for (int frame = 0; frame < 3; frame++) {
+                    PicData pic = TestPics.random(100 + rnd.nextInt(200), 80 + rnd.nextInt(100), (seed * 10) + frame);
+                    for (int k = 0; k < 3; k++) {
+                        TestPics.plant(pic, pat, rnd.nextInt(pic.width - pat.width + 1),
+                            rnd.nextInt(pic.height - pat.height + 1));
+                    }
+                    FramePlanes planes = FramePlanes.forFrame(pic, (seed * 10) + frame);
+
+                    RK2DCrossNa rk = new RK2DCrossNa();
+                    NativePicSearchResults exp = new NativePicSearchResults();
+                    exp.matches = rk.match(pic, pat);
+                    exp.collisionsCnt = rk.getFalseMatchesCount();
+                    this._assertSame(exp, cp.rkMatch(pic));
+                    this._assertSame(exp, cp.rkMatch(planes));
+
+                    TwoDBasicSumCrossNa bs = new TwoDBasicSumCrossNa(FUZZY_ERR);
+                    exp.matches = bs.match(pic, pat);
+                    exp.collisionsCnt = bs.getFalseMatchesCount();
+                    this._assertSame(exp, cp.bsMatch(pic, FUZZY_ERR));
+                    this._assertSame(exp, cp.bsMatch(planes, FUZZY_ERR));
+                    assertTrue(exp.matches.size() >= 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void maskedAnchorHashedOnce() {
+        PicData pat = TestPics.random(12, 9, 3);
+        // transparent border, the anchor is the 10x7 inside
+        for (int y = 0; y < pat.height; y++) {
+            for (int x = 0; x < pat.width; x++) {
+                if ((x == 0) || (y == 0) || (x == (pat.width - 1)) || (y == (pat.height - 1))) {
+                    pat.rgba[(y * pat.width) + x] &= 0xFFFFFF00;
+                }
+            }
+        }
+        PicData pic = TestPics.random(200, 150, 4);
+        TestPics.plant(pic, pat, 0, 0);
+        TestPics.plant(pic, pat, 60, 70);
+        FramePlanes planes = FramePlanes.forFrame(pic, 4);
+
+        SearchPhaseStats.setEnabled(true);
+        try (CompiledPat cp = new CompiledPat(pat)) {
+            for (int i = 0; i < 2; i++) {
+                NativePicSearchResults rkRes = cp.rkMatch(planes);
+                assertEquals(new RK2DCrossNa().match(pic, pat), rkRes.matches);
+                assertEquals(2, rkRes.matches.size());
+                assertEquals(0, rkRes.phaseStats[SearchPhaseStats.CONV_PXS]);
+
+                NativePicSearchResults bsRes = cp.bsMatch(planes, FUZZY_ERR);
+                assertEquals(new TwoDBasicSumCrossNa(FUZZY_ERR).match(pic, pat), bsRes.matches);
+                assertEquals(0, bsRes.phaseStats[SearchPhaseStats.CONV_PXS]);
+            }
+        } finally {
+            SearchPhaseStats.setEnabled(false);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void patternLargerThanFrame() {
+        try (CompiledPat cp = new CompiledPat(TestPics.random(8, 4, 1))) {
+            cp.rkMatch(TestPics.random(7, 20, 2));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void planeLengthChecked() {
+        long handle = CompiledPat.compileCall(TestPics.random(4, 4, 1).rgba, 4);
+        try {
+            CompiledPat.bsMatchCall(handle, new int[400], new byte[399], 20, FUZZY_ERR);
+        } finally {
+            CompiledPat.freeCall(handle);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void raggedFrameRejected() {
+        long handle = CompiledPat.compileCall(TestPics.random(4, 4, 1).rgba, 4);
+        try {
+            CompiledPat.rkMatchCall(handle, new int[401], null, 20);
+        } finally {
+            CompiledPat.freeCall(handle);
+        }
+    }
+
+    @Test
+    public void closeWaitsForSearch() throws InterruptedException {
+        PicData pic = TestPics.random(1200, 900, 1);
+        PicData pat = TestPics.random(4, 4, 2);
+        CompiledPat cp = new CompiledPat(pat);
+        Thread closer = new Thread(cp::close);
+        for (int i = 0; i < 20; i++) {
+            try {
+                cp.rkMatch(pic);
+                cp.bsMatch(pic, FUZZY_ERR);
+            } catch (IllegalStateException e) {
+                break;
+            }
+            if (i == 0) {
+                closer.start();
+            }
+        }
+        closer.join();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closed() {
+        CompiledPat cp = new CompiledPat(TestPics.random(4, 4, 1));
+        cp.close();
+        cp.close();
+        cp.rkMatch(TestPics.random(20, 20, 2));
+    }
+
+    private void _assertSame(NativePicSearchResults exp, NativePicSearchResults res) {
+        assertEquals(exp.matches, res.matches);
+        assertEquals(exp.collisionsCnt, res.collisionsCnt);
+    }
+}
@@ -0,0 +1,75 @@
+package com.drscbt.shared.piclib;
+
+import com.drscbt.shared.color.ColorCondense;
+import com.drscbt.shared.color.ColorConv;
+import com.drscbt.shared.utils.Measure;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class DirectPicTest {
+    private Logger _log = LoggerFactory.getLogger(DirectPicTest.class);
+
+    @Test
+    public void directConversionsMatchArrays() {
+        PicData pic = TestPics.random(97, 61, 1);
+        DirectPic dp = DirectPic.fromPicData(pic);
+        ColorCondense.TruncConfig tc = ColorCondense.TruncConfig.getDefault();
+
+        assertArrayEquals(pic.rgba, dp.toPicData().rgba);
+        assertArrayEquals(ColorCondense.condenseNa(pic, tc).data, ColorCondense.condenseNa(dp, tc).data);
+        assertArrayEquals(ColorConv.grayscaleNa(pic).data, ColorConv.grayscaleNa(dp).data);
+    }
+
+    @Test
+    public void glRgbaBytesToPixels() {
+        ByteBuffer gl = ByteBuffer.allocateDirect(2 * 4);
+        gl.put(new byte[]{(byte) 0x11, (byte) 0x22, (byte) 0x33, (byte) 0xFF});
+        gl.put(new byte[]{(byte) 0xA0, (byte) 0xB0, (byte) 0xC0, (byte) 0x80});
+
+        PicData pic = DirectPic.wrapGlRgba(gl, 2, 1).toPicData();
+
+        assertEquals(0x112233FF, pic.rgba[0]);
+        assertEquals(0xA0B0C080, pic.rgba[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void heapBufferRejected() {
+        new DirectPic(ByteBuffer.allocate(16), 2, 2);
+    }
+
+    @Test
+    public void copyOverheadBenchmark() {
+        PicData pic = TestPics.random(1080, 2400, 2);
+        DirectPic dp = DirectPic.fromPicData(pic);
+        ColorCondense.TruncConfig tc = ColorCondense.TruncConfig.getDefault();
+        int rounds = 20;
+
+        for (int i = 0; i < 3; i++) {
+            ColorCondense.condenseNa(pic, tc);
+            ColorCondense.condenseNa(dp, tc);
+        }
+
+        Measure arrM = new Measure();
+        for (int i = 0; i < rounds; i++) {
+            ColorCondense.condenseNa(pic, tc);
+            ColorConv.grayscaleNa(pic);
+        }
+        arrM.done();
+
+        Measure directM = new Measure();
+        for (int i = 0; i < rounds; i++) {
+            ColorCondense.condenseNa(dp, tc);
+            ColorConv.grayscaleNa(dp);
+        }
+        directM.done();
+
+        this._log.debug(String.format("bnchmrk %-22s %-18s %6.2f", "1080x2400 x" + rounds, "int[]", arrM.took()));
+        this._log.debug(String.format("bnchmrk %-22s %-18s %6.2f", "1080x2400 x" + rounds, "direct", directM.took()));
+    }
+}
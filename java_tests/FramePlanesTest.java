@@ -0,0 +1,68 @@
+package com.drscbt.shared.piclib;
+
+import com.drscbt.shared.color.ColorCondense;
+import com.drscbt.shared.color.ColorConv;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FramePlanesTest {
+    @Test
+    public void planesBoundToSerial() {
+        PicData pic = TestPics.random(40, 30, 1);
+
+        FramePlanes a = FramePlanes.forFrame(pic, 1);
+        FramePlanes b = FramePlanes.forFrame(pic, 1);
+        assertSame(a, b);
+        assertSame(a.grayscale(), b.grayscale());
+        assertSame(a.condensed(), b.condensed());
+
+        FramePlanes c = FramePlanes.forFrame(pic, 2);
+        assertNotSame(a, c);
+        assertNotSame(a.grayscale(), c.grayscale());
+    }
+
+    @Test
+    public void planesMatchDirectConversion() {
+        PicData pic = TestPics.random(40, 30, 2);
+        FramePlanes planes = FramePlanes.forFrame(pic, 10);
+
+        assertArrayEquals(ColorConv.grayscale(pic).data, planes.grayscale().data);
+        assertArrayEquals(ColorConv.grayscaleNa(pic).data, planes.grayscaleNa().data);
+        assertArrayEquals(ColorCondense.condenseNa(pic, ColorCondense.TruncConfig.getDefault()).data,
+            planes.condensed().data);
+
+        int[] hsv = new int[pic.rgba.length];
+        ColorConv.rgbArrToHsv255Na(pic.rgba, hsv);
+        assertArrayEquals(hsv, planes.hsv());
+    }
+
+    @Test
+    public void replaceWithPrecomputedHsv() {
+        PicData pic = TestPics.random(40, 30, 3);
+        PicData exp = pic.copy();
+        PicData act = pic.copy();
+
+        PicOps.replace(exp, 0, 255, 1, 255, 0, 255, 0xFFFFFFFF);
+        PicOps.replace(act, FramePlanes.forFrame(pic, 20).hsv(), 0, 255, 1, 255, 0, 255, 0xFFFFFFFF);
+        assertArrayEquals(exp.rgba, act.rgba);
+    }
+
+    @Test
+    public void grayscaleRegionCopy() {
+        PicData pic = TestPics.random(40, 30, 4);
+        PicGrayscale exp = PicGrayscale.create(7, 5);
+        ColorConv.grayscale(pic, exp, 3, 2);
+
+        PicGrayscale act = PicGrayscale.create(7, 5);
+        PicOps.copy(FramePlanes.forFrame(pic, 30).grayscale(), act, 3, 2);
+        assertArrayEquals(exp.data, act.data);
+    }
+
+    @Test
+    public void grayscaleIfConverted() {
+        FramePlanes planes = FramePlanes.forFrame(TestPics.random(40, 30, 5), 40);
+        assertNull(planes.grayscaleIfConverted());
+        assertSame(planes.grayscale(), planes.grayscaleIfConverted());
+    }
+}
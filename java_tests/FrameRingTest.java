@@ -0,0 +1,135 @@
+package com.drscbt.screencapture;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class FrameRingTest {
+    private static final int FRAME_BYTES = 4096;
+
+    @Test
+    public void latestWins() {
+        FrameRing ring = new FrameRing(3);
+        FrameRing.Hold hold = ring.hold();
+        assertNull(hold.take());
+
+        this._write(ring, 7);
+        this._write(ring, 8);
+        SurfaceFrame frame = hold.take();
+        assertEquals(2, frame.serial);
+        assertEquals(8, frame.buf.getInt(0));
+        assertEquals(FRAME_BYTES, frame.buf.remaining());
+    }
+
+    @Test
+    public void heldFrameNotOverwritten() {
+        FrameRing ring = new FrameRing(3);
+        FrameRing.Hold hold = ring.hold();
+        this._write(ring, 1);
+        SurfaceFrame held = hold.take();
+        for (int i = 2; i < 50; i++) {
+            this._write(ring, i);
+            assertEquals(1, held.buf.getInt(0));
+        }
+        assertEquals(49, hold.take().buf.getInt(0));
+    }
+
+    @Test
+    public void holdsPerConsumer() {
+        FrameRing ring = new FrameRing(4);
+        FrameRing.Hold first = ring.hold();
+        FrameRing.Hold second = ring.hold();
+        this._write(ring, 1);
+        SurfaceFrame firstHeld = first.take();
+        this._write(ring, 2);
+        // the second consumer moving its hold doesn't free the first one's frame
+        SurfaceFrame secondHeld = second.take();
+        for (int i = 3; i < 50; i++) {
+            this._write(ring, i);
+            if ((i % 5) == 0) {
+                secondHeld = second.take();
+            }
+            assertEquals(1, firstHeld.buf.getInt(0));
+            assertEquals(secondHeld.serial, secondHeld.buf.getInt(0));
+        }
+
+        // three consumers on three frames, the latest in the fourth slot
+        FrameRing.Hold third = ring.hold();
+        first.release();
+        second.release();
+        this._write(ring, 50);
+        first.take();
+        this._write(ring, 51);
+        second.take();
+        this._write(ring, 52);
+        third.take();
+        this._write(ring, 53);
+        assertNull(ring.writeSlot(FRAME_BYTES));
+        third.release();
+        assertNotNull(ring.writeSlot(FRAME_BYTES));
+    }
+
+    @Test
+    public void slotsAllocatedOnce() {
+        FrameRing ring = new FrameRing(3);
+        FrameRing.Hold hold = ring.hold();
+        Set<ByteBuffer> bufs = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < 30; i++) {
+            bufs.add(ring.writeSlot(FRAME_BYTES));
+            ring.publish(System.nanoTime(), i);
+            if ((i % 7) == 0) {
+                hold.take();
+            }
+        }
+        assertEquals(3, bufs.size());
+    }
+
+    @Test
+    public void concurrentHandoff() throws InterruptedException {
+        FrameRing ring = new FrameRing(3);
+        FrameRing.Hold hold = ring.hold();
+        this._write(ring, 1);
+        final int frames = 20000;
+        Thread writer = new Thread(() -> {
+            for (int i = 2; i <= frames; i++) {
+                this._write(ring, i);
+            }
+        });
+        writer.start();
+
+        int lastSerial = 0;
+        int taken = 0;
+        while (writer.isAlive() || (lastSerial < frames)) {
+            SurfaceFrame frame = hold.take();
+            assertTrue(frame.serial >= lastSerial);
+            // every int of the frame is its serial and stays so while held
+            for (int pass = 0; pass < 2; pass++) {
+                for (int off = 0; off < FRAME_BYTES; off += 4) {
+                    assertEquals(frame.serial, frame.buf.getInt(off));
+                }
+            }
+            lastSerial = frame.serial;
+            taken++;
+        }
+        writer.join();
+        assertTrue(taken > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooFewSlots() {
+        new FrameRing(2);
+    }
+
+    private void _write(FrameRing ring, int value) {
+        ByteBuffer buf = ring.writeSlot(FRAME_BYTES);
+        for (int off = 0; off < FRAME_BYTES; off += 4) {
+            buf.putInt(off, value);
+        }
+        ring.publish(System.nanoTime(), value);
+    }
+}
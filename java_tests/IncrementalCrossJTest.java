@@ -0,0 +1,81 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclib.TestPics;
+import com.drscbt.shared.piclocate.Point;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IncrementalCrossJTest {
+    private static final int FUZZY_ERR = 12;
+
+    @Test
+    public void unchangedFrameIsNotSearched() {
+        PicData pat = TestPics.random(11, 7, 3);
+        PicData pic = TestPics.random(400, 300, 103);
+        TestPics.plantGrid(pic, pat, 3);
+        IncrementalCrossJ inc = new IncrementalCrossJ(new TwoDBasicSumCrossJ(FUZZY_ERR));
+
+        ArrayList<Point> first = new ArrayList<>(inc.match(pic, pat));
+        assertEquals(400 * 300, inc.getSearchedArea());
+        assertFalse(first.isEmpty());
+
+        ArrayList<Point> second = new ArrayList<>(inc.match(pic.copy(), pat));
+        assertEquals(0, inc.getSearchedArea());
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void sameAsFullSearchOnChangingFrames() {
+        PicData pat = TestPics.random(13, 9, 5);
+        PicData pic = TestPics.random(400, 300, 105);
+        TestPics.plantGrid(pic, pat, 5);
+        IncrementalCrossJ incBs = new IncrementalCrossJ(new TwoDBasicSumCrossJ(FUZZY_ERR), 32, RK2DCrossJ.MAX_RESULTS);
+        IncrementalCrossJ incRk = new IncrementalCrossJ(new RK2DCrossJ(), 32, RK2DCrossJ.MAX_RESULTS);
+        Random rnd = new Random(5);
+
+        for (int frame = 0; frame < 40; frame++) {
+            assertEquals(new ArrayList<>(new TwoDBasicSumCrossJ(FUZZY_ERR).match(pic, pat)), new ArrayList<>(incBs.match(pic, pat)));
+            assertEquals(new ArrayList<>(new RK2DCrossJ().match(pic, pat)), new ArrayList<>(incRk.match(pic, pat)));
+            if (frame > 0) {
+                assertTrue(incBs.getSearchedArea() < (400 * 300));
+            }
+
+            // a few small changes per frame: noise boxes, planted and erased copies
+            pic = pic.copy();
+            for (int k = 0; k < 3; k++) {
+                int x = rnd.nextInt(pic.width - pat.width);
+                int y = rnd.nextInt(pic.height - pat.height);
+                switch (rnd.nextInt(3)) {
+                    case 0:
+                        TestPics.plant(pic, pat, x, y);
+                        break;
+                    case 1:
+                        for (int yy = 0; yy < 5; yy++) {
+                            for (int xx = 0; xx < 5; xx++) {
+                                pic.rgba[((y + yy) * pic.width) + x + xx] = (rnd.nextInt() & 0xFFFFFF00) | PicData.A_OPAQUE;
+                            }
+                        }
+                        break;
+                    default:
+                        pic.rgba[(y * pic.width) + x] ^= 0x40404000;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cappedResultsFallBackToFullSearch() {
+        PicData pat = PicData.create(4, 4);
+        PicData pic = PicData.create(120, 90);
+        IncrementalCrossJ inc = new IncrementalCrossJ(new RK2DCrossJ(50), 16, 50);
+        assertEquals(50, inc.match(pic, pat).size());
+        assertEquals(50, inc.match(pic.copy(), pat).size());
+        assertEquals(120 * 90, inc.getSearchedArea());
+    }
+}
@@ -0,0 +1,328 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.FramePlanes;
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclib.TestPics;
+import com.drscbt.shared.piclocate.Point;
+import com.drscbt.shared.utils.Measure;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class JavaMatchersTest {
+    private static final int FUZZY_ERR = 12;
+    private Logger _log = LoggerFactory.getLogger(JavaMatchersTest.class);
+
+    @Test
+    public void rkSameAsNative() {
+        for (int seed = 1; seed <= 6; seed++) {
+            PicData pat = TestPics.quantized(9 + seed, 5 + seed, seed * 31, 0);
+            PicData pic = this._mkScene(301, 187, pat, seed, 0);
+            this._assertSame(new RK2DCrossNa(), new RK2DCrossJ(), pic, pat, false);
+        }
+    }
+
+    @Test
+    public void bsSameAsNative() {
+        for (int seed = 1; seed <= 6; seed++) {
+            PicData pat = TestPics.quantized(9 + seed, 5 + seed, seed * 31, 0);
+            PicData pic = this._mkScene(301, 187, pat, seed, 6);
+            this._assertSame(new TwoDBasicSumCrossNa(FUZZY_ERR), new TwoDBasicSumCrossJ(FUZZY_ERR), pic, pat, true);
+        }
+    }
+
+    @Test
+    public void pyramidSameAsNative() {
+        for (int seed = 1; seed <= 6; seed++) {
+            PicData pat = TestPics.quantized(3 + (seed * 5), 2 + (seed * 4), seed * 31, 0);
+            PicData pic = this._mkScene(301, 187, pat, seed, 6);
+            this._assertSame(new TwoDBasicSumCrossNa(FUZZY_ERR), new PyramidCrossJ(FUZZY_ERR), pic, pat, false);
+        }
+        PicData flatPat = PicData.create(9, 7);
+        this._assertSame(new TwoDBasicSumCrossNa(FUZZY_ERR), new PyramidCrossJ(FUZZY_ERR), TestPics.quantized(120, 90, 3, 2), flatPat, false);
+    }
+
+    @Test
+    public void pyramidPlanesSameAsPic() {
+        PyramidCrossJ pyr = new PyramidCrossJ(FUZZY_ERR);
+        for (int seed = 1; seed <= 3; seed++) {
+            PicData patA = TestPics.quantized(6 + seed, 5, seed * 31, 0);
+            PicData patB = TestPics.quantized(4, 3 + seed, seed * 17, 0);
+            PicData pic = this._mkScene(301, 187, patA, seed, 6);
+            TestPics.plant(pic, patB, 40, 50);
+            FramePlanes planes = FramePlanes.forFrame(pic, seed);
+            // the levels built for patA are reused for patB on the same frame
+            assertEquals(new PyramidCrossJ(FUZZY_ERR).match(pic, patA), pyr.match(planes, patA));
+            assertEquals(new PyramidCrossJ(FUZZY_ERR).match(pic, patB), pyr.match(planes, patB));
+            assertEquals(new TwoDBasicSumCrossNa(FUZZY_ERR).match(pic, patB), pyr.match(planes, patB));
+        }
+    }
+
+    @Test
+    public void summedAreaSameAsNative() {
+        for (int seed = 1; seed <= 6; seed++) {
+            PicData pat = TestPics.quantized(3 + (seed * 5), 2 + (seed * 4), seed * 31, 0);
+            PicData pic = this._mkScene(301, 187, pat, seed, 6);
+            this._assertSame(new TwoDBasicSumCrossNa(FUZZY_ERR), new SummedAreaCrossJ(FUZZY_ERR), pic, pat, false);
+        }
+    }
+
+    @Test
+    public void summedAreaAvoidsCollisions() {
+        // same gray everywhere, but the canvas is flat while the pattern is a checkerboard
+        PicData pic = PicData.create(64, 48);
+        Arrays.fill(pic.rgba, 0x808080FF);
+        PicData pat = PicData.create(8, 8);
+        for (int i = 0; i < pat.rgba.length; i++) {
+            pat.rgba[i] = (((i + (i / 8)) % 2) == 0) ? 0x505050FF : 0xB0B0B0FF;
+        }
+
+        TwoDBasicSumCrossNa bs = new TwoDBasicSumCrossNa(FUZZY_ERR);
+        SummedAreaCrossJ sa = new SummedAreaCrossJ(FUZZY_ERR);
+        assertTrue(bs.match(pic, pat).isEmpty());
+        assertTrue(sa.match(pic, pat).isEmpty());
+        assertTrue(bs.getFalseMatchesCount() > 0);
+        assertEquals(0, sa.getFalseMatchesCount());
+        assertEquals((64 - 8 + 1) * (48 - 8 + 1), sa.getAvoidedCollisionsCount());
+    }
+
+    @Test
+    public void maskedSameAsNative() {
+        for (int seed = 1; seed <= 6; seed++) {
+            Random rnd = new Random(seed);
+            PicData pat = TestPics.quantized(6 + (seed * 3), 4 + (seed * 2), seed * 31, 0);
+            PicData exactPic = this._mkScene(301, 187, pat, seed, 0);
+            PicData fuzzyPic = this._mkScene(301, 187, pat, seed, 6);
+            // a transparent border on odd seeds, ragged holes otherwise
+            for (int y = 0; y < pat.height; y++) {
+                for (int x = 0; x < pat.width; x++) {
+                    boolean border = (x == 0) || (y == 0) || (x == (pat.width - 1)) || (y == (pat.height - 1));
+                    if (((seed % 2) == 1) ? border : (rnd.nextInt(4) == 0)) {
+                        pat.rgba[(y * pat.width) + x] &= 0xFFFFFF00;
+                    }
+                }
+            }
+            // copies differing from pat under its transparent pixels only
+            PicData scribbled = pat.copy();
+            for (int i = 0; i < scribbled.rgba.length; i++) {
+                if ((scribbled.rgba[i] & 0xFF) != PicData.A_OPAQUE) {
+                    scribbled.rgba[i] ^= 0x808080FF;
+                }
+            }
+            for (int k = 0; k < 4; k++) {
+                int x = rnd.nextInt(301 - pat.width);
+                int y = rnd.nextInt(187 - pat.height);
+                TestPics.plant(exactPic, scribbled, x, y);
+                TestPics.plant(fuzzyPic, scribbled, x, y);
+            }
+
+            assertFalse(new RK2DCrossNa().match(exactPic, pat).isEmpty());
+            this._assertSame(new RK2DCrossNa(), new RK2DCrossJ(), exactPic, pat, false);
+            assertFalse(new TwoDBasicSumCrossNa(FUZZY_ERR).match(fuzzyPic, pat).isEmpty());
+            this._assertSame(new TwoDBasicSumCrossNa(FUZZY_ERR), new TwoDBasicSumCrossJ(FUZZY_ERR), fuzzyPic, pat, true);
+            this._assertSame(new TwoDBasicSumCrossNa(FUZZY_ERR), new PyramidCrossJ(FUZZY_ERR), fuzzyPic, pat, false);
+            this._assertSame(new TwoDBasicSumCrossNa(FUZZY_ERR), new SummedAreaCrossJ(FUZZY_ERR), fuzzyPic, pat, false);
+        }
+    }
+
+    @Test
+    public void nccFindsPatternUnderContrastDrift() {
+        PicData pat = TestPics.quantized(24, 16, 255, 9);
+        PicData pic = this._mkScene(301, 187, pat, 9, 0);
+        Set<Point> exact = new RK2DCrossNa().match(pic, pat);
+        // darker and flatter capture, plus noise
+        for (int i = 0; i < pic.rgba.length; i++) {
+            int p = pic.rgba[i];
+            int r = ((p >>> 24) * 3) / 4 + 10;
+            int g = ((((p >>> 16) & 0xFF) * 3) / 4) + 10;
+            int b = ((((p >>> 8) & 0xFF) * 3) / 4) + 10;
+            pic.rgba[i] = (r << 24) | (g << 16) | (b << 8) | PicData.A_OPAQUE;
+        }
+        this._putNoise(pic, 5, 9);
+
+        NccFftCrossJ ncc = new NccFftCrossJ(0.9);
+        List<NccFftCrossJ.Match> scored = ncc.matchScored(pic, pat);
+        assertEquals(exact, ncc.match(pic, pat));
+        assertTrue(new TwoDBasicSumCrossNa(FUZZY_ERR).match(pic, pat).isEmpty());
+        for (int i = 1; i < scored.size(); i++) {
+            assertTrue(scored.get(i - 1).score >= scored.get(i).score);
+        }
+    }
+
+    @Test
+    public void nccScoresMatchDirectComputation() {
+        PicData pic = TestPics.quantized(90, 70, 255, 4);
+        PicData pat = TestPics.quantized(13, 9, 255, 5);
+        NccFftCrossJ.Match best = new NccFftCrossJ(-0.99, 1).matchScored(pic, pat).get(0);
+
+        double bestExp = -2;
+        int bx = -1;
+        int by = -1;
+        for (int sy = 0; sy <= (pic.height - pat.height); sy++) {
+            for (int sx = 0; sx <= (pic.width - pat.width); sx++) {
+                double score = this._ncc(pic, pat, sx, sy);
+                if (score > bestExp) {
+                    bestExp = score;
+                    bx = sx;
+                    by = sy;
+                }
+            }
+        }
+        assertEquals(bx, best.x);
+        assertEquals(by, best.y);
+        assertEquals(bestExp, best.score, 1e-9);
+    }
+
+    @Test
+    public void summedAreaAcrossStrips() {
+        // a pattern taller than a strip, and matches starting at strip edges
+        PicData tall = TestPics.quantized(5, 70, 13, 0);
+        PicData pic = this._mkScene(90, 300, tall, 3, 6);
+        this._assertSame(new TwoDBasicSumCrossNa(FUZZY_ERR), new SummedAreaCrossJ(FUZZY_ERR), pic, tall, false);
+
+        PicData pat = TestPics.quantized(6, 4, 29, 0);
+        pic = this._mkScene(80, 200, pat, 4, 6);
+        for (int sy : new int[]{0, 63, 64, 127, 128, 196}) {
+            TestPics.plant(pic, pat, sy % 70, sy);
+        }
+        this._assertSame(new TwoDBasicSumCrossNa(FUZZY_ERR), new SummedAreaCrossJ(FUZZY_ERR), pic, pat, false);
+        assertTrue(new SummedAreaCrossJ(FUZZY_ERR).match(pic, pat).contains(new Point(64, 64)));
+    }
+
+    @Test
+    public void nccFlatPatternHasNoMatches() {
+        assertTrue(new NccFftCrossJ(0.5).matchScored(TestPics.quantized(50, 40, 255, 1), PicData.create(8, 8)).isEmpty());
+    }
+
+    @Test
+    public void lowEntropyCollisions() {
+        // few distinct colors, many rows with equal sums
+        PicData pat = TestPics.quantized(6, 4, 5, 0);
+        PicData pic = TestPics.quantized(240, 160, 5, 0);
+        this._assertSame(new RK2DCrossNa(), new RK2DCrossJ(), pic, pat, false);
+        this._assertSame(new TwoDBasicSumCrossNa(FUZZY_ERR), new TwoDBasicSumCrossJ(FUZZY_ERR), pic, pat, true);
+        this._assertSame(new TwoDBasicSumCrossNa(FUZZY_ERR), new PyramidCrossJ(FUZZY_ERR), pic, pat, false);
+        this._assertSame(new TwoDBasicSumCrossNa(FUZZY_ERR), new SummedAreaCrossJ(FUZZY_ERR), pic, pat, false);
+    }
+
+    @Test
+    public void resultsCapped() {
+        PicData pic = PicData.create(64, 64);
+        PicData pat = PicData.create(2, 2);
+
+        assertEquals(100, new RK2DCrossJ(100).match(pic, pat).size());
+        assertEquals(100, new TwoDBasicSumCrossJ(FUZZY_ERR, 100).match(pic, pat).size());
+        assertEquals(
+            new RK2DCrossNa().match(pic, pat).size(),
+            new RK2DCrossJ().match(pic, pat).size()
+        );
+    }
+
+    @Test
+    public void patternLargerThanCanvas() {
+        PicData pic = PicData.create(4, 4);
+        PicData pat = PicData.create(5, 2);
+
+        assertTrue(new RK2DCrossJ().match(pic, pat).isEmpty());
+        assertTrue(new TwoDBasicSumCrossJ(FUZZY_ERR).match(pic, pat).isEmpty());
+    }
+
+    @Test
+    public void headToHeadBenchmark() {
+        PicData pat = TestPics.quantized(48, 32, 7, 0);
+        PicData pic = this._mkScene(1080, 2400, pat, 7, 4);
+        ITwoDMatcher[] impls = new ITwoDMatcher[]{
+            new RK2DCrossNa(), new RK2DCrossJ(),
+            new TwoDBasicSumCrossNa(FUZZY_ERR), new TwoDBasicSumCrossJ(FUZZY_ERR),
+            new PyramidCrossJ(FUZZY_ERR), new SummedAreaCrossJ(FUZZY_ERR)
+        };
+        int rounds = 10;
+
+        for (ITwoDMatcher impl : impls) {
+            for (int i = 0; i < 3; i++) {
+                impl.match(pic, pat);
+            }
+            Measure m = new Measure();
+            for (int i = 0; i < rounds; i++) {
+                impl.match(pic, pat);
+            }
+            m.done();
+            this._log.debug(String.format("bnchmrk %-22s %6.3f", impl.toString(), m.took() / rounds));
+        }
+    }
+
+    private void _assertSame(ITwoDMatcher na, ITwoDMatcher j, PicData pic, PicData pat, boolean sameCollisions) {
+        Set<Point> exp = na.match(pic, pat);
+        Set<Point> act = j.match(pic, pat);
+        String msg = String.format("%s %dx%d in %dx%d", j, pat.width, pat.height, pic.width, pic.height);
+
+        assertEquals(msg, exp, act);
+        if (sameCollisions) {
+            assertEquals(msg, na.getFalseMatchesCount(), j.getFalseMatchesCount());
+        }
+    }
+
+    private double _ncc(PicData pic, PicData pat, int sx, int sy) {
+        int n = pat.width * pat.height;
+        double cm = 0;
+        double pm = 0;
+        for (int y = 0; y < pat.height; y++) {
+            for (int x = 0; x < pat.width; x++) {
+                cm += this._gray(pic.rgba[((sy + y) * pic.width) + sx + x]);
+                pm += this._gray(pat.rgba[(y * pat.width) + x]);
+            }
+        }
+        cm /= n;
+        pm /= n;
+        double num = 0;
+        double cv = 0;
+        double pv = 0;
+        for (int y = 0; y < pat.height; y++) {
+            for (int x = 0; x < pat.width; x++) {
+                double c = this._gray(pic.rgba[((sy + y) * pic.width) + sx + x]) - cm;
+                double p = this._gray(pat.rgba[(y * pat.width) + x]) - pm;
+                num += c * p;
+                cv += c * c;
+                pv += p * p;
+            }
+        }
+        return num / Math.sqrt(cv * pv);
+    }
+
+    private int _gray(int rgba) {
+        return (((rgba >>> 8) & 0xFF) + ((rgba >>> 16) & 0xFF) + (rgba >>> 24) + 1) / 3;
+    }
+
+    // random canvas with pat planted on a grid, every pixel then perturbed by up to noise per channel
+    private PicData _mkScene(int w, int h, PicData pat, int seed, int noise) {
+        PicData pic = TestPics.quantized(w, h, 255, seed);
+        TestPics.plantGrid(pic, pat, seed);
+        if (noise > 0) {
+            this._putNoise(pic, noise, seed);
+        }
+        return pic;
+    }
+
+    private void _putNoise(PicData pic, int noise, int seed) {
+        Random rnd = new Random(seed);
+        for (int i = 0; i < pic.rgba.length; i++) {
+            int p = pic.rgba[i];
+            int r = this._clamp((p >>> 24) + rnd.nextInt((noise * 2) + 1) - noise);
+            int g = this._clamp(((p >>> 16) & 0xFF) + rnd.nextInt((noise * 2) + 1) - noise);
+            int b = this._clamp(((p >>> 8) & 0xFF) + rnd.nextInt((noise * 2) + 1) - noise);
+            pic.rgba[i] = (r << 24) | (g << 16) | (b << 8) | PicData.A_OPAQUE;
+        }
+    }
+
+    private int _clamp(int c) {
+        return Math.max(0, Math.min(255, c));
+    }
+}
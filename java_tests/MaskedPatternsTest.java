@@ -0,0 +1,114 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclib.TestPics;
+import com.drscbt.shared.piclib.PicOps;
+import com.drscbt.shared.piclocate.Point;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MaskedPatternsTest {
+    private static final int FUZZY_ERR = 12;
+
+    @Test
+    public void iconOnTwoBackgrounds() {
+        PicData onLight = this._mkIcon(0xF0F0F000);
+        PicData onDark = this._mkIcon(0x20202000);
+        PicData masked = PicOps.maskDiffering(onLight, onDark);
+
+        PicData pic = TestPics.random(200, 150, 1);
+        TestPics.plant(pic, onLight, 30, 20);
+        TestPics.plant(pic, onDark, 140, 90);
+
+        List<Point> exp = new ArrayList<>();
+        exp.add(new Point(30, 20));
+        exp.add(new Point(140, 90));
+        assertEquals(exp, new ArrayList<>(new RK2DCrossNa().match(pic, masked)));
+        assertEquals(exp, new ArrayList<>(new TwoDBasicSumCrossNa(FUZZY_ERR).match(pic, masked)));
+        assertEquals(1, new RK2DCrossNa().match(pic, onLight).size());
+    }
+
+    @Test
+    public void sameAsBruteForce() {
+        for (int seed = 0; seed < 12; seed++) {
+            Random rnd = new Random(seed);
+            PicData pat = TestPics.random(6 + rnd.nextInt(12), 4 + rnd.nextInt(10), seed + 50);
+            PicData pic = TestPics.random(160, 120, seed);
+            for (int k = 0; k < 6; k++) {
+                TestPics.plant(pic, pat, rnd.nextInt(pic.width - pat.width), rnd.nextInt(pic.height - pat.height));
+            }
+            // ragged mask, then scribble over the masked out pixels of the planted copies
+            for (int i = 0; i < pat.rgba.length; i++) {
+                if (rnd.nextInt(4) == 0) {
+                    pat.rgba[i] &= 0xFFFFFF00;
+                }
+            }
+            for (int i = 0; i < pic.rgba.length; i += 7) {
+                pic.rgba[i] ^= 0x80808000;
+            }
+
+            assertEquals(this._bruteForce(pic, pat, 0), new ArrayList<>(new RK2DCrossNa().match(pic, pat)));
+            assertEquals(this._bruteForce(pic, pat, FUZZY_ERR),
+                new ArrayList<>(new TwoDBasicSumCrossNa(FUZZY_ERR).match(pic, pat)));
+        }
+    }
+
+    @Test
+    public void fullyTransparentIsUnmasked() {
+        PicData pat = TestPics.random(9, 7, 3);
+        PicData pic = TestPics.random(120, 90, 4);
+        TestPics.plant(pic, pat, 50, 40);
+        PicData transparent = pat.copy();
+        for (int i = 0; i < transparent.rgba.length; i++) {
+            transparent.rgba[i] &= 0xFFFFFF00;
+        }
+        assertEquals(new RK2DCrossNa().match(pic, pat), new RK2DCrossNa().match(pic, transparent));
+        assertEquals(new TwoDBasicSumCrossNa(FUZZY_ERR).match(pic, pat),
+            new TwoDBasicSumCrossNa(FUZZY_ERR).match(pic, transparent));
+    }
+
+    // column-major like the native matchers
+    private List<Point> _bruteForce(PicData pic, PicData pat, int toler) {
+        List<Point> res = new ArrayList<>();
+        for (int sx = 0; sx <= (pic.width - pat.width); sx++) {
+            nextLoc:
+            for (int sy = 0; sy <= (pic.height - pat.height); sy++) {
+                for (int y = 0; y < pat.height; y++) {
+                    for (int x = 0; x < pat.width; x++) {
+                        int p = pat.rgba[(y * pat.width) + x];
+                        if ((p & 0xFF) != PicData.A_OPAQUE) {
+                            continue;
+                        }
+                        int c = pic.rgba[((sy + y) * pic.width) + sx + x];
+                        for (int sh = 8; sh <= 24; sh += 8) {
+                            if (Math.abs(((c >>> sh) & 0xFF) - ((p >>> sh) & 0xFF)) > toler) {
+                                continue nextLoc;
+                            }
+                        }
+                    }
+                }
+                res.add(new Point(sx, sy));
+            }
+        }
+        return res;
+    }
+
+    // a 12x12 ring with background in the middle and the corners
+    private PicData _mkIcon(int bg) {
+        PicData icon = PicData.create(12, 12);
+        for (int y = 0; y < 12; y++) {
+            for (int x = 0; x < 12; x++) {
+                int d = ((x - 6) * (x - 6)) + ((y - 6) * (y - 6));
+                int clr = ((d >= 9) && (d <= 30)) ? 0x3070C000 : bg;
+                icon.rgba[(y * 12) + x] = clr | PicData.A_OPAQUE;
+            }
+        }
+        return icon;
+    }
+}
@@ -0,0 +1,492 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.DirectPic;
+import com.drscbt.shared.piclib.FramePlanes;
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclib.TestPics;
+import com.drscbt.shared.piclocate.MaskConf;
+import com.drscbt.shared.piclocate.Point;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class NativeSearchTest {
+    private static final int FUZZY_ERR = 12;
+
+    @Test
+    public void rkMatchManySameAsOneByOne() {
+        for (int seed = 0; seed < 8; seed++) {
+            Random rnd = new Random(seed);
+            PicData pic = TestPics.random(300, 200, seed);
+            PicData[] pats = new PicData[] {
+                // three of equal width, one of them not on the canvas
+                TestPics.random(12, 8, seed + 10),
+                TestPics.random(12, 5, seed + 11),
+                TestPics.random(12, 8, seed + 12),
+                TestPics.random(7, 9, seed + 13),
+                // masked
+                TestPics.random(10, 6, seed + 14),
+                // larger than the canvas
+                TestPics.random(301, 4, seed + 15),
+            };
+            pats[4].rgba[rnd.nextInt(pats[4].rgba.length)] &= 0xFFFFFF00;
+            for (int i = 0; i < 5; i++) {
+                if (i == 2) {
+                    continue;
+                }
+                for (int k = 0; k < 3; k++) {
+                    TestPics.plant(pic, pats[i], rnd.nextInt(pic.width - pats[i].width + 1),
+                        rnd.nextInt(pic.height - pats[i].height + 1));
+                }
+            }
+
+            NativePicSearchResults[] many = NativeSearch.rkMatchMany(pic, pats);
+            assertEquals(pats.length, many.length);
+            for (int i = 0; i < pats.length; i++) {
+                RK2DCrossNa rk = new RK2DCrossNa();
+                assertEquals("pattern " + i, rk.match(pic, pats[i]), many[i].matches);
+                assertEquals("pattern " + i, rk.getFalseMatchesCount(), many[i].collisionsCnt);
+            }
+            assertTrue(many[0].matches.size() > 0);
+            assertEquals(0, many[2].matches.size());
+            assertEquals(0, many[5].matches.size());
+        }
+    }
+
+    @Test
+    public void firstExistsLimit() {
+        try {
+            for (int threads : new int[] {1, 4}) {
+                NativeSearch.setThreads(threads);
+                for (int seed = 0; seed < 6; seed++) {
+                    Random rnd = new Random(seed);
+                    PicData pic = TestPics.quantized(300, 200, 3, seed);
+                    PicData pat = TestPics.cut(pic, rnd.nextInt(280), rnd.nextInt(180), 3 + rnd.nextInt(6),
+                        2 + rnd.nextInt(5));
+                    if ((seed % 2) == 1) {
+                        pat.rgba[0] &= 0xFFFFFF00;
+                    }
+                    TestPics.plantGrid(pic, pat, seed);
+
+                    List<Point> rkAll = this._scanOrder(new RK2DCrossNa().match(pic, pat));
+                    List<Point> bsAll = this._scanOrder(new TwoDBasicSumCrossNa(FUZZY_ERR).match(pic, pat));
+                    assertTrue(rkAll.size() > 3);
+
+                    assertEquals(rkAll.get(0), NativeSearch.rkMatchFirst(pic, pat));
+                    assertEquals(bsAll.get(0), NativeSearch.bsMatchFirst(pic, pat, FUZZY_ERR));
+                    assertTrue(NativeSearch.rkMatchExists(pic, pat));
+                    assertTrue(NativeSearch.bsMatchExists(pic, pat, FUZZY_ERR));
+
+                    for (int limit : new int[] {1, 2, 3, rkAll.size(), rkAll.size() + 5}) {
+                        NativePicSearchResults res = NativeSearch.rkMatchLimit(pic, pat, limit);
+                        assertEquals(rkAll.subList(0, Math.min(limit, rkAll.size())), this._scanOrder(res.matches));
+                    }
+                    NativePicSearchResults res = NativeSearch.bsMatchLimit(pic, pat, FUZZY_ERR, 2);
+                    assertEquals(bsAll.subList(0, 2), this._scanOrder(res.matches));
+
+                    PicData absent = TestPics.random(pat.width, pat.height, seed + 100);
+                    assertNull(NativeSearch.rkMatchFirst(pic, absent));
+                    assertFalse(NativeSearch.rkMatchExists(pic, absent));
+                    assertFalse(NativeSearch.bsMatchExists(pic, absent, 0));
+                }
+            }
+        } finally {
+            NativeSearch.setThreads(1);
+        }
+    }
+
+    @Test
+    public void limitCollisionsSameWithThreads() {
+        PicData pic = TestPics.quantized(500, 300, 2, 1);
+        PicData pat = TestPics.cut(pic, 50, 50, 3, 3);
+        try {
+            for (int limit : new int[] {1, 10, 100}) {
+                NativeSearch.setThreads(1);
+                NativePicSearchResults exp = NativeSearch.rkMatchLimit(pic, pat, limit);
+                NativePicSearchResults expBs = NativeSearch.bsMatchLimit(pic, pat, FUZZY_ERR, limit);
+                for (int threads : new int[] {2, 5}) {
+                    NativeSearch.setThreads(threads);
+                    NativePicSearchResults res = NativeSearch.rkMatchLimit(pic, pat, limit);
+                    assertEquals(exp.matches, res.matches);
+                    assertEquals(exp.collisionsCnt, res.collisionsCnt);
+                    NativePicSearchResults resBs = NativeSearch.bsMatchLimit(pic, pat, FUZZY_ERR, limit);
+                    assertEquals(expBs.matches, resBs.matches);
+                    assertEquals(expBs.collisionsCnt, resBs.collisionsCnt);
+                }
+            }
+        } finally {
+            NativeSearch.setThreads(1);
+        }
+    }
+
+    @Test
+    public void limitAboveDefaultCap() {
+        PicData pic = PicData.create(50, 40);
+        PicData pat = PicData.create(3, 3);
+        assertEquals(1500, NativeSearch.rkMatchLimit(pic, pat, 1500).matches.size());
+        assertEquals(48 * 38, NativeSearch.bsMatchLimit(pic, pat, 0, 5000).matches.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void limitNotPositive() {
+        NativeSearch.rkMatchLimit(PicData.create(10, 10), PicData.create(2, 2), 0);
+    }
+
+    @Test
+    public void sinkChunksInScanOrder() {
+        PicData pic = TestPics.quantized(300, 200, 3, 2);
+        PicData pat = TestPics.cut(pic, 40, 30, 4, 3);
+        TestPics.plantGrid(pic, pat, 2);
+        try {
+            for (int threads : new int[] {1, 4}) {
+                NativeSearch.setThreads(threads);
+                NativePicSearchResults rk = NativeSearch.rkMatchLimit(pic, pat, 100000);
+                NativePicSearchResults bs = NativeSearch.bsMatchLimit(pic, pat, FUZZY_ERR, 100000);
+                assertTrue(rk.matches.size() > 10);
+                // an odd length chunk holds whole occurrences only
+                for (int chunkLen : new int[] {2, 7, 64}) {
+                    CollectingSink rkSink = new CollectingSink(chunkLen / 2, Integer.MAX_VALUE);
+                    assertEquals(rk.collisionsCnt, NativeSearch.rkMatchSink(pic, pat, new int[chunkLen], rkSink));
+                    assertEquals(this._scanOrder(rk.matches), rkSink.points);
+
+                    CollectingSink bsSink = new CollectingSink(chunkLen / 2, Integer.MAX_VALUE);
+                    assertEquals(bs.collisionsCnt,
+                        NativeSearch.bsMatchSink(pic, pat, FUZZY_ERR, new int[chunkLen], bsSink));
+                    assertEquals(this._scanOrder(bs.matches), bsSink.points);
+                }
+
+                CollectingSink limited = new CollectingSink(5, Integer.MAX_VALUE);
+                NativeSearch.rkMatchSink(pic, pat, 7, new int[10], limited);
+                assertEquals(this._scanOrder(rk.matches).subList(0, 7), limited.points);
+            }
+        } finally {
+            NativeSearch.setThreads(1);
+        }
+    }
+
+    @Test
+    public void sinkNotCapped() {
+        PicData pic = PicData.create(50, 40);
+        PicData pat = PicData.create(3, 3);
+        CollectingSink sink = new CollectingSink(100, Integer.MAX_VALUE);
+        NativeSearch.rkMatchSink(pic, pat, new int[200], sink);
+        assertEquals(48 * 38, sink.points.size());
+        sink = new CollectingSink(100, Integer.MAX_VALUE);
+        NativeSearch.bsMatchSink(pic, pat, 0, new int[200], sink);
+        assertEquals(48 * 38, sink.points.size());
+    }
+
+    @Test
+    public void sinkStopsSearch() {
+        PicData pic = PicData.create(50, 40);
+        PicData pat = PicData.create(3, 3);
+        List<Point> all = this._scanOrder(NativeSearch.rkMatchLimit(pic, pat, 5000).matches);
+        try {
+            for (int threads : new int[] {1, 4}) {
+                NativeSearch.setThreads(threads);
+                CollectingSink sink = new CollectingSink(5, 3);
+                NativeSearch.rkMatchSink(pic, pat, new int[10], sink);
+                assertEquals(3, sink.calls);
+                assertEquals(all.subList(0, 15), sink.points);
+
+                sink = new CollectingSink(5, 1);
+                NativeSearch.bsMatchSink(pic, pat, 0, new int[10], sink);
+                assertEquals(1, sink.calls);
+                assertEquals(all.subList(0, 5), sink.points);
+            }
+        } finally {
+            NativeSearch.setThreads(1);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void sinkExceptionStopsSearch() {
+        NativeSearch.rkMatchSink(PicData.create(50, 40), PicData.create(3, 3), new int[10], (xy, count) -> {
+            throw new IllegalStateException("sink failed");
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sinkChunkTooSmall() {
+        NativeSearch.rkMatchSink(PicData.create(10, 10), PicData.create(2, 2), new int[1], (xy, count) -> true);
+    }
+
+    @Test
+    public void packedSameAsMatch() {
+        for (int seed = 0; seed < 4; seed++) {
+            Random rnd = new Random(seed);
+            PicData pic = TestPics.quantized(300, 200, 3, seed);
+            PicData pat = TestPics.cut(pic, rnd.nextInt(290), rnd.nextInt(190), 3 + rnd.nextInt(4), 2 + rnd.nextInt(4));
+            TestPics.plantGrid(pic, pat, seed);
+
+            RK2DCrossNa rk = new RK2DCrossNa();
+            PackedMatches rkPacked = NativeSearch.rkMatchPacked(pic, pat);
+            assertEquals(rk.match(pic, pat), rkPacked.matches());
+            assertEquals(rk.getFalseMatchesCount(), rkPacked.collisionsCnt());
+
+            TwoDBasicSumCrossNa bs = new TwoDBasicSumCrossNa(FUZZY_ERR);
+            PackedMatches bsPacked = NativeSearch.bsMatchPacked(pic, pat, FUZZY_ERR);
+            assertEquals(bs.match(pic, pat), bsPacked.matches());
+            assertEquals(bs.getFalseMatchesCount(), bsPacked.collisionsCnt());
+        }
+    }
+
+    @Test
+    public void packedOverSeveralChunks() {
+        PicData pic = PicData.create(50, 40);
+        PicData pat = PicData.create(3, 3);
+        PackedMatches packed = NativeSearch.rkMatchPacked(pic, pat, 5000);
+        assertEquals(48 * 38, packed.count());
+        for (int i = 0; i < packed.count(); i++) {
+            assertEquals(i / 38, packed.x(i));
+            assertEquals(i % 38, packed.y(i));
+        }
+        assertEquals(1000, NativeSearch.bsMatchPacked(pic, pat, 0).count());
+        assertEquals(7, NativeSearch.bsMatchPacked(pic, pat, 0, 7).count());
+    }
+
+    @Test
+    public void roiSameAsCrop() {
+        for (int seed = 0; seed < 10; seed++) {
+            Random rnd = new Random(seed);
+            PicData pic = TestPics.random(240, 160, seed);
+            PicData pat = TestPics.random(4 + rnd.nextInt(10), 3 + rnd.nextInt(8), seed + 20);
+            if ((seed % 2) == 1) {
+                pat.rgba[rnd.nextInt(pat.rgba.length)] &= 0xFFFFFF00;
+            }
+            TestPics.plantGrid(pic, pat, seed);
+
+            int roiW = pat.width + rnd.nextInt(pic.width - pat.width + 1);
+            int roiH = pat.height + rnd.nextInt(pic.height - pat.height + 1);
+            // every 3rd against the frame's right and bottom edges
+            int roiX = ((seed % 3) == 0) ? (pic.width - roiW) : rnd.nextInt(pic.width - roiW + 1);
+            int roiY = ((seed % 3) == 0) ? (pic.height - roiH) : rnd.nextInt(pic.height - roiH + 1);
+            MaskConf roi = new MaskConf(roiX, roiY, roiW, roiH);
+            PicData crop = TestPics.cut(pic, roiX, roiY, roiW, roiH);
+
+            RK2DCrossNa rk = new RK2DCrossNa();
+            NativePicSearchResults rkRes = NativeSearch.rkMatchRoi(pic, pat, roi);
+            assertEquals(this._offset(rk.match(crop, pat), roiX, roiY), rkRes.matches);
+            assertEquals(rk.getFalseMatchesCount(), rkRes.collisionsCnt);
+
+            TwoDBasicSumCrossNa bs = new TwoDBasicSumCrossNa(FUZZY_ERR);
+            NativePicSearchResults bsRes = NativeSearch.bsMatchRoi(pic, pat, roi, FUZZY_ERR);
+            assertEquals(this._offset(bs.match(crop, pat), roiX, roiY), bsRes.matches);
+            assertEquals(bs.getFalseMatchesCount(), bsRes.collisionsCnt);
+        }
+    }
+
+    @Test
+    public void directSameAsArrays() {
+        for (int seed = 0; seed < 6; seed++) {
+            Random rnd = new Random(seed);
+            PicData pic = TestPics.quantized(300, 200, 3, seed);
+            PicData pat = TestPics.cut(pic, rnd.nextInt(290), rnd.nextInt(190), 3 + rnd.nextInt(4), 2 + rnd.nextInt(4));
+            if ((seed % 2) == 1) {
+                pat.rgba[rnd.nextInt(pat.rgba.length)] &= 0xFFFFFF00;
+            }
+            TestPics.plantGrid(pic, pat, seed);
+            DirectPic dp = DirectPic.fromPicData(pic);
+
+            RK2DCrossNa rk = new RK2DCrossNa();
+            NativePicSearchResults rkRes = NativeSearch.rkMatchDirect(dp, pat);
+            assertEquals(rk.match(pic, pat), rkRes.matches);
+            assertEquals(rk.getFalseMatchesCount(), rkRes.collisionsCnt);
+
+            TwoDBasicSumCrossNa bs = new TwoDBasicSumCrossNa(FUZZY_ERR);
+            NativePicSearchResults bsRes = NativeSearch.bsMatchDirect(dp, pat, FUZZY_ERR);
+            assertEquals(bs.match(pic, pat), bsRes.matches);
+            assertEquals(bs.getFalseMatchesCount(), bsRes.collisionsCnt);
+        }
+        assertTrue(NativeSearch.rkMatchDirect(DirectPic.create(4, 4), PicData.create(5, 2)).matches.isEmpty());
+    }
+
+    @Test
+    public void planesSameAsPic() {
+        for (int seed = 0; seed < 4; seed++) {
+            Random rnd = new Random(seed);
+            PicData pic = TestPics.quantized(300, 200, 3, seed);
+            FramePlanes planes = FramePlanes.forFrame(pic, seed);
+            // more patterns over the same planes
+            for (int k = 0; k < 3; k++) {
+                PicData pat = TestPics.cut(pic, rnd.nextInt(290), rnd.nextInt(190), 3 + rnd.nextInt(4),
+                    2 + rnd.nextInt(4));
+                if (k == 2) {
+                    pat.rgba[rnd.nextInt(pat.rgba.length)] &= 0xFFFFFF00;
+                }
+
+                RK2DCrossNa rk = new RK2DCrossNa();
+                NativePicSearchResults rkRes = NativeSearch.rkMatch(planes, pat);
+                assertEquals(rk.match(pic, pat), rkRes.matches);
+                assertEquals(rk.getFalseMatchesCount(), rkRes.collisionsCnt);
+
+                TwoDBasicSumCrossNa bs = new TwoDBasicSumCrossNa(FUZZY_ERR);
+                NativePicSearchResults bsRes = NativeSearch.bsMatch(planes, pat, FUZZY_ERR);
+                assertEquals(bs.match(pic, pat), bsRes.matches);
+                assertEquals(bs.getFalseMatchesCount(), bsRes.collisionsCnt);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void planeLengthChecked() {
+        NativeSearch.rkMatchC8Call(new int[100], new byte[99], new int[4], 10, 2);
+    }
+
+    @Test
+    public void roiSmallerThanPattern() {
+        PicData pic = TestPics.random(50, 40, 1);
+        PicData pat = TestPics.cut(pic, 10, 10, 8, 6);
+        assertEquals(0, NativeSearch.rkMatchRoi(pic, pat, new MaskConf(10, 10, 7, 6)).matches.size());
+        assertEquals(0, NativeSearch.bsMatchRoi(pic, pat, new MaskConf(10, 10, 8, 5), FUZZY_ERR).matches.size());
+        assertEquals(1, NativeSearch.rkMatchRoi(pic, pat, new MaskConf(10, 10, 8, 6)).matches.size());
+    }
+
+    @Test
+    public void roiOutsideOfFrame() {
+        PicData pic = TestPics.random(50, 40, 1);
+        PicData pat = TestPics.random(4, 4, 2);
+        MaskConf[] rois = new MaskConf[] {
+            new MaskConf(-1, 0, 10, 10),
+            new MaskConf(0, -1, 10, 10),
+            new MaskConf(41, 0, 10, 10),
+            new MaskConf(0, 31, 10, 10),
+            new MaskConf(0, 0, -1, 10),
+            new MaskConf(Integer.MAX_VALUE, 0, 10, 10),
+        };
+        for (MaskConf roi : rois) {
+            try {
+                NativeSearch.rkMatchRoi(pic, pat, roi);
+                fail(String.format("roi %d,%d %dx%d accepted", roi.fromX, roi.fromY, roi.width, roi.height));
+            } catch (IllegalArgumentException e) {
+            }
+            try {
+                NativeSearch.bsMatchRoi(pic, pat, roi, FUZZY_ERR);
+                fail(String.format("roi %d,%d %dx%d accepted", roi.fromX, roi.fromY, roi.width, roi.height));
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
+
+    @Test
+    public void threadsSameAsSingle() {
+        try {
+            for (int seed = 0; seed < 6; seed++) {
+                Random rnd = new Random(seed);
+                // few levels, so hashes and sums collide
+                PicData pic = TestPics.quantized(400 + rnd.nextInt(300), 200 + rnd.nextInt(100), 3, seed);
+                PicData pat = TestPics.cut(pic, rnd.nextInt(300), rnd.nextInt(150), 3 + rnd.nextInt(8),
+                    2 + rnd.nextInt(6));
+                if ((seed % 2) == 1) {
+                    pat.rgba[0] &= 0xFFFFFF00;
+                }
+                TestPics.plantGrid(pic, pat, seed);
+
+                NativeSearch.setThreads(1);
+                RK2DCrossNa rk = new RK2DCrossNa();
+                TwoDBasicSumCrossNa bs = new TwoDBasicSumCrossNa(FUZZY_ERR);
+                Set<Point> rkExp = rk.match(pic, pat);
+                int rkCollExp = rk.getFalseMatchesCount();
+                Set<Point> bsExp = bs.match(pic, pat);
+                int bsCollExp = bs.getFalseMatchesCount();
+
+                for (int threads : new int[] {2, 3, 4, 7}) {
+                    NativeSearch.setThreads(threads);
+                    assertEquals(threads, NativeSearch.getThreads());
+                    assertEquals(new ArrayList<>(rkExp), new ArrayList<>(rk.match(pic, pat)));
+                    assertEquals(rkCollExp, rk.getFalseMatchesCount());
+                    assertEquals(new ArrayList<>(bsExp), new ArrayList<>(bs.match(pic, pat)));
+                    assertEquals(bsCollExp, bs.getFalseMatchesCount());
+                }
+            }
+        } finally {
+            NativeSearch.setThreads(1);
+        }
+    }
+
+    @Test
+    public void threadsChangedWhileSearching() throws InterruptedException {
+        PicData pic = TestPics.quantized(600, 300, 3, 1);
+        PicData pat = TestPics.cut(pic, 100, 100, 4, 3);
+        Set<Point> exp = new RK2DCrossNa().match(pic, pat);
+        List<Thread> searchers = new ArrayList<>();
+        AtomicInteger failed = new AtomicInteger();
+        try {
+            for (int i = 0; i < 3; i++) {
+                Thread t = new Thread(() -> {
+                    for (int k = 0; k < 20; k++) {
+                        if (!exp.equals(new RK2DCrossNa().match(pic, pat))) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                });
+                t.start();
+                searchers.add(t);
+            }
+            for (int k = 0; k < 20; k++) {
+                NativeSearch.setThreads(1 + (k % 4));
+            }
+            for (Thread t : searchers) {
+                t.join();
+            }
+        } finally {
+            NativeSearch.setThreads(1);
+        }
+        assertEquals(0, failed.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void threadsNotPositive() {
+        NativeSearch.setThreads(0);
+    }
+
+    @Test
+    public void rkMatchManyNoPatterns() {
+        assertEquals(0, NativeSearch.rkMatchMany(TestPics.random(20, 20, 1), new PicData[0]).length);
+    }
+
+    // checks every chunk's size, stops after maxCalls chunks
+    private static class CollectingSink implements IMatchSink {
+        final List<Point> points = new ArrayList<>();
+        final int perChunk;
+        final int maxCalls;
+        int calls;
+
+        CollectingSink(int perChunk, int maxCalls) {
+            this.perChunk = perChunk;
+            this.maxCalls = maxCalls;
+        }
+
+        public boolean accept(int[] xy, int count) {
+            assertTrue((count > 0) && (count <= this.perChunk));
+            for (int i = 0; i < count; i++) {
+                this.points.add(new Point(xy[i * 2], xy[(i * 2) + 1]));
+            }
+            this.calls++;
+            return this.calls < this.maxCalls;
+        }
+    }
+
+    private List<Point> _scanOrder(Set<Point> points) {
+        List<Point> ordered = new ArrayList<>(points);
+        ordered.sort(Comparator.<Point>comparingInt(p -> p.x).thenComparingInt(p -> p.y));
+        return ordered;
+    }
+
+    private Set<Point> _offset(Set<Point> points, int dx, int dy) {
+        Set<Point> offset = new LinkedHashSet<>();
+        for (Point p : points) {
+            offset.add(new Point(p.x + dx, p.y + dy));
+        }
+        return offset;
+    }
+}
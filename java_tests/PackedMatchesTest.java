@@ -0,0 +1,68 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclib.TestPics;
+import com.drscbt.shared.piclocate.Point;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class PackedMatchesTest {
+    @Test
+    public void unpacksPairs() {
+        PackedMatches pm = new PackedMatches(new int[]{7, 3, 2, 3, 9, 40, 1});
+
+        assertEquals(7, pm.collisionsCnt());
+        assertEquals(3, pm.count());
+        assertEquals(3, pm.x(1));
+        assertEquals(9, pm.y(1));
+        assertEquals(
+            new HashSet<>(Arrays.asList(new Point(3, 2), new Point(3, 9), new Point(40, 1))),
+            pm.matches()
+        );
+        assertSame(pm.matches(), pm.matches());
+    }
+
+    @Test
+    public void emptyResult() {
+        PackedMatches pm = new PackedMatches(new int[]{12});
+
+        assertTrue(pm.isEmpty());
+        assertEquals(12, pm.collisionsCnt());
+        assertTrue(pm.matches().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void evenLengthRejected() {
+        new PackedMatches(new int[]{0, 1});
+    }
+
+    @Test
+    public void searchResultsPointsMadeOnUse() {
+        PicData pic = TestPics.quantized(200, 150, 3, 1);
+        PicData pat = TestPics.cut(pic, 20, 30, 3, 2);
+        NativePicSearchResults res = NativeSearch.rkMatchLimit(pic, pat, 5000);
+        NativePicSearchResults.PackedPoints points = (NativePicSearchResults.PackedPoints) res.matches;
+        PackedMatches packed = NativeSearch.rkMatchPacked(pic, pat, 5000);
+
+        assertEquals(packed.count(), res.matches.size());
+        assertFalse(res.matches.isEmpty());
+        assertFalse(points.isBuilt());
+        assertEquals(packed.matches(), res.matches);
+        assertTrue(points.isBuilt());
+        assertTrue(res.matches.contains(new Point(20, 30)));
+        assertTrue(res.matches.remove(new Point(20, 30)));
+        assertEquals(packed.count() - 1, res.matches.size());
+    }
+
+    @Test
+    public void searchResultsEmpty() {
+        NativePicSearchResults res = NativeSearch.rkMatchLimit(PicData.create(4, 4), PicData.create(5, 2), 10);
+        assertTrue(res.matches.isEmpty());
+        assertEquals(0, res.collisionsCnt);
+    }
+}
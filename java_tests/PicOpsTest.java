@@ -33,6 +33,28 @@ public class PicOpsTest {
         assertArrayEquals(exp.rgba, dst.rgba);
     }
 
+    @Test
+    public void maskDiffering() {
+        PicData a = PicData.create(3, 2);
+        PicData b = PicData.create(3, 2);
+        for (int i = 0; i < 6; i++) {
+            a.rgba[i] = 0x10203000 | PicData.A_OPAQUE;
+            b.rgba[i] = a.rgba[i];
+        }
+        b.rgba[1] = 0x10203100 | PicData.A_OPAQUE;
+        b.rgba[5] = 0xFFFFFF00 | PicData.A_OPAQUE;
+        PicData masked = PicOps.maskDiffering(a, b);
+        assertArrayEquals(new int[]{
+            0x102030FF, 0x10203000, 0x102030FF,
+            0x102030FF, 0x102030FF, 0x10203000
+        }, masked.rgba);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maskDifferingSizeMismatch() {
+        PicOps.maskDiffering(PicData.create(3, 2), PicData.create(2, 3));
+    }
+
     private PicData _loadPicResource(String name) {
         String picName = String.format("match_test_pics/%s", name);
         IApkJarAssetLoader ldr = ApkJarAssetLoaderProv.getLoader();
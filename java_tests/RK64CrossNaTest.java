@@ -0,0 +1,70 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclib.TestPics;
+import com.drscbt.shared.piclocate.Point;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RK64CrossNaTest {
+    @Test
+    public void sameAsRk() {
+        for (int seed = 0; seed < 10; seed++) {
+            Random rnd = new Random(seed);
+            PicData pat = TestPics.random(1 + rnd.nextInt(16), 1 + rnd.nextInt(12), seed + 50);
+            PicData pic = TestPics.random(200, 150, seed);
+            for (int k = 0; k < 5; k++) {
+                TestPics.plant(pic, pat, rnd.nextInt(pic.width - pat.width + 1), rnd.nextInt(pic.height - pat.height + 1));
+            }
+            if ((seed % 3) == 0) {
+                pat.rgba[rnd.nextInt(pat.rgba.length)] &= 0xFFFFFF00;
+            }
+            assertEquals(new ArrayList<>(new RK2DCrossNa().match(pic, pat)), new ArrayList<>(new RK64CrossNa().match(pic, pat)));
+        }
+    }
+
+    @Test
+    public void fewerCollisionsOnRepetitiveScreen() {
+        // a grid of copies, each off by one pixel: windows differing from the
+        // pattern in a single row hit rk's 8 bit row hashes often
+        PicData pat = TestPics.random(8, 4, 7);
+        PicData pic = PicData.create(800, 800);
+        Random rnd = new Random(7);
+        for (int ty = 0; ty < 200; ty++) {
+            for (int tx = 0; tx < 100; tx++) {
+                TestPics.plant(pic, pat, tx * 8, ty * 4);
+                pic.rgba[(((ty * 4) + rnd.nextInt(4)) * 800) + (tx * 8) + rnd.nextInt(8)] ^= 0x80808000;
+            }
+        }
+
+        RK2DCrossNa rk = new RK2DCrossNa();
+        RK64CrossNa rk64 = new RK64CrossNa();
+        assertEquals(new ArrayList<>(rk.match(pic, pat)), new ArrayList<>(rk64.match(pic, pat)));
+        assertTrue(rk.getFalseMatchesCount() > 1000);
+        assertEquals(0, rk64.getFalseMatchesCount());
+    }
+
+    @Test
+    public void confirmedPxCount() {
+        PicData pat = TestPics.random(9, 7, 3);
+        PicData pic = TestPics.random(120, 90, 4);
+        TestPics.plant(pic, pat, 10, 10);
+        TestPics.plant(pic, pat, 70, 50);
+        RK64CrossNa rk64 = new RK64CrossNa();
+        assertEquals(2, rk64.match(pic, pat).size());
+        assertEquals(0, rk64.getFalseMatchesCount());
+        assertEquals(2 * 9 * 7, rk64.getConfirmedPxCount());
+    }
+
+    @Test
+    public void limit() {
+        PicData pic = PicData.create(50, 40);
+        PicData pat = PicData.create(3, 3);
+        assertEquals(100, new RK64CrossNa(100).match(pic, pat).size());
+    }
+}
@@ -0,0 +1,156 @@
+package com.drscbt.shared.piclocate.scrollfinder;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclocate.MaskConf;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ScrollFinderRowSigTest {
+    private static final int W = 120;
+    private static final int H = 200;
+    private static final int HEADER = 30;
+    private static final MaskConf LIST = new MaskConf(0, HEADER, W, H - HEADER);
+
+    @Test
+    public void surfaceMovedUp() {
+        ListPage page = new ListPage(1);
+        PicData prev = page.frame(100);
+        PicData next = page.frame(137);
+        assertEquals(Integer.valueOf(-37), new ScrollFinderRowSig(0).shift(prev, 1, next, 2, LIST));
+    }
+
+    @Test
+    public void surfaceMovedDown() {
+        ListPage page = new ListPage(2);
+        PicData prev = page.frame(300);
+        PicData next = page.frame(211);
+        assertEquals(Integer.valueOf(89), new ScrollFinderRowSig(0).shift(prev, 1, next, 2, LIST));
+    }
+
+    @Test
+    public void still() {
+        ListPage page = new ListPage(3);
+        assertEquals(Integer.valueOf(0), new ScrollFinderRowSig(0).shift(page.frame(50), 1, page.frame(50), 2, null));
+    }
+
+    @Test
+    public void fixedHeaderOutsideClip() {
+        ListPage page = new ListPage(4);
+        PicData prev = page.frame(100);
+        PicData next = page.frame(120);
+        // the header doesn't scroll, the whole frame can't be confirmed
+        assertNull(new ScrollFinderRowSig(0).shift(prev, 1, next, 2, null));
+        assertEquals(Integer.valueOf(-20), new ScrollFinderRowSig(0).shift(prev, 1, next, 2, LIST));
+    }
+
+    @Test
+    public void toleratesChannelNoise() {
+        ListPage page = new ListPage(5);
+        PicData prev = page.frame(100);
+        PicData next = page.frame(160);
+        Random rnd = new Random(5);
+        // every other row off by a little, the others still vote
+        for (int y = HEADER; y < H; y += 2) {
+            for (int x = 0; x < W; x++) {
+                next.rgba[(y * W) + x] += (1 + rnd.nextInt(3)) << 8;
+            }
+        }
+        assertNull(new ScrollFinderRowSig(0).shift(prev, 1, next, 2, LIST));
+        assertEquals(Integer.valueOf(-60), new ScrollFinderRowSig(4).shift(prev, 1, next, 2, LIST));
+    }
+
+    @Test
+    public void blankRowsDontTell() {
+        PicData prev = PicData.create(W, H);
+        PicData next = PicData.create(W, H);
+        assertNull(new ScrollFinderRowSig(0).shift(prev, 1, next, 2, null));
+    }
+
+    @Test
+    public void cachedBySerial() {
+        ListPage page = new ListPage(6);
+        PicData prev = page.frame(100);
+        PicData next = page.frame(110);
+        ScrollFinderRowSig rs = new ScrollFinderRowSig(0);
+        assertEquals(Integer.valueOf(-10), rs.shift(prev, 1, next, 2, LIST));
+
+        // same serials, not looked at again
+        PicData other = page.frame(130);
+        assertEquals(Integer.valueOf(-10), rs.shift(prev, 1, other, 2, LIST));
+        assertEquals(Integer.valueOf(-30), rs.shift(prev, 1, other, 3, LIST));
+        assertEquals(Integer.valueOf(-10), rs.shift(prev, 1, next, 2, LIST));
+    }
+
+    @Test
+    public void expectedOffsetFirst() {
+        ListPage page = new ListPage(8);
+        PicData prev = page.frame(100);
+        ScrollFinderRowSig rs = new ScrollFinderRowSig(0);
+        assertEquals(Integer.valueOf(-48), rs.shift(prev, 1, page.frame(148), 2, LIST, -48, 3));
+        // a near miss within the window
+        assertEquals(Integer.valueOf(-50), rs.shift(prev, 1, page.frame(150), 3, LIST, -48, 3));
+        // outside of it, found by voting
+        assertEquals(Integer.valueOf(-70), rs.shift(prev, 1, page.frame(170), 4, LIST, -48, 3));
+        assertEquals(Integer.valueOf(35), rs.shift(prev, 1, page.frame(65), 5, LIST, -48, 3));
+    }
+
+    @Test
+    public void expectedOffsetOnBlankRows() {
+        PicData prev = PicData.create(W, H);
+        PicData next = PicData.create(W, H);
+        assertNull(new ScrollFinderRowSig(0).shift(prev, 1, next, 2, null, -20, 2));
+    }
+
+    @Test
+    public void periodicRowsPreferExpected() {
+        ListPage page = new ListPage(9);
+        PicData prev = page.frame(0);
+        PicData next = page.frame(0);
+        // the same 12 rows over and over, any multiple of 12 fits: voting
+        // leaves it open, the hypothesis picks the expected one
+        for (int y = HEADER; y < H; y++) {
+            System.arraycopy(prev.rgba, (HEADER + ((y - HEADER) % 12)) * W, prev.rgba, y * W, W);
+        }
+        System.arraycopy(prev.rgba, 0, next.rgba, 0, prev.rgba.length);
+        assertNull(new ScrollFinderRowSig(0).shift(prev, 1, next, 2, LIST));
+        assertEquals(Integer.valueOf(-24), new ScrollFinderRowSig(0).shift(prev, 1, next, 2, LIST, -24, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void clipOutsideFrame() {
+        ListPage page = new ListPage(7);
+        new ScrollFinderRowSig(0).shift(page.frame(0), 1, page.frame(0), 2, new MaskConf(10, 10, W, 20));
+    }
+
+    // a fixed header over a long list of random lines separated by blank rows
+    private static class ListPage {
+        private final int[] _page;
+        private final int[] _header;
+
+        ListPage(int seed) {
+            Random rnd = new Random(seed);
+            this._page = new int[W * H * 4];
+            for (int y = 0; y < (H * 4); y++) {
+                boolean blank = (y % 12) >= 10;
+                for (int x = 0; x < W; x++) {
+                    this._page[(y * W) + x] = blank ? 0xF0F0F0FF : ((rnd.nextInt() & 0x7F7F7F00) | 0x404040FF);
+                }
+            }
+            this._header = new int[W * HEADER];
+            for (int i = 0; i < this._header.length; i++) {
+                this._header[i] = (rnd.nextInt() & 0xFFFFFF00) | PicData.A_OPAQUE;
+            }
+        }
+
+        PicData frame(int scrollY) {
+            PicData pic = PicData.create(W, H);
+            System.arraycopy(this._header, 0, pic.rgba, 0, this._header.length);
+            System.arraycopy(this._page, scrollY * W, pic.rgba, HEADER * W, (H - HEADER) * W);
+            return pic;
+        }
+    }
+}
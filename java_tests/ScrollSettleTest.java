@@ -0,0 +1,128 @@
+package com.drscbt.shared.piclocate.scrollfinder;
+
+import com.drscbt.shared.piclib.Frame;
+import com.drscbt.shared.piclib.IFrameSource;
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclocate.MaskConf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ScrollSettleTest {
+    private static final int W = 80;
+    private static final int H = 150;
+    private static final MaskConf ALL = null;
+
+    @Test
+    public void settlesAfterRepeatedOffsets() throws InterruptedException {
+        Page page = new Page(1);
+        ScriptedFrames src = new ScriptedFrames(page, 0, 20, 35, 46, 48, 48, 48, 48);
+        ScrollSettle.Result res = new ScrollSettle(new ScrollFinderRowSig(0), 3, 300)
+            .await(src, page.frame(0), 0, ALL, -48, 4, 5000);
+
+        assertTrue(res.settled);
+        assertEquals(Integer.valueOf(-48), res.shift);
+        assertEquals(6, res.framesSeen);
+        assertEquals(6, res.frame.serial);
+    }
+
+    @Test
+    public void settlesWhenFramesStop() throws InterruptedException {
+        Page page = new Page(2);
+        // the last frame is 60 below, nothing composed after it
+        ScriptedFrames src = new ScriptedFrames(page, 0, 30, 60);
+        ScrollSettle.Result res = new ScrollSettle(new ScrollFinderRowSig(0), 3, 300)
+            .await(src, page.frame(0), 0, ALL, -48, 4, 5000);
+
+        assertTrue(res.settled);
+        assertEquals(Integer.valueOf(-60), res.shift);
+        assertEquals(2, res.framesSeen);
+    }
+
+    @Test
+    public void noFrameComposed() throws InterruptedException {
+        Page page = new Page(3);
+        ScrollSettle.Result res = new ScrollSettle(new ScrollFinderRowSig(0), 3, 300)
+            .await(new ScriptedFrames(page, 0), page.frame(0), 0, ALL, -48, 4, 5000);
+
+        assertFalse(res.settled);
+        assertNull(res.frame);
+        assertEquals(0, res.framesSeen);
+    }
+
+    @Test
+    public void unknownOffsetsDontSettle() throws InterruptedException {
+        Page page = new Page(4);
+        ScriptedFrames src = new ScriptedFrames(page, 0, 10, 20);
+        src.blank.add(2);
+        ScrollSettle.Result res = new ScrollSettle(new ScrollFinderRowSig(0), 2, 300)
+            .await(src, page.frame(0), 0, ALL, -10, 0, 5000);
+
+        assertFalse(res.settled);
+        assertNull(res.shift);
+    }
+
+    @Test
+    public void samePixelsSameSerialNotCountedTwice() throws InterruptedException {
+        Page page = new Page(5);
+        ScriptedFrames src = new ScriptedFrames(page, 0, 48, 48, 48);
+        src.sameSerial = true;
+        ScrollSettle.Result res = new ScrollSettle(new ScrollFinderRowSig(0), 2, 300)
+            .await(src, page.frame(0), 0, ALL, -48, 4, 5000);
+
+        // a source must not hand out the frame it was asked to go past
+        assertEquals(1, res.framesSeen);
+        assertTrue(res.settled);
+    }
+
+    // frames at the given scroll positions, serials counting up from 1,
+    // null once they're used up as if no more were composed
+    private static class ScriptedFrames implements IFrameSource {
+        private final Page _page;
+        private final int[] _scrolls;
+        private int _next = 1;
+        List<Integer> blank = new ArrayList<Integer>();
+        boolean sameSerial;
+
+        ScriptedFrames(Page page, int... scrolls) {
+            this._page = page;
+            this._scrolls = scrolls;
+        }
+
+        public Frame nextFrame(int afterSerial, long timeoutMs) {
+            while (this._next < this._scrolls.length) {
+                int idx = this._next++;
+                int serial = this.sameSerial ? 1 : idx;
+                if (serial == afterSerial) {
+                    continue;
+                }
+                PicData pic = this.blank.contains(idx) ? PicData.create(W, H) : this._page.frame(this._scrolls[idx]);
+                return new Frame(pic, serial, System.nanoTime());
+            }
+            return null;
+        }
+    }
+
+    private static class Page {
+        private final int[] _rgba;
+
+        Page(int seed) {
+            Random rnd = new Random(seed);
+            this._rgba = new int[W * H * 3];
+            for (int i = 0; i < this._rgba.length; i++) {
+                this._rgba[i] = (rnd.nextInt() & 0xFFFFFF00) | PicData.A_OPAQUE;
+            }
+        }
+
+        PicData frame(int scrollY) {
+            PicData pic = PicData.create(W, H);
+            System.arraycopy(this._rgba, scrollY * W, pic.rgba, 0, W * H);
+            return pic;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.drscbt.shared.piclocate.scrollfinder;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclocate.MaskConf;
+import com.drscbt.shared.piclocate.Point;
+import com.drscbt.shared.piclocate.twodmatcher.RK2DCrossJ;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ScrollStitcherTest {
+    private static final int W = 100;
+    private static final int H = 160;
+    private static final int HEADER = 20;
+    private static final int LIST_X = 10;
+    private static final MaskConf LIST = new MaskConf(LIST_X, HEADER, W - LIST_X, H - HEADER);
+    private static final int PAGE_ROWS = 1000;
+
+    @Test
+    public void canvasEqualsPage() {
+        Page page = new Page(1);
+        ScrollStitcher st = new ScrollStitcher(LIST, PAGE_ROWS);
+        st.reset(page.frame(0));
+
+        int[] scrolls = {37, 100, 230, 229, 350, 300, 430, 560};
+        int prev = 0;
+        int revealed = LIST.height;
+        for (int scroll : scrolls) {
+            ScrollStitcher.Strip strip = st.append(page.frame(scroll), prev - scroll);
+            int bottom = scroll + LIST.height;
+            if (bottom > revealed) {
+                assertEquals(revealed, strip.vFromY);
+                assertEquals(bottom - revealed, strip.pic.height);
+                revealed = bottom;
+            } else {
+                assertNull(strip);
+            }
+            prev = scroll;
+        }
+
+        assertEquals(0, st.top());
+        assertEquals(560 + LIST.height, st.height());
+        assertEquals(560, st.viewTop());
+        assertArrayEquals(page.rows(0, st.height()), st.region(0, st.height()).rgba);
+    }
+
+    @Test
+    public void scrollingUpPrepends() {
+        Page page = new Page(2);
+        ScrollStitcher st = new ScrollStitcher(LIST, PAGE_ROWS);
+        st.reset(page.frame(300));
+        ScrollStitcher.Strip strip = st.append(page.frame(250), 50);
+
+        assertEquals(-50, strip.vFromY);
+        assertEquals(-50, st.top());
+        assertArrayEquals(page.rows(250, LIST.height + 50), st.region(-50, st.height()).rgba);
+        assertNull(st.append(page.frame(280), -30));
+    }
+
+    @Test
+    public void findNewSearchesEachLocationOnce() {
+        Page page = new Page(3);
+        // an item straddling the first frame's bottom edge
+        PicData item = page.item(LIST.height - 6, 30, 16, 12);
+        ScrollStitcher st = new ScrollStitcher(LIST, PAGE_ROWS);
+        CountingMatcher matcher = new CountingMatcher();
+
+        st.reset(page.frame(0));
+        assertTrue(st.findNew(matcher, item).isEmpty());
+        matcher.rows = 0;
+
+        st.append(page.frame(40), -40);
+        Set<Point> found = st.findNew(matcher, item);
+        assertEquals(new HashSet<Point>(Arrays.asList(new Point(LIST_X + 30, LIST.height - 6))), found);
+        // the new rows and the pattern's height above them, nothing else
+        assertEquals(40 + item.height - 1, matcher.rows);
+
+        matcher.rows = 0;
+        assertTrue(st.findNew(matcher, item).isEmpty());
+        assertEquals(0, matcher.rows);
+    }
+
+    @Test
+    public void screenMapping() {
+        Page page = new Page(4);
+        ScrollStitcher st = new ScrollStitcher(LIST, PAGE_ROWS);
+        st.reset(page.frame(0));
+        st.append(page.frame(90), -90);
+
+        Point v = new Point(LIST_X + 5, 120);
+        assertEquals(new Point(LIST_X + 5, HEADER + 30), st.toScreen(v));
+        assertEquals(v, st.toVirtual(st.toScreen(v)));
+        // scrolled out above the clip
+        assertNull(st.toScreen(new Point(LIST_X + 5, 50)));
+    }
+
+    @Test
+    public void maxRowsDropsOldest() {
+        Page page = new Page(5);
+        int maxRows = LIST.height + 50;
+        PicData item = page.item(20, 30, 16, 12);
+        ScrollStitcher st = new ScrollStitcher(LIST, maxRows);
+        CountingMatcher matcher = new CountingMatcher();
+        st.reset(page.frame(0));
+        assertEquals(new HashSet<Point>(Arrays.asList(new Point(LIST_X + 30, 20))), st.findNew(matcher, item));
+
+        st.append(page.frame(40), -40);
+        st.append(page.frame(80), -40);
+        assertEquals(30, st.top());
+        assertEquals(maxRows, st.height());
+        assertArrayEquals(page.rows(30, maxRows), st.region(30, maxRows).rgba);
+        matcher.rows = 0;
+        assertTrue(st.findNew(matcher, item).isEmpty());
+        assertEquals(80 + item.height - 1, matcher.rows);
+
+        // back up, the bottom rows go and the dropped top ones are searched again
+        ScrollStitcher.Strip strip = st.append(page.frame(10), 70);
+        assertEquals(10, strip.vFromY);
+        assertEquals(10, st.top());
+        assertEquals(maxRows, st.height());
+        assertArrayEquals(page.rows(10, maxRows), st.region(10, maxRows).rgba);
+        matcher.rows = 0;
+        assertEquals(new HashSet<Point>(Arrays.asList(new Point(LIST_X + 30, 20))), st.findNew(matcher, item));
+        assertEquals(20 + item.height - 1, matcher.rows);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noOverlap() {
+        Page page = new Page(6);
+        ScrollStitcher st = new ScrollStitcher(LIST, PAGE_ROWS);
+        st.reset(page.frame(0));
+        st.append(page.frame(LIST.height), -LIST.height);
+    }
+
+    private static class CountingMatcher extends RK2DCrossJ {
+        int rows;
+
+        @Override
+        public Set<Point> match(PicData pic, PicData pat) {
+            this.rows += pic.height;
+            return super.match(pic, pat);
+        }
+    }
+
+    // a fixed header and left column around a long list
+    private static class Page {
+        private final int[] _list;
+        private final int[] _frame;
+
+        Page(int seed) {
+            Random rnd = new Random(seed);
+            this._list = new int[LIST.width * PAGE_ROWS];
+            for (int i = 0; i < this._list.length; i++) {
+                this._list[i] = (rnd.nextInt() & 0xFFFFFF00) | PicData.A_OPAQUE;
+            }
+            this._frame = new int[W * H];
+            for (int i = 0; i < this._frame.length; i++) {
+                this._frame[i] = (rnd.nextInt() & 0xFFFFFF00) | PicData.A_OPAQUE;
+            }
+        }
+
+        PicData frame(int scrollY) {
+            PicData pic = new PicData(this._frame.clone(), W, H);
+            for (int row = 0; row < LIST.height; row++) {
+                System.arraycopy(this._list, (scrollY + row) * LIST.width,
+                    pic.rgba, ((HEADER + row) * W) + LIST_X, LIST.width);
+            }
+            return pic;
+        }
+
+        int[] rows(int from, int cnt) {
+            return Arrays.copyOfRange(this._list, from * LIST.width, (from + cnt) * LIST.width);
+        }
+
+        PicData item(int y, int x, int w, int h) {
+            PicData pic = PicData.create(w, h);
+            for (int row = 0; row < h; row++) {
+                System.arraycopy(this._list, ((y + row) * LIST.width) + x, pic.rgba, row * w, w);
+            }
+            return pic;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclib.TestPics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SearchPhaseStatsTest {
+    @Test
+    public void offByDefault() {
+        try (SearchWorkspace ws = new SearchWorkspace()) {
+            PicData pic = TestPics.random(120, 90, 1);
+            PicData pat = TestPics.cut(pic, 30, 40, 10, 8);
+            assertNull(ws.rkMatch(pic, pat, 0).phaseStats);
+            assertNull(ws.bsMatch(pic, pat, 0, 0).phaseStats);
+        }
+    }
+
+    @Test
+    public void rkPhases() {
+        SearchPhaseStats.setEnabled(true);
+        try (SearchWorkspace ws = new SearchWorkspace()) {
+            PicData pic = TestPics.random(300, 200, 2);
+            PicData pat = TestPics.cut(pic, 100, 50, 12, 9);
+            NativePicSearchResults res = ws.rkMatch(pic, pat, 0);
+            long[] stats = res.phaseStats;
+
+            assertNotNull(stats);
+            assertEquals(SearchPhaseStats.LEN, stats.length);
+            assertEquals(pic.rgba.length + pat.rgba.length, stats[SearchPhaseStats.CONV_PXS]);
+            assertEquals(res.matches.size() + res.collisionsCnt, stats[SearchPhaseStats.CANDIDATES]);
+            assertEquals(res.collisionsCnt, stats[SearchPhaseStats.COLLISIONS]);
+            assertTrue(stats[SearchPhaseStats.CONFIRM_PXS] >= res.matches.size() * (long)pat.rgba.length);
+            for (int idx = SearchPhaseStats.CONV_NS; idx <= SearchPhaseStats.SCAN_NS; idx++) {
+                assertTrue(stats[idx] > 0);
+            }
+        } finally {
+            SearchPhaseStats.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void bsCandidates() {
+        SearchPhaseStats.setEnabled(true);
+        try (SearchWorkspace ws = new SearchWorkspace()) {
+            PicData pic = PicData.create(40, 30);
+            PicData pat = PicData.create(4, 3);
+            NativePicSearchResults res = ws.bsMatch(pic, pat, 0, 0);
+            assertEquals(37 * 28, res.matches.size());
+            assertEquals(res.matches.size() + res.collisionsCnt, res.phaseStats[SearchPhaseStats.CANDIDATES]);
+            assertEquals(res.matches.size() * (long)pat.rgba.length, res.phaseStats[SearchPhaseStats.CONFIRM_PXS]);
+        } finally {
+            SearchPhaseStats.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void aggregates() {
+        SearchPhaseStats agg = new SearchPhaseStats();
+        try (SearchWorkspace ws = new SearchWorkspace()) {
+            PicData pic = TestPics.random(100, 80, 3);
+            PicData pat = TestPics.cut(pic, 10, 20, 6, 5);
+
+            agg.add(ws.rkMatch(pic, pat, 0));
+            assertEquals(0, agg.getSearches());
+
+            SearchPhaseStats.setEnabled(true);
+            NativePicSearchResults first = ws.rkMatch(pic, pat, 0);
+            NativePicSearchResults second = ws.bsMatch(pic, pat, 0, 0);
+            agg.add(first);
+            agg.add(second);
+            assertEquals(2, agg.getSearches());
+            for (int idx = 0; idx < SearchPhaseStats.LEN; idx++) {
+                assertEquals(first.phaseStats[idx] + second.phaseStats[idx], agg.get(idx));
+            }
+            assertTrue(agg.toString().startsWith("searches 2;"));
+
+            agg.reset();
+            assertEquals(0, agg.getSearches());
+            assertEquals(0, agg.get(SearchPhaseStats.SCAN_NS));
+        } finally {
+            SearchPhaseStats.setEnabled(false);
+        }
+    }
+}
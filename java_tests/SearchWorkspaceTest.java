@@ -0,0 +1,98 @@
+package com.drscbt.shared.piclocate.twodmatcher;
+
+import com.drscbt.shared.piclib.PicData;
+import com.drscbt.shared.piclib.TestPics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SearchWorkspaceTest {
+    private static final int FUZZY_ERR = 12;
+
+    @Test
+    public void sameAsWithoutWorkspace() {
+        try (SearchWorkspace ws = new SearchWorkspace()) {
+            // growing and shrinking canvases and patterns, some masked
+            for (int seed = 0; seed < 16; seed++) {
+                Random rnd = new Random(seed);
+                PicData pat = TestPics.random(2 + rnd.nextInt(14), 2 + rnd.nextInt(10), seed + 50);
+                if ((seed % 4) == 1) {
+                    pat.rgba[rnd.nextInt(pat.rgba.length)] &= 0xFFFFFF00;
+                }
+                PicData pic = TestPics.random(40 + rnd.nextInt(300), 30 + rnd.nextInt(200), seed);
+                for (int k = 0; k < 4; k++) {
+                    TestPics.plant(pic, pat, rnd.nextInt(pic.width - pat.width + 1), rnd.nextInt(pic.height - pat.height + 1));
+                }
+
+                RK2DCrossNa rk = new RK2DCrossNa();
+                NativePicSearchResults rkRes = ws.rkMatch(pic, pat, 0);
+                assertEquals(rk.match(pic, pat), rkRes.matches);
+                assertEquals(rk.getFalseMatchesCount(), rkRes.collisionsCnt);
+
+                TwoDBasicSumCrossNa bs = new TwoDBasicSumCrossNa(FUZZY_ERR);
+                NativePicSearchResults bsRes = ws.bsMatch(pic, pat, FUZZY_ERR, 0);
+                assertEquals(bs.match(pic, pat), bsRes.matches);
+                assertEquals(bs.getFalseMatchesCount(), bsRes.collisionsCnt);
+            }
+        }
+    }
+
+    @Test
+    public void maskedPatternChangingInPlace() {
+        try (SearchWorkspace ws = new SearchWorkspace()) {
+            PicData pat = TestPics.random(8, 6, 1);
+            pat.rgba[0] &= 0xFFFFFF00;
+            PicData pic = TestPics.random(100, 80, 2);
+            TestPics.plant(pic, pat, 20, 30);
+            assertEquals(1, ws.rkMatch(pic, pat, 0).matches.size());
+
+            // same dimensions, other pixels: the workspace must not reuse the old mask
+            pat.rgba[10] ^= 0x80808000;
+            assertEquals(new RK2DCrossNa().match(pic, pat), ws.rkMatch(pic, pat, 0).matches);
+            assertEquals(0, ws.rkMatch(pic, pat, 0).matches.size());
+        }
+    }
+
+    @Test
+    public void patternLargerThanCanvas() {
+        try (SearchWorkspace ws = new SearchWorkspace()) {
+            PicData pic = TestPics.random(60, 40, 3);
+            // wider, taller, masked and wider
+            PicData wide = TestPics.random(61, 4, 4);
+            PicData tall = TestPics.random(4, 41, 5);
+            PicData maskedWide = TestPics.random(70, 5, 6);
+            maskedWide.rgba[0] &= 0xFFFFFF00;
+            for (PicData big : new PicData[]{wide, tall, maskedWide}) {
+                assertTrue(ws.rkMatch(pic, big, 0).matches.isEmpty());
+                assertTrue(ws.bsMatch(pic, big, FUZZY_ERR, 0).matches.isEmpty());
+            }
+
+            // the workspace still works afterwards
+            PicData pat = TestPics.random(6, 5, 7);
+            TestPics.plant(pic, pat, 30, 20);
+            assertEquals(new RK2DCrossNa().match(pic, pat), ws.rkMatch(pic, pat, 0).matches);
+            assertEquals(new TwoDBasicSumCrossNa(FUZZY_ERR).match(pic, pat), ws.bsMatch(pic, pat, FUZZY_ERR, 0).matches);
+            assertEquals(1, ws.rkMatch(pic, pat, 0).matches.size());
+        }
+    }
+
+    @Test
+    public void limit() {
+        try (SearchWorkspace ws = new SearchWorkspace()) {
+            PicData pic = PicData.create(50, 40);
+            PicData pat = PicData.create(3, 3);
+            assertEquals(100, ws.rkMatch(pic, pat, 100).matches.size());
+            assertEquals(48 * 38, ws.bsMatch(pic, pat, 0, 0).matches.size());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closed() {
+        SearchWorkspace ws = new SearchWorkspace();
+        ws.close();
+        ws.rkMatch(PicData.create(10, 10), PicData.create(2, 2), 0);
+    }
+}
@@ -0,0 +1,56 @@
+package com.drscbt.shared.piclib;
+
+import java.util.Random;
+
+// Synthetic pictures shared by the matcher and pixel pipeline tests.
+public class TestPics {
+    private TestPics() {
+    }
+
+    // every pixel random, opaque
+    public static PicData random(int w, int h, long seed) {
+        Random rnd = new Random(seed);
+        PicData pic = PicData.create(w, h);
+        for (int i = 0; i < pic.rgba.length; i++) {
+            pic.rgba[i] = (rnd.nextInt() & 0xFFFFFF00) | PicData.A_OPAQUE;
+        }
+        return pic;
+    }
+
+    // every channel one of levels evenly spaced values, opaque
+    public static PicData quantized(int w, int h, int levels, long seed) {
+        Random rnd = new Random(seed);
+        PicData pic = PicData.create(w, h);
+        for (int i = 0; i < pic.rgba.length; i++) {
+            int r = (rnd.nextInt(levels) * 255) / levels;
+            int g = (rnd.nextInt(levels) * 255) / levels;
+            int b = (rnd.nextInt(levels) * 255) / levels;
+            pic.rgba[i] = (r << 24) | (g << 16) | (b << 8) | PicData.A_OPAQUE;
+        }
+        return pic;
+    }
+
+    public static void plant(PicData pic, PicData pat, int px, int py) {
+        for (int y = 0; y < pat.height; y++) {
+            System.arraycopy(pat.rgba, y * pat.width, pic.rgba, ((py + y) * pic.width) + px, pat.width);
+        }
+    }
+
+    // pat planted all over pic on a randomly spaced grid
+    public static void plantGrid(PicData pic, PicData pat, long seed) {
+        Random rnd = new Random(seed);
+        for (int py = rnd.nextInt(7); (py + pat.height) <= pic.height; py += pat.height + 13 + rnd.nextInt(40)) {
+            for (int px = rnd.nextInt(7); (px + pat.width) <= pic.width; px += pat.width + 13 + rnd.nextInt(60)) {
+                plant(pic, pat, px, py);
+            }
+        }
+    }
+
+    public static PicData cut(PicData pic, int px, int py, int w, int h) {
+        PicData pat = PicData.create(w, h);
+        for (int y = 0; y < h; y++) {
+            System.arraycopy(pic.rgba, ((py + y) * pic.width) + px, pat.rgba, y * w, w);
+        }
+        return pat;
+    }
+}
@@ -64,6 +64,8 @@ public class UtilsTest {
             {1 + 0xFF,     217, (1 << 24) -  3,  8627555},
             {1 + 0xFF,     260, (1 << 24) -  3, 13913083},
             {1 + 0xFF, 1000000, (1 << 24) -  3, 10106802},
+            {1 + 0xFF,       0, (1 << 23) - 15,        1},
+            {1 + 0xFF,       1, (1 << 23) - 15,      256},
         };
 
         for (int[] t : tests) {